@@ -0,0 +1,70 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sampling period of an adaptive collection. The period falls back to the
+ * configured frequency as soon as the CPU or RAM usage of a container
+ * changes beyond the tolerance since the previous sample, and doubles up
+ * to the ceiling for every steady sample, so flat hours of a long soak
+ * take few requests while a burst is sampled at full rate.
+ */
+class AdaptiveRate
+{
+    private final long floorMillis;
+    private final long ceilingMillis;
+    // percentage points
+    private final double tolerance;
+
+    // CPU and RAM usage of each container in the previous sample
+    private final Map<String, Double[]> lastValues = new HashMap<>();
+
+    AdaptiveRate(long floorMillis, long ceilingMillis, double tolerance)
+    {
+        this.floorMillis = floorMillis;
+        this.ceilingMillis = Math.max(floorMillis, ceilingMillis);
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return the period until the next sample
+     */
+    long next(long periodMillis, List<ContainerInfo> containerInfos)
+    {
+        boolean changed = false;
+        for(ContainerInfo containerInfo : containerInfos)
+        {
+            final String key = SampleStore.containerKey(containerInfo.getId(), containerInfo.getName());
+            if(null == key)
+            {
+                continue;
+            }
+
+            final Double[] values = new Double[] { containerInfo.getCpuUsage(), containerInfo.getMemoryUsage() };
+            final Double[] last = this.lastValues.put(key, values);
+            if(null == last)
+            {
+                // a new container is a change of its own
+                changed = true;
+                continue;
+            }
+
+            for(int idx = 0; idx < values.length; idx ++)
+            {
+                if(null != values[idx] && null != last[idx] && Math.abs(values[idx] - last[idx]) > this.tolerance)
+                {
+                    changed = true;
+                }
+            }
+        }
+
+        if(changed)
+        {
+            return this.floorMillis;
+        }
+
+        return Math.min(this.ceilingMillis, periodMillis * 2L);
+    }
+}
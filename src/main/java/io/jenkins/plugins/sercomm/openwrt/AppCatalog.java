@@ -0,0 +1,110 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sercomm.commons.umei.UMEiError;
+import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsRequest;
+import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsResult;
+import com.sercomm.demeter.microservices.client.v1.RESTfulClient;
+
+/**
+ * Installable Apps per device model, fetched from Demeter at most once
+ * per build and shared by every DUT of the same model.
+ */
+class AppCatalog
+{
+    private final Map<String, List<GetInstallableAppsResult.ResultData>> appsByModel = new HashMap<>();
+
+    synchronized boolean contains(String model)
+    {
+        return this.appsByModel.containsKey(model);
+    }
+
+    synchronized List<GetInstallableAppsResult.ResultData> getInstallableApps(
+            RESTfulClient client,
+            String model,
+            LoopCounters counters)
+    throws InterruptedException
+    {
+        List<GetInstallableAppsResult.ResultData> apps = this.appsByModel.get(model);
+        if(null != apps)
+        {
+            return apps;
+        }
+
+        GetInstallableAppsRequest getInstallableAppRequest = new GetInstallableAppsRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withModel(model)
+                .withFrom(0)
+                .withSize(500);
+
+        final long callTime = System.nanoTime();
+        GetInstallableAppsResult getInstallableAppResult = client.getInstallableApps(getInstallableAppRequest);
+        counters.recordLatency(DemeterOperation.GET_INSTALLABLE_APPS, System.nanoTime() - callTime);
+        if(200 != getInstallableAppResult.getStatusCode())
+        {
+            throw new InterruptedException("SERVER HTTP " + getInstallableAppResult.getStatusCode() + ", METHOD: 'getInstallableApps'");
+        }
+
+        if(getInstallableAppResult.hasError())
+        {
+            UMEiError error = getInstallableAppResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }
+
+        apps = getInstallableAppResult.getData();
+        this.appsByModel.put(model, apps);
+
+        return apps;
+    }
+
+    /**
+     * @return the matching target or null if the catalog of the model has no such App version
+     */
+    synchronized LoopTarget find(
+            String deviceId,
+            String model,
+            String appPublisher,
+            String appName,
+            String appVersion)
+    {
+        List<GetInstallableAppsResult.ResultData> apps = this.appsByModel.get(model);
+        if(null == apps)
+        {
+            return null;
+        }
+
+        LoopTarget target = null;
+        for(GetInstallableAppsResult.ResultData app : apps)
+        {
+            if(0 != app.getPublisher().compareTo(appPublisher))
+            {
+                continue;
+            }
+
+            if(0 != app.getAppName().compareTo(appName))
+            {
+                continue;
+            }
+
+            for(GetInstallableAppsResult.ResultData.Version version : app.getVersions())
+            {
+                if(0 != version.getVersionName().compareTo(appVersion))
+                {
+                    continue;
+                }
+
+                target = new LoopTarget(
+                    deviceId,
+                    model,
+                    app.getAppId(),
+                    version.getVersionId(),
+                    version.getVersionName());
+            }
+        }
+
+        return target;
+    }
+}
@@ -0,0 +1,150 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.data.time.TimeSeriesDataItem;
+
+/**
+ * Thins out the series of a chart with Largest-Triangle-Three-Buckets before
+ * it is drawn. A chart cannot show more points than it has pixel columns, so
+ * each series is cut down to about that many points, keeping the points which
+ * span the largest triangles with their neighbours, which are the spikes and
+ * turns that give the series its shape. Gaps, items without a value, are kept
+ * as they are so broken lines stay broken.
+ * The series given are never changed, statistics keep every sample.
+ */
+final class ChartDownsampler
+{
+    private ChartDownsampler()
+    {
+    }
+
+    /**
+     * @param threshold number of points each series is cut down to
+     */
+    static TimeSeriesCollection downsample(TimeSeriesCollection dataset, int threshold)
+    {
+        TimeSeriesCollection result = new TimeSeriesCollection();
+        for(int idx = 0; idx < dataset.getSeriesCount(); idx ++)
+        {
+            result.addSeries(downsample(dataset.getSeries(idx), threshold));
+        }
+
+        return result;
+    }
+
+    static TimeSeries downsample(TimeSeries series, int threshold)
+    {
+        final int itemCount = series.getItemCount();
+        if(itemCount <= threshold)
+        {
+            return series;
+        }
+
+        int valueCount = 0;
+        for(int idx = 0; idx < itemCount; idx ++)
+        {
+            if(null != series.getValue(idx))
+            {
+                valueCount ++;
+            }
+        }
+
+        // the points left once the gaps are kept are shared by the runs between gaps
+        final double ratio = Math.max(0, threshold - (itemCount - valueCount)) / (double) Math.max(1, valueCount);
+
+        TimeSeries result = new TimeSeries(series.getKey());
+        List<TimeSeriesDataItem> run = new ArrayList<>();
+        for(int idx = 0; idx < itemCount; idx ++)
+        {
+            TimeSeriesDataItem item = series.getDataItem(idx);
+            if(null != item.getValue())
+            {
+                run.add(item);
+                continue;
+            }
+
+            addRun(result, run, ratio);
+            run.clear();
+            result.add(item.getPeriod(), (Number) null, false);
+        }
+        addRun(result, run, ratio);
+
+        return result;
+    }
+
+    private static void addRun(TimeSeries result, List<TimeSeriesDataItem> run, double ratio)
+    {
+        final int bucketCount = (int) Math.round(run.size() * ratio);
+        // the first and last points are always kept, less than 3 points leaves nothing to choose
+        if(run.size() <= Math.max(3, bucketCount))
+        {
+            for(TimeSeriesDataItem item : run)
+            {
+                result.add(item.getPeriod(), item.getValue(), false);
+            }
+            return;
+        }
+
+        final int lastIdx = run.size() - 1;
+        // the points between the first and the last one are split into buckets, one point is kept of each
+        final double bucketSize = (double) (run.size() - 2) / Math.max(1, bucketCount - 2);
+
+        int keptIdx = 0;
+        result.add(run.get(0).getPeriod(), run.get(0).getValue(), false);
+        for(int bucket = 0; bucket < bucketCount - 2; bucket ++)
+        {
+            final int bucketBegin = 1 + (int) Math.floor(bucket * bucketSize);
+            final int bucketEnd = Math.min(lastIdx, 1 + (int) Math.floor((bucket + 1) * bucketSize));
+
+            // the third corner of the triangles is the average of the next bucket
+            final int nextBegin = bucketEnd;
+            final int nextEnd = Math.min(run.size(), 1 + (int) Math.floor((bucket + 2) * bucketSize));
+            double nextX = 0.;
+            double nextY = 0.;
+            for(int idx = nextBegin; idx < nextEnd; idx ++)
+            {
+                nextX += x(run.get(idx));
+                nextY += y(run.get(idx));
+            }
+            final int nextCount = Math.max(1, nextEnd - nextBegin);
+            nextX /= nextCount;
+            nextY /= nextCount;
+
+            final double keptX = x(run.get(keptIdx));
+            final double keptY = y(run.get(keptIdx));
+
+            double maxArea = -1.;
+            int maxIdx = bucketBegin;
+            for(int idx = bucketBegin; idx < bucketEnd; idx ++)
+            {
+                // twice the area of the triangle, only compared
+                final double area = Math.abs(
+                    (keptX - nextX) * (y(run.get(idx)) - keptY) -
+                    (keptX - x(run.get(idx))) * (nextY - keptY));
+                if(area > maxArea)
+                {
+                    maxArea = area;
+                    maxIdx = idx;
+                }
+            }
+
+            result.add(run.get(maxIdx).getPeriod(), run.get(maxIdx).getValue(), false);
+            keptIdx = maxIdx;
+        }
+        result.add(run.get(lastIdx).getPeriod(), run.get(lastIdx).getValue(), false);
+    }
+
+    private static double x(TimeSeriesDataItem item)
+    {
+        return item.getPeriod().getFirstMillisecond();
+    }
+
+    private static double y(TimeSeriesDataItem item)
+    {
+        return item.getValue().doubleValue();
+    }
+}
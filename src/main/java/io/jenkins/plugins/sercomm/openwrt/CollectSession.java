@@ -0,0 +1,526 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sercomm.commons.util.DateTime;
+import com.sercomm.commons.util.XStringUtil;
+
+import hudson.model.Run;
+
+/**
+ * One resource collection of a build, shared by the blocking builder and
+ * the Pipeline step. Every DUT is sampled on its own schedule by the tasks
+ * of {@link DemeterStepScheduler}, no thread waits between two samples.
+ */
+class CollectSession
+{
+    private static final long PROGRESS_INTERVAL_NANOS = 5L * 60L * 1000000000L;
+
+    private final Run<?, ?> run;
+    private final PrintStream logger;
+    private final OpenWRTCollectBuilder config;
+    private final String endpoint;
+
+    // milliseconds
+    private final long durationMillis;
+    private final long frequencyMillis;
+
+    private final List<DeviceSampler> samplers = new ArrayList<>();
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private volatile boolean stopped = false;
+    private Runnable onDone = null;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    // first threshold breach, which stops the collection of every DUT
+    private volatile ResultRecord breach = null;
+    private final AtomicLong nextProgressTime = new AtomicLong(0L);
+    // samples being taken and the set-up of a step, the collection is only finished or stopped once none is running
+    private final AtomicInteger runningTasks = new AtomicInteger(0);
+    // run once no task is running any more, guarded by itself
+    private final List<Runnable> idleTasks = new ArrayList<>();
+
+    CollectSession(Run<?, ?> run, PrintStream logger, OpenWRTCollectBuilder config)
+    {
+        this.run = run;
+        this.logger = logger;
+        this.config = config;
+        this.endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
+
+        this.durationMillis = Long.parseLong(config.getDuration()) * 1000L;
+        this.frequencyMillis = Long.parseLong(config.getFrequency()) * 1000L;
+    }
+
+    void open()
+    {
+        final PrintStream logger = this.logger;
+
+        logger.println(LogParserUtil.SYMBOL_COLLECT_PROCEDURE_BPOS);
+        logger.printf("%s - [INFO] ====== Collection Builder ======%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+        logger.println(LogParserUtil.SYMBOL_DESCRIBE_BPOS);
+        logger.printf("%s - [INFO] DUT: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getDeviceId());
+        logger.printf("%s - [INFO] App publisher: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getAppPublisher());
+        logger.printf("%s - [INFO] App name: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getAppName());
+        logger.printf("%s - [INFO] App version: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getAppVersion());
+        logger.printf("%s - [INFO] Duration: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getDuration());
+        logger.printf("%s - [INFO] Frequency: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getFrequency());
+        logger.printf("%s - [INFO] Endpoint: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.endpoint);
+        if(this.config.getAdaptiveSampling())
+        {
+            logger.printf("%s - [INFO] Adaptive sampling: every %s to %d seconds, changes above %.2f%% points%n",
+                DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+                this.config.getFrequency(),
+                OpenWRTCollectBuilder.parseMaxInterval(this.config.getMaxInterval()),
+                OpenWRTCollectBuilder.parseChangeTolerance(this.config.getChangeTolerance()));
+        }
+        if(false == XStringUtil.isBlank(this.config.getCpuThreshold()) || false == XStringUtil.isBlank(this.config.getRamThreshold()))
+        {
+            logger.printf("%s - [INFO] Thresholds: CPU %s%%, RAM %s%%, for %d sample(s), then %s%n",
+                DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+                XStringUtil.isBlank(this.config.getCpuThreshold()) ? "-" : this.config.getCpuThreshold(),
+                XStringUtil.isBlank(this.config.getRamThreshold()) ? "-" : this.config.getRamThreshold(),
+                ResourceWatchdog.parseSampleCount(this.config.getThresholdSamples()),
+                this.config.toThresholdResult());
+        }
+        logger.println(LogParserUtil.SYMBOL_DESCRIBE_EPOS);
+    }
+
+    /**
+     * Resolves the DUTs and checks each of them before sampling starts. A DUT
+     * failing the checks is left out, the collection fails only when none is left.
+     */
+    void prepare()
+    throws InterruptedException, IOException
+    {
+        final List<String> deviceIds = OpenWRTLoopBuilder.resolveDeviceIds(this.endpoint, this.config.getDeviceId());
+        if(deviceIds.isEmpty())
+        {
+            throw new InterruptedException("NO DEVICE MATCHES '" + this.config.getDeviceId() + "'");
+        }
+
+        Throwable lastError = null;
+        for(String deviceId : deviceIds)
+        {
+            DeviceSampler sampler = new DeviceSampler(this.run, this.logger, this.config, this.endpoint, deviceId);
+            try
+            {
+                sampler.prepare();
+                this.samplers.add(sampler);
+            }
+            catch(Throwable t)
+            {
+                lastError = t;
+                this.logger.printf("%s - [ERROR] %s: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), deviceId, t.getMessage());
+            }
+        }
+
+        if(this.samplers.isEmpty())
+        {
+            throw new InterruptedException(1 == deviceIds.size() ? lastError.getMessage() : "NO DEVICE IS READY FOR COLLECTION");
+        }
+
+        this.logger.println(LogParserUtil.SYMBOL_DETAIL_BPOS);
+    }
+
+    /**
+     * Samples DUTs already prepared before a restart
+     */
+    void resume(List<String> deviceIds)
+    throws IOException
+    {
+        final File samplesFile = SampleStore.getFile(this.run);
+        final Map<String, List<ReportModel.Sample>> samples = samplesFile.exists() ?
+            SampleStore.read(samplesFile) :
+            new HashMap<>();
+
+        for(String deviceId : deviceIds)
+        {
+            DeviceSampler sampler = new DeviceSampler(this.run, this.logger, this.config, this.endpoint, deviceId);
+            if(samples.containsKey(deviceId))
+            {
+                sampler.restoreStats(samples.get(deviceId));
+            }
+            this.samplers.add(sampler);
+        }
+    }
+
+    /**
+     * @return the threshold breach that stopped the collection, null when none did
+     */
+    ResultRecord getBreach()
+    {
+        return this.breach;
+    }
+
+    List<String> getDeviceIds()
+    {
+        List<String> deviceIds = new ArrayList<>();
+        for(DeviceSampler sampler : this.samplers)
+        {
+            deviceIds.add(sampler.getDeviceId());
+        }
+
+        return deviceIds;
+    }
+
+    /**
+     * Starts sampling every DUT, all schedules begin at the same time so
+     * that the series of the DUTs line up
+     *
+     * @param elapsedMillis time of the collection already spent, e.g. before a restart
+     * @param onDone called once every DUT has taken its last sample
+     */
+    void start(long elapsedMillis, Runnable onDone)
+    {
+        this.onDone = onDone;
+        this.activeCount.set(this.samplers.size());
+        this.nextProgressTime.set(System.nanoTime() + PROGRESS_INTERVAL_NANOS);
+        if(this.samplers.isEmpty() || this.stopped)
+        {
+            this.finish();
+            return;
+        }
+        LiveReport.open(this.run);
+
+        for(DeviceSampler sampler : this.samplers)
+        {
+            sampler.startClock(this.frequencyMillis, this.durationMillis, elapsedMillis);
+            this.scheduleNext(sampler);
+        }
+    }
+
+    /**
+     * Cancels the samples not taken yet and waits for the samples being taken, the samples taken are kept.
+     * Must not be called by a task of the session.
+     */
+    void stop()
+    {
+        final CountDownLatch idle = new CountDownLatch(1);
+        this.stop(idle::countDown);
+
+        boolean interrupted = false;
+        while(0L < idle.getCount())
+        {
+            try
+            {
+                idle.await();
+            }
+            catch(InterruptedException e)
+            {
+                // the samples being taken end after a single call, the interrupt is kept for the caller
+                interrupted = true;
+            }
+        }
+
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels the samples not taken yet, the samples taken are kept
+     *
+     * @param then called once the samples being taken have ended and every sample is written,
+     *             by this thread or by the one taking the last sample
+     */
+    void stop(Runnable then)
+    {
+        this.stopped = true;
+        for(DeviceSampler sampler : this.samplers)
+        {
+            sampler.cancel();
+        }
+
+        this.whenIdle(() -> {
+            for(DeviceSampler sampler : this.samplers)
+            {
+                try
+                {
+                    sampler.flush();
+                }
+                catch(IOException e)
+                {
+                    this.logger.printf("%s - [ERROR] %s: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), sampler.getDeviceId(), e.getMessage());
+                }
+            }
+            then.run();
+        });
+    }
+
+    /**
+     * Marks a task of the session running outside of it, e.g. the set-up of a step,
+     * the collection is not finished or stopped before {@link #exitTask()}
+     */
+    void enterTask()
+    {
+        this.runningTasks.incrementAndGet();
+    }
+
+    void exitTask()
+    {
+        if(0 == this.runningTasks.decrementAndGet())
+        {
+            this.runIdleTasks();
+        }
+    }
+
+    /**
+     * Runs the task once no task of the session is running, right away when none is
+     */
+    private void whenIdle(Runnable task)
+    {
+        synchronized(this.idleTasks)
+        {
+            this.idleTasks.add(task);
+        }
+
+        if(0 == this.runningTasks.get())
+        {
+            this.runIdleTasks();
+        }
+    }
+
+    private void runIdleTasks()
+    {
+        List<Runnable> tasks;
+        synchronized(this.idleTasks)
+        {
+            tasks = new ArrayList<>(this.idleTasks);
+            this.idleTasks.clear();
+        }
+
+        for(Runnable task : tasks)
+        {
+            task.run();
+        }
+    }
+
+    private void scheduleNext(DeviceSampler sampler)
+    {
+        if(this.stopped)
+        {
+            return;
+        }
+
+        final long delay = sampler.getClock().nextDelayMillis();
+        if(0L > delay)
+        {
+            this.samplerDone();
+            return;
+        }
+
+        sampler.setFuture(DemeterStepScheduler.get().schedule(
+            () -> this.sample(sampler),
+            delay,
+            TimeUnit.MILLISECONDS));
+    }
+
+    private void sample(DeviceSampler sampler)
+    {
+        this.enterTask();
+        try
+        {
+            this.takeSample(sampler);
+        }
+        finally
+        {
+            this.exitTask();
+        }
+    }
+
+    private void takeSample(DeviceSampler sampler)
+    {
+        if(this.stopped)
+        {
+            return;
+        }
+
+        ResultRecord breach;
+        try
+        {
+            breach = sampler.sample();
+        }
+        catch(Throwable t)
+        {
+            // the other DUTs keep sampling
+            this.logger.printf("%s - [ERROR] %s: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), sampler.getDeviceId(), t.getMessage());
+            this.samplerDone();
+            return;
+        }
+
+        if(null != breach)
+        {
+            this.stopOnBreach(breach);
+            return;
+        }
+
+        this.reportProgress();
+        this.scheduleNext(sampler);
+    }
+
+    /**
+     * Stops sampling every DUT, the DUTs are freed instead of sampling a bad build for the whole duration
+     */
+    private void stopOnBreach(ResultRecord breach)
+    {
+        synchronized(this)
+        {
+            if(null != this.breach)
+            {
+                return;
+            }
+            this.breach = breach;
+        }
+
+        this.logger.printf("%s - [ERROR] %s, collection stopped%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), describe(breach));
+        try
+        {
+            ResultsFile.append(this.run, breach);
+        }
+        catch(IOException e)
+        {
+            this.logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+        }
+
+        this.stopped = true;
+        for(DeviceSampler sampler : this.samplers)
+        {
+            sampler.cancel();
+        }
+        this.finish();
+    }
+
+    static String describe(ResultRecord breach)
+    {
+        return String.format("%s: %s of %s above %.2f%% for %d sample(s), last %.2f%%",
+            breach.deviceId,
+            ResourceStats.METRIC_CPU.equals(breach.breach.metric) ? "CPU" : "RAM",
+            XStringUtil.isBlank(breach.breach.name) ? breach.breach.container : breach.breach.name,
+            breach.breach.threshold,
+            breach.breach.sampleCount,
+            breach.breach.value);
+    }
+
+    /**
+     * Writes a one-line progress of all DUTs every few minutes, the samples themselves only go to the store
+     */
+    private void reportProgress()
+    {
+        final long next = this.nextProgressTime.get();
+        if(System.nanoTime() - next < 0L ||
+           false == this.nextProgressTime.compareAndSet(next, System.nanoTime() + PROGRESS_INTERVAL_NANOS))
+        {
+            return;
+        }
+
+        long takenCount = 0L;
+        long plannedCount = 0L;
+        long lateCount = 0L;
+        long missedCount = 0L;
+        for(DeviceSampler sampler : this.samplers)
+        {
+            final SampleClock clock = sampler.getClock();
+            takenCount += clock.getTakenCount();
+            plannedCount += clock.getPlannedCount();
+            lateCount += clock.getLateCount();
+            missedCount += clock.getMissedCount();
+        }
+
+        this.logger.printf("%s - [INFO] collect progress: %d of %d samples taken from %d DUT(s), %d late, %d missed%n",
+            DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+            takenCount,
+            plannedCount,
+            this.samplers.size(),
+            lateCount,
+            missedCount);
+    }
+
+    private void samplerDone()
+    {
+        if(0 == this.activeCount.decrementAndGet())
+        {
+            this.finish();
+        }
+    }
+
+    /**
+     * Calls back once the samples still being taken, e.g. of the other DUTs after a breach, have ended
+     */
+    private void finish()
+    {
+        this.whenIdle(() -> {
+            if(this.done.compareAndSet(false, true))
+            {
+                this.onDone.run();
+            }
+        });
+    }
+
+    void endSamples()
+    throws IOException
+    {
+        this.logger.println(LogParserUtil.SYMBOL_DETAIL_EPOS);
+
+        // statistics kept while sampling, no pass over the samples
+        Map<String, List<ResultRecord.Usage>> usages = new LinkedHashMap<>();
+        for(DeviceSampler sampler : this.samplers)
+        {
+            final SampleClock clock = sampler.getClock();
+            if(null == clock)
+            {
+                continue;
+            }
+            sampler.flush();
+            usages.put(sampler.getDeviceId(), sampler.getUsages());
+
+            this.logger.printf("%s - [INFO] %s samples: %d of %d taken, %d late (max delay %d ms), %d missed%n",
+                DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+                sampler.getDeviceId(),
+                clock.getTakenCount(),
+                clock.getPlannedCount(),
+                clock.getLateCount(),
+                clock.getMaxDelayMillis(),
+                clock.getMissedCount());
+
+            ResultsFile.append(this.run, ResultRecord.collectEnd(sampler.getDeviceId(), clock, usages.get(sampler.getDeviceId())));
+        }
+
+        this.logger.println(LogParserUtil.SYMBOL_SUMMARY_BPOS);
+        for(Map.Entry<String, List<ResultRecord.Usage>> entry : usages.entrySet())
+        {
+            for(ResultRecord.Usage usage : entry.getValue())
+            {
+                this.logger.println(LogParserUtil.SYMBOL_RESOURCE_USAGE + ResourceStats.toSummaryValue(entry.getKey(), usage));
+            }
+        }
+        final ResultRecord breach = this.breach;
+        if(null != breach)
+        {
+            this.logger.println(LogParserUtil.SYMBOL_THRESHOLD_BREACH + ResourceWatchdog.toSummaryValue(breach));
+        }
+        this.logger.println(LogParserUtil.SYMBOL_SUMMARY_EPOS);
+    }
+
+    void fail(Throwable t)
+    {
+        this.logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+    }
+
+    void close()
+    {
+        SampleStore.release(this.run);
+        LiveReport.release(this.run);
+        this.logger.println(LogParserUtil.SYMBOL_COLLECT_PROCEDURE_EPOS);
+    }
+}
@@ -0,0 +1,468 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sercomm.commons.util.DateTime;
+import com.sercomm.commons.util.XStringUtil;
+
+/**
+ * Rebuilds the report model from the markers written into the console log of
+ * builds made by older plugin versions, in a single pass over its lines.
+ * Marker lines are told apart by their leading {@code @}, summary lines by the
+ * key after their leading {@code *}, so a line which is neither costs a few
+ * character comparisons and allocates nothing besides its raw text. The raw
+ * text quotes the last {@link #MAX_RAW_TEXT_LENGTH} characters of the log
+ * only, a 48 hour collection logs hundreds of megabytes which no report page
+ * could show anyway; the console output of the build has all of it.
+ */
+class ConsoleLogParser
+{
+    private enum Section
+    {
+        NONE,
+        LOOP,
+        LOOP_SUMMARY,
+        COLLECT,
+        COLLECT_DETAIL,
+        COLLECT_SUMMARY
+    }
+
+    private static final String DELIMITER = "==>";
+    private static final String STARTED_BY_USER = "Started by user";
+    // yyyy-MM-ddTHH:mm, lines of the same minute share its epoch milliseconds
+    private static final int MINUTE_LENGTH = 16;
+    // the tail of the log quoted as raw text, 2 MB of heap, twice that while appending
+    static final int MAX_RAW_TEXT_LENGTH = 1024 * 1024;
+    private static final String RAW_TEXT_OMITTED = "[... earlier lines left out, see the console output of the build ...]\n";
+
+    private final PrintStream logger;
+    private final ReportModel model = new ReportModel();
+    private final StringBuilder rawText = new StringBuilder();
+    private boolean rawTextTruncated = false;
+
+    private Section section = Section.NONE;
+    private ReportModel.LoopResult loop = null;
+    private ReportModel.CollectResult collect = null;
+
+    private String lastMinute = null;
+    private long lastMinuteMillis = 0L;
+
+    ConsoleLogParser(PrintStream logger)
+    {
+        this.logger = logger;
+    }
+
+    void accept(String line)
+    {
+        if(XStringUtil.isBlank(line))
+        {
+            return;
+        }
+
+        if('@' == line.charAt(0))
+        {
+            this.acceptMarker(line);
+            return;
+        }
+
+        if(line.contains(STARTED_BY_USER))
+        {
+            return;
+        }
+
+        this.appendRawText(line);
+        this.appendRawText("\n");
+        this.acceptValue(line, this.acceptTime(line));
+    }
+
+    /**
+     * Appends text of lines which are neither blank nor markers to the raw text log,
+     * the oldest lines are dropped once it gets too long
+     */
+    void appendRawText(CharSequence text)
+    {
+        this.rawText.append(text);
+        if(this.rawText.length() > 2 * MAX_RAW_TEXT_LENGTH)
+        {
+            // dropped in bulk, not line by line
+            this.truncateRawText();
+        }
+    }
+
+    /**
+     * Notes that the caller left lines out of the raw text log
+     */
+    void skipRawText()
+    {
+        this.rawTextTruncated = true;
+    }
+
+    /**
+     * Keeps the last lines of the raw text log which fit in its maximum length
+     */
+    private void truncateRawText()
+    {
+        if(this.rawText.length() <= MAX_RAW_TEXT_LENGTH)
+        {
+            return;
+        }
+
+        int begin = this.rawText.length() - MAX_RAW_TEXT_LENGTH;
+        if('\n' != this.rawText.charAt(begin - 1))
+        {
+            final int lineEnd = this.rawText.indexOf("\n", begin);
+            begin = lineEnd < 0 ? begin : lineEnd + 1;
+        }
+
+        this.rawText.delete(0, begin);
+        this.rawTextTruncated = true;
+    }
+
+    /**
+     * @return epoch milliseconds of the timestamp the line starts with, 0 when it has none
+     */
+    long acceptTime(CharSequence line)
+    {
+        if(false == LogParserUtil.hasDateTime(line))
+        {
+            return 0L;
+        }
+
+        final long secondMillis = LogParserUtil.digits(line, 17, 19) * 1000L;
+        if(false == this.isLastMinute(line))
+        {
+            this.lastMinute = line.subSequence(0, MINUTE_LENGTH).toString();
+            this.lastMinuteMillis = LogParserUtil.toEpochMillis(line) - secondMillis;
+        }
+
+        final long time = this.lastMinuteMillis + secondMillis;
+        this.model.touch(time);
+        return time;
+    }
+
+    /**
+     * Tells whether lines of the current section carry values, only those need to be decoded
+     */
+    boolean isValueSection()
+    {
+        return Section.LOOP_SUMMARY == this.section ||
+               Section.COLLECT_DETAIL == this.section ||
+               Section.COLLECT_SUMMARY == this.section;
+    }
+
+    /**
+     * @param time epoch milliseconds of the timestamp the line starts with, 0 when it has none
+     */
+    void acceptValue(String line, long time)
+    {
+        switch(this.section)
+        {
+            case LOOP_SUMMARY:
+                this.acceptLoopSummary(line);
+                break;
+            case COLLECT_DETAIL:
+                if(0L != time)
+                {
+                    this.acceptCollectDetail(line, time);
+                }
+                break;
+            case COLLECT_SUMMARY:
+                this.acceptCollectSummary(line);
+                break;
+            default:
+                break;
+        }
+    }
+
+    ReportModel finish()
+    {
+        this.truncateRawText();
+        if(this.rawTextTruncated)
+        {
+            this.rawText.insert(0, RAW_TEXT_OMITTED);
+        }
+        this.model.setRawText(this.rawText.toString());
+        return this.model;
+    }
+
+    void acceptMarker(String line)
+    {
+        if(isMarker(line, LogParserUtil.SYMBOL_LOOP_PROCEDURE_BPOS))
+        {
+            this.section = Section.LOOP;
+            this.logger.printf("%s - [INFO] parsing loop installation results... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+        }
+        else if(isMarker(line, LogParserUtil.SYMBOL_COLLECT_PROCEDURE_BPOS))
+        {
+            this.section = Section.COLLECT;
+            this.logger.printf("%s - [INFO] parsing resource consumption results... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+
+            this.collect = new ReportModel.CollectResult(null);
+            this.model.getCollects().add(this.collect);
+        }
+        else if(isMarker(line, LogParserUtil.SYMBOL_LOOP_PROCEDURE_EPOS) ||
+                isMarker(line, LogParserUtil.SYMBOL_COLLECT_PROCEDURE_EPOS))
+        {
+            this.section = Section.NONE;
+        }
+        else if(isMarker(line, LogParserUtil.SYMBOL_SUMMARY_BPOS))
+        {
+            if(Section.LOOP == this.section)
+            {
+                this.section = Section.LOOP_SUMMARY;
+
+                this.loop = new ReportModel.LoopResult();
+                this.model.getLoops().add(this.loop);
+            }
+            else if(Section.COLLECT == this.section || Section.COLLECT_DETAIL == this.section)
+            {
+                this.section = Section.COLLECT_SUMMARY;
+            }
+        }
+        else if(isMarker(line, LogParserUtil.SYMBOL_SUMMARY_EPOS))
+        {
+            if(Section.LOOP_SUMMARY == this.section)
+            {
+                this.section = Section.LOOP;
+            }
+            else if(Section.COLLECT_SUMMARY == this.section)
+            {
+                this.section = Section.COLLECT;
+            }
+        }
+        else if(isMarker(line, LogParserUtil.SYMBOL_DETAIL_BPOS))
+        {
+            if(Section.COLLECT == this.section)
+            {
+                this.section = Section.COLLECT_DETAIL;
+            }
+        }
+        else if(isMarker(line, LogParserUtil.SYMBOL_DETAIL_EPOS))
+        {
+            if(Section.COLLECT_DETAIL == this.section)
+            {
+                this.section = Section.COLLECT;
+            }
+        }
+    }
+
+    private void acceptLoopSummary(String line)
+    {
+        final int valueIndex = valueIndex(line);
+        if(valueIndex < 0)
+        {
+            return;
+        }
+
+        final String value = line.substring(valueIndex);
+        if(line.startsWith(LogParserUtil.SYMBOL_TOTAL_LOOP_COUNT))
+        {
+            this.loop.totalCount = Integer.parseInt(value);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_INSTALL_APP_OK_COUNT))
+        {
+            this.loop.installOKCount = Integer.parseInt(value);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_UNINSTALL_APP_OK_COUNT))
+        {
+            this.loop.uninstallOKCount = Integer.parseInt(value);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_START_APP_OK_COUNT))
+        {
+            this.loop.startOKCount = Integer.parseInt(value);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_STOP_APP_OK_COUNT))
+        {
+            this.loop.stopOKCount = Integer.parseInt(value);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_DEVICE_LOOP_RESULT))
+        {
+            String[] values = value.split(",");
+            ResultRecord.DeviceLoop device = new ResultRecord.DeviceLoop();
+            device.deviceId = values[0];
+            device.totalCount = Integer.parseInt(values[1]);
+            device.installOKCount = Integer.parseInt(values[2]);
+            device.uninstallOKCount = Integer.parseInt(values[3]);
+            device.startOKCount = Integer.parseInt(values[4]);
+            device.stopOKCount = Integer.parseInt(values[5]);
+            this.loop.devices.add(device);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_VERSION_LOOP_RESULT))
+        {
+            String[] values = value.split(",");
+            ResultRecord.VersionLoop version = new ResultRecord.VersionLoop();
+            version.appVersion = values[0];
+            version.totalCount = Integer.parseInt(values[1]);
+            version.installOKCount = Integer.parseInt(values[2]);
+            version.uninstallOKCount = Integer.parseInt(values[3]);
+            version.startOKCount = Integer.parseInt(values[4]);
+            version.stopOKCount = Integer.parseInt(values[5]);
+            this.loop.versions.add(version);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_VERSION_LATENCY))
+        {
+            String[] values = value.split(",");
+            for(ResultRecord.VersionLoop version : this.loop.versions)
+            {
+                if(0 == version.appVersion.compareTo(values[0]))
+                {
+                    version.latencies.add(parseLatency(values, 1));
+                }
+            }
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_LATENCY))
+        {
+            String[] values = value.split(",");
+            this.loop.latencies.add(parseLatency(values, 0));
+        }
+    }
+
+    private void acceptCollectDetail(String line, long time)
+    {
+        final int valueIndex = valueIndex(line);
+        if(valueIndex < 0)
+        {
+            return;
+        }
+
+        try
+        {
+            List<ResultRecord.Container> containers = new ArrayList<>();
+            for(ContainerInfo containerInfo : ContainerInfo.parseList(line.substring(valueIndex)))
+            {
+                containers.add(ResultRecord.Container.from(containerInfo));
+            }
+
+            this.collect.samples.add(new ReportModel.Sample(time, containers));
+        }
+        catch(Throwable t)
+        {
+            this.logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+        }
+    }
+
+    private void acceptCollectSummary(String line)
+    {
+        final int valueIndex = valueIndex(line);
+        if(valueIndex < 0)
+        {
+            return;
+        }
+
+        if(line.startsWith(LogParserUtil.SYMBOL_RESOURCE_USAGE))
+        {
+            String[] values = line.substring(valueIndex).split(",");
+            if(10 != values.length)
+            {
+                return;
+            }
+
+            ResultRecord.Usage usage = new ResultRecord.Usage();
+            usage.container = values[1];
+            usage.metric = values[2];
+            usage.count = Long.parseLong(values[3]);
+            usage.min = Double.parseDouble(values[4]);
+            usage.mean = Double.parseDouble(values[5]);
+            usage.variance = Double.parseDouble(values[6]);
+            usage.p50 = Double.parseDouble(values[7]);
+            usage.p95 = Double.parseDouble(values[8]);
+            usage.max = Double.parseDouble(values[9]);
+            this.collect.usages.add(usage);
+        }
+        else if(line.startsWith(LogParserUtil.SYMBOL_THRESHOLD_BREACH))
+        {
+            String[] values = line.substring(valueIndex).split(",");
+            if(7 != values.length)
+            {
+                return;
+            }
+
+            ResultRecord.Breach breach = new ResultRecord.Breach();
+            breach.container = values[2];
+            breach.metric = values[3];
+            breach.value = Double.parseDouble(values[4]);
+            breach.threshold = Double.parseDouble(values[5]);
+            breach.sampleCount = Integer.parseInt(values[6]);
+            this.collect.breach = ResultRecord.breach(values[0], Long.parseLong(values[1]), breach);
+        }
+    }
+
+    private boolean isLastMinute(CharSequence line)
+    {
+        if(null == this.lastMinute)
+        {
+            return false;
+        }
+
+        for(int idx = 0; idx < MINUTE_LENGTH; idx ++)
+        {
+            if(line.charAt(idx) != this.lastMinute.charAt(idx))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A marker line is the symbol alone, possibly followed by white space such as a carriage return
+     */
+    private static boolean isMarker(String line, String symbol)
+    {
+        if(false == line.startsWith(symbol))
+        {
+            return false;
+        }
+
+        for(int idx = symbol.length(); idx < line.length(); idx ++)
+        {
+            if(false == Character.isWhitespace(line.charAt(idx)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return index of the value after the only delimiter of the line, -1 when there is no value
+     */
+    private static int valueIndex(String line)
+    {
+        final int delimiterIndex = line.indexOf(DELIMITER);
+        if(delimiterIndex < 0)
+        {
+            return -1;
+        }
+
+        final int valueIndex = delimiterIndex + DELIMITER.length();
+        if(valueIndex == line.length() || line.indexOf(DELIMITER, valueIndex) >= 0)
+        {
+            return -1;
+        }
+
+        return valueIndex;
+    }
+
+    /**
+     * Reads {@code operation,count,min,mean,p50,p90,p99,max} starting at the given index
+     */
+    private static ResultRecord.Latency parseLatency(String[] values, int offset)
+    {
+        ResultRecord.Latency latency = new ResultRecord.Latency();
+        latency.operation = values[offset];
+        latency.count = Long.parseLong(values[offset + 1]);
+        latency.min = Double.parseDouble(values[offset + 2]);
+        latency.mean = Double.parseDouble(values[offset + 3]);
+        latency.p50 = Double.parseDouble(values[offset + 4]);
+        latency.p90 = Double.parseDouble(values[offset + 5]);
+        latency.p99 = Double.parseDouble(values[offset + 6]);
+        latency.max = Double.parseDouble(values[offset + 7]);
+
+        return latency;
+    }
+}
@@ -0,0 +1,91 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.List;
+
+/**
+ * One entry of the ubus 'Services.Management.LCM.ExecutionEnvironments' list
+ */
+public final class ContainerInfo
+{
+    private final String id;
+    private final String name;
+    // percent, NaN when not reported
+    private final double cpuUsage;
+    private final double memoryUsage;
+    private final double storageUsage;
+
+    ContainerInfo(String id, String name, double cpuUsage, double memoryUsage, double storageUsage)
+    {
+        this.id = id;
+        this.name = name;
+        this.cpuUsage = cpuUsage;
+        this.memoryUsage = memoryUsage;
+        this.storageUsage = storageUsage;
+    }
+
+    public String getId()
+    {
+        return this.id;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return CPU usage in percent or null if not reported
+     */
+    public Double getCpuUsage()
+    {
+        return toUsage(this.cpuUsage);
+    }
+
+    /**
+     * @return memory usage in percent or null if not reported
+     */
+    public Double getMemoryUsage()
+    {
+        return toUsage(this.memoryUsage);
+    }
+
+    /**
+     * @return storage usage in percent or null if not reported
+     */
+    public Double getStorageUsage()
+    {
+        return toUsage(this.storageUsage);
+    }
+
+    /**
+     * Usage in percent as decoded, NaN when not reported, for the sample store's float columns
+     */
+    double getCpuUsageValue()
+    {
+        return this.cpuUsage;
+    }
+
+    double getMemoryUsageValue()
+    {
+        return this.memoryUsage;
+    }
+
+    double getStorageUsageValue()
+    {
+        return this.storageUsage;
+    }
+
+    /**
+     * Parses the result of the ubus 'List' command
+     */
+    public static List<ContainerInfo> parseList(String text)
+    throws Exception
+    {
+        return ContainerListDecoder.decode(text);
+    }
+
+    private static Double toUsage(double usage)
+    {
+        return Double.isNaN(usage) ? null : usage;
+    }
+}
@@ -0,0 +1,254 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sercomm.commons.util.Json;
+
+/**
+ * Decodes the result of the ubus 'List' command in a single streaming pass.
+ * Only the id, the name and the CPU, memory and storage usage of each entry
+ * are read, everything else is skipped without building a tree, and the
+ * usage is converted to percent once here instead of on every access.
+ */
+class ContainerListDecoder
+{
+    private static final String FIELD_LIST = "List";
+    private static final String FIELD_ID = "Id";
+    private static final String FIELD_NAME = "Name";
+    private static final String FIELD_RESOURCES = "Resources";
+    private static final String FIELD_CPU = "CPU";
+    private static final String FIELD_MEMORY = "Memory";
+    private static final String FIELD_STORAGE = "Storage";
+    private static final String FIELD_USAGE = "Usage";
+
+    // thread safe and reused, so the parser configuration is resolved once
+    private static final ObjectReader READER = Json.mapper().reader();
+
+    /**
+     * @param text result of which the first 'List' field, at any depth, holds the entries
+     */
+    static List<ContainerInfo> decode(String text)
+    throws IOException
+    {
+        try(JsonParser parser = READER.getFactory().createParser(text))
+        {
+            if(false == seekList(parser))
+            {
+                throw new IOException("NO CONTAINER LIST");
+            }
+
+            List<ContainerInfo> containerInfos = new ArrayList<>();
+
+            JsonToken token;
+            while(JsonToken.END_ARRAY != (token = parser.nextToken()))
+            {
+                if(JsonToken.START_OBJECT == token)
+                {
+                    containerInfos.add(readContainer(parser));
+                }
+                else if(JsonToken.VALUE_NULL != token)
+                {
+                    throw new IOException("UNEXPECTED CONTAINER ENTRY: " + token);
+                }
+            }
+
+            return containerInfos;
+        }
+    }
+
+    /**
+     * Moves the parser to the start of the entries, fields are met in document
+     * order so the first 'List' field found is the one a depth first search finds
+     */
+    private static boolean seekList(JsonParser parser)
+    throws IOException
+    {
+        JsonToken token;
+        while(null != (token = parser.nextToken()))
+        {
+            if(JsonToken.FIELD_NAME != token || false == FIELD_LIST.equals(parser.getCurrentName()))
+            {
+                continue;
+            }
+
+            if(JsonToken.START_ARRAY != parser.nextToken())
+            {
+                throw new IOException("CONTAINER LIST IS NOT AN ARRAY");
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static ContainerInfo readContainer(JsonParser parser)
+    throws IOException
+    {
+        String id = null;
+        String name = null;
+        // percent, NaN when not reported
+        double[] usages = new double[] { Double.NaN, Double.NaN, Double.NaN };
+
+        while(JsonToken.FIELD_NAME == parser.nextToken())
+        {
+            final String field = parser.getCurrentName();
+            if(FIELD_ID.equals(field))
+            {
+                id = readText(parser);
+            }
+            else if(FIELD_NAME.equals(field))
+            {
+                name = readText(parser);
+            }
+            else if(FIELD_RESOURCES.equals(field))
+            {
+                if(nextObject(parser))
+                {
+                    readResources(parser, usages);
+                }
+            }
+            else
+            {
+                skipValue(parser);
+            }
+        }
+
+        return new ContainerInfo(id, name, usages[0], usages[1], usages[2]);
+    }
+
+    private static void readResources(JsonParser parser, double[] usages)
+    throws IOException
+    {
+        while(JsonToken.FIELD_NAME == parser.nextToken())
+        {
+            final String field = parser.getCurrentName();
+            if(FIELD_CPU.equals(field))
+            {
+                // reported in percent, with or without the sign
+                if(nextObject(parser))
+                {
+                    usages[0] = readUsage(parser);
+                }
+            }
+            else if(FIELD_MEMORY.equals(field))
+            {
+                if(nextObject(parser))
+                {
+                    usages[1] = toPercent(readUsage(parser));
+                }
+            }
+            else if(FIELD_STORAGE.equals(field))
+            {
+                if(nextObject(parser))
+                {
+                    usages[2] = toPercent(readUsage(parser));
+                }
+            }
+            else
+            {
+                skipValue(parser);
+            }
+        }
+    }
+
+    /**
+     * Reads the 'Usage' of a resource object, 0 when the resource does not report it
+     */
+    private static double readUsage(JsonParser parser)
+    throws IOException
+    {
+        double usage = 0.;
+        while(JsonToken.FIELD_NAME == parser.nextToken())
+        {
+            if(false == FIELD_USAGE.equals(parser.getCurrentName()))
+            {
+                skipValue(parser);
+                continue;
+            }
+
+            final JsonToken token = parser.nextToken();
+            if(JsonToken.VALUE_NUMBER_FLOAT == token || JsonToken.VALUE_NUMBER_INT == token)
+            {
+                usage = parser.getDoubleValue();
+            }
+            else if(JsonToken.VALUE_STRING == token)
+            {
+                usage = parseUsage(parser.getText());
+            }
+            else if(JsonToken.VALUE_NULL == token)
+            {
+                usage = Double.NaN;
+            }
+            else
+            {
+                parser.skipChildren();
+                throw new IOException("UNEXPECTED USAGE: " + token);
+            }
+        }
+
+        return usage;
+    }
+
+    private static double parseUsage(String text)
+    {
+        int end = text.length();
+        while(end > 0 && ('%' == text.charAt(end - 1) || Character.isWhitespace(text.charAt(end - 1))))
+        {
+            end --;
+        }
+
+        return Double.parseDouble(end == text.length() ? text : text.substring(0, end));
+    }
+
+    /**
+     * Converts a fraction to percent rounded to 2 decimals
+     */
+    private static double toPercent(double fraction)
+    {
+        return Double.isNaN(fraction) ? fraction : Math.round(fraction * 10000.) / 100.;
+    }
+
+    /**
+     * @return text of a scalar value, null for null or a nested value which is skipped
+     */
+    private static String readText(JsonParser parser)
+    throws IOException
+    {
+        final JsonToken token = parser.nextToken();
+        if(token.isScalarValue() && JsonToken.VALUE_NULL != token)
+        {
+            return parser.getValueAsString();
+        }
+
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * @return whether the next value is an object, any other value is skipped
+     */
+    private static boolean nextObject(JsonParser parser)
+    throws IOException
+    {
+        if(JsonToken.START_OBJECT == parser.nextToken())
+        {
+            return true;
+        }
+
+        parser.skipChildren();
+        return false;
+    }
+
+    private static void skipValue(JsonParser parser)
+    throws IOException
+    {
+        parser.nextToken();
+        parser.skipChildren();
+    }
+}
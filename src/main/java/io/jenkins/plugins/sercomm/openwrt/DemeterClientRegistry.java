@@ -0,0 +1,76 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sercomm.demeter.microservices.client.v1.RESTfulClient;
+
+/**
+ * Long-lived Demeter clients keyed by endpoint. Reusing one client per
+ * endpoint lets its HTTP connections be kept alive between calls instead
+ * of paying a new TLS handshake for every request.
+ * <p>
+ * The client builder has no keep-alive or pool settings and the client does
+ * not expose its connections, so handshakes cannot be counted here. The
+ * counters tell how many calls were served by an existing client and how
+ * many clients had to be built, each of which starts without a connection.
+ */
+public class DemeterClientRegistry
+{
+    private final ConcurrentMap<String, RESTfulClient> clients = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong(0L);
+    private final AtomicLong newClientCount = new AtomicLong(0L);
+
+    public RESTfulClient acquire(String endpoint)
+    {
+        RESTfulClient client = this.clients.get(endpoint);
+        if(null != client)
+        {
+            this.hitCount.incrementAndGet();
+            return client;
+        }
+
+        return this.clients.computeIfAbsent(endpoint, key -> {
+            this.newClientCount.incrementAndGet();
+            return newClient(key);
+        });
+    }
+
+    /**
+     * Drops every client, the next {@link #acquire(String)} builds a new one. The
+     * dropped clients are not closed, loops and collections still running may be
+     * in the middle of a call on them; they are collected once those calls end.
+     */
+    public void invalidate()
+    {
+        this.clients.clear();
+    }
+
+    /**
+     * Number of calls served by an existing client
+     */
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Number of clients built by {@link #acquire(String)}
+     */
+    public long getNewClientCount()
+    {
+        return this.newClientCount.get();
+    }
+
+    /**
+     * Builds a client which is not kept, e.g. to validate an endpoint typed into a form
+     */
+    public static RESTfulClient newClient(String endpoint)
+    {
+        return new RESTfulClient.Builder()
+                .enableSSL(true)
+                .endpoint(endpoint).build();
+    }
+}
@@ -0,0 +1,40 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+/**
+ * Demeter calls timed by the loop builder
+ */
+public enum DemeterOperation
+{
+    GET_DEVICE("getDevice"),
+    GET_INSTALLABLE_APPS("getInstallableApps"),
+    GET_INSTALLED_APP("getInstalledApp"),
+    INSTALL_APP("installApp"),
+    START_APP("startApp"),
+    STOP_APP("stopApp"),
+    UNINSTALL_APP("uninstallApp");
+
+    private final String methodName;
+
+    DemeterOperation(String methodName)
+    {
+        this.methodName = methodName;
+    }
+
+    public String getMethodName()
+    {
+        return this.methodName;
+    }
+
+    public static DemeterOperation fromMethodName(String methodName)
+    {
+        for(DemeterOperation operation : values())
+        {
+            if(0 == operation.methodName.compareTo(methodName))
+            {
+                return operation;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by every running Pipeline step and resource collection of
+ * this plugin. The scheduler only runs short tasks, a poll, a sample or a
+ * checkpoint, each holding a thread for a single Demeter call, and the waits
+ * in between are scheduled, so a few threads drive hundreds of loops and
+ * sampled DUTs.
+ * <p>
+ * A loop cycle, install, start, stop and uninstall of one DUT, blocks for
+ * several Demeter calls in a row and runs on the loop executor instead. At
+ * most {@link #LOOP_POOL_SIZE} cycles run at once over every build of the
+ * controller, the cycles of further DUTs wait their turn in order, and the
+ * polls and samples of all builds are never stuck behind them.
+ */
+final class DemeterStepScheduler
+{
+    private static final int POOL_SIZE = 16;
+    static final int LOOP_POOL_SIZE = 16;
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private static volatile ScheduledExecutorService executor = null;
+    private static volatile ExecutorService loopExecutor = null;
+
+    private DemeterStepScheduler()
+    {
+    }
+
+    static ScheduledExecutorService get()
+    {
+        ScheduledExecutorService result = executor;
+        if(null != result)
+        {
+            return result;
+        }
+
+        synchronized(DemeterStepScheduler.class)
+        {
+            if(null == executor)
+            {
+                ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(POOL_SIZE, new StepThreadFactory("OpenWRT step #"));
+                // cancelled polls and samples must not pile up in the queue
+                pool.setRemoveOnCancelPolicy(true);
+                executor = pool;
+            }
+
+            return executor;
+        }
+    }
+
+    /**
+     * Threads of the blocking loop cycles
+     */
+    static ExecutorService getLoopExecutor()
+    {
+        ExecutorService result = loopExecutor;
+        if(null != result)
+        {
+            return result;
+        }
+
+        synchronized(DemeterStepScheduler.class)
+        {
+            if(null == loopExecutor)
+            {
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    LOOP_POOL_SIZE,
+                    LOOP_POOL_SIZE,
+                    KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new StepThreadFactory("OpenWRT loop cycle #"));
+                // no thread is kept while no loop runs
+                pool.allowCoreThreadTimeOut(true);
+                loopExecutor = pool;
+            }
+
+            return loopExecutor;
+        }
+    }
+
+    private static final class StepThreadFactory implements ThreadFactory
+    {
+        private final String prefix;
+        private final AtomicInteger lastThreadId = new AtomicInteger(0);
+
+        StepThreadFactory(String prefix)
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, this.prefix + this.lastThreadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
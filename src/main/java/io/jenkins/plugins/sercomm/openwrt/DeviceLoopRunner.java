@@ -0,0 +1,725 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import com.sercomm.commons.umei.UMEiError;
+import com.sercomm.commons.util.DateTime;
+import com.sercomm.commons.util.XStringUtil;
+import com.sercomm.demeter.microservices.client.v1.GetDeviceRequest;
+import com.sercomm.demeter.microservices.client.v1.GetDeviceResult;
+import com.sercomm.demeter.microservices.client.v1.GetInstalledAppRequest;
+import com.sercomm.demeter.microservices.client.v1.GetInstalledAppResult;
+import com.sercomm.demeter.microservices.client.v1.InstallAppRequest;
+import com.sercomm.demeter.microservices.client.v1.InstallAppResult;
+import com.sercomm.demeter.microservices.client.v1.RESTfulClient;
+import com.sercomm.demeter.microservices.client.v1.StartAppRequest;
+import com.sercomm.demeter.microservices.client.v1.StartAppResult;
+import com.sercomm.demeter.microservices.client.v1.StopAppRequest;
+import com.sercomm.demeter.microservices.client.v1.StopAppResult;
+import com.sercomm.demeter.microservices.client.v1.UninstallAppRequest;
+import com.sercomm.demeter.microservices.client.v1.UninstallAppResult;
+
+/**
+ * Runs the install/start/stop/uninstall loop against a single DUT.
+ * Several App versions are interleaved loop by loop (v1, v2, v1, v2 ...)
+ * and counted separately, so drift of the DUT or the backend over time
+ * affects every version alike.
+ * Several runners may share one logger, so every message is written
+ * as a complete line and prefixed by the device ID when a tag is given.
+ */
+class DeviceLoopRunner implements Callable<LoopCounters>
+{
+    private static final long READY_POLL_INITIAL_MILLIS = 250L;
+    private static final long READY_POLL_MAX_MILLIS = 4000L;
+    private static final long READY_TIMEOUT_MILLIS = 120000L;
+
+    private final String endpoint;
+    private final String deviceId;
+    private final String appPublisher;
+    private final String appName;
+    private final List<String> appVersions;
+    private final boolean startApp;
+    private final int totalCount;
+    private final int revalidateCount;
+    private final SoakControl soak;
+
+    private final AppCatalog catalog;
+    private final PrintStream logger;
+    private final String tag;
+    private final Map<String, LoopCounters> versionCounters = new LinkedHashMap<>();
+
+    // counters of the version being looped, every call below records into them
+    private LoopCounters counters;
+
+    private LoopCheckpoint checkpoint = null;
+    private int checkpointEvery = 0;
+    private int firstLoop = 1;
+    private int completedLoops = 0;
+
+    private final Map<String, LoopTarget> targets = new HashMap<>();
+    private LoopTarget lastTarget = null;
+
+    private String pendingStep = XStringUtil.BLANK;
+
+    // where the DUT is, read by the resource sampler from another thread
+    private volatile int phaseLoop = 0;
+    private volatile LoopPhase phase = LoopPhase.PREPARE;
+
+    DeviceLoopRunner(
+            String endpoint,
+            String deviceId,
+            String appPublisher,
+            String appName,
+            List<String> appVersions,
+            boolean startApp,
+            int totalCount,
+            int revalidateCount,
+            SoakControl soak,
+            AppCatalog catalog,
+            PrintStream logger,
+            boolean tagged)
+    {
+        this.endpoint = endpoint;
+        this.deviceId = deviceId;
+        this.appPublisher = appPublisher;
+        this.appName = appName;
+        this.appVersions = new ArrayList<>(appVersions);
+        this.startApp = startApp;
+        this.totalCount = totalCount;
+        this.revalidateCount = revalidateCount;
+        this.soak = soak;
+
+        this.catalog = catalog;
+        this.logger = logger;
+        this.tag = tagged ? "[" + deviceId + "] " : XStringUtil.BLANK;
+        for(String appVersion : this.appVersions)
+        {
+            this.versionCounters.put(appVersion, new LoopCounters(deviceId, appVersion));
+        }
+        this.counters = this.versionCounters.get(this.appVersions.get(0));
+    }
+
+    String getDeviceId()
+    {
+        return this.deviceId;
+    }
+
+    /**
+     * Totals of the DUT over all versions
+     */
+    LoopCounters getCounters()
+    {
+        LoopCounters total = new LoopCounters(this.deviceId);
+        for(LoopCounters item : this.versionCounters.values())
+        {
+            total.merge(item);
+        }
+
+        return total;
+    }
+
+    /**
+     * Live counters of each version, in the order the versions are looped
+     */
+    List<LoopCounters> getVersionCounters()
+    {
+        return new ArrayList<>(this.versionCounters.values());
+    }
+
+    /**
+     * Saves the progress every N loops and when the runner stops
+     */
+    void enableCheckpoint(LoopCheckpoint checkpoint, int checkpointEvery)
+    {
+        this.checkpoint = checkpoint;
+        this.checkpointEvery = checkpointEvery;
+    }
+
+    /**
+     * Continues after the loops and counts saved by a previous session
+     */
+    void restore(LoopCheckpoint.Device state)
+    {
+        for(LoopCheckpoint.Counters item : state.versions)
+        {
+            LoopCounters counters = this.versionCounters.get(item.appVersion);
+            if(null != counters)
+            {
+                item.restoreTo(counters);
+            }
+        }
+
+        this.completedLoops = state.completedLoops;
+        this.firstLoop = state.completedLoops + 1;
+    }
+
+    int getFirstLoop()
+    {
+        return this.firstLoop;
+    }
+
+    /**
+     * @return the loop the DUT is in, 0 before the first one
+     */
+    int getPhaseLoop()
+    {
+        return this.phaseLoop;
+    }
+
+    LoopPhase getPhase()
+    {
+        return this.phase;
+    }
+
+    @Override
+    public LoopCounters call()
+    throws InterruptedException
+    {
+        try
+        {
+            for(int idx = this.firstLoop; this.hasLoop(idx); idx ++)
+            {
+                if(Thread.currentThread().isInterrupted())
+                {
+                    throw new InterruptedException("LOOP ABORTED");
+                }
+
+                this.runLoop(idx);
+
+                // wait next round
+                if(this.hasLoop(idx + 1))
+                {
+                    ReadyWait wait = this.beginWait(idx);
+
+                    long delay;
+                    while(0L <= (delay = wait.poll()))
+                    {
+                        Thread.sleep(delay);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            this.saveCheckpoint();
+        }
+
+        return this.getCounters();
+    }
+
+    /**
+     * Runs loop #idx, a failed loop is logged and counted but never thrown.
+     * Does not sleep, so callers may schedule the loops of many DUTs on a few threads.
+     */
+    void runLoop(int idx)
+    {
+        final String appVersion = this.appVersions.get((idx - 1) % this.appVersions.size());
+        this.counters = this.versionCounters.get(appVersion);
+        this.counters.addTotal();
+
+        LoopTarget target = this.targets.get(appVersion);
+        this.enterPhase(idx, LoopPhase.PREPARE);
+        try
+        {
+            if(this.appVersions.size() > 1)
+            {
+                this.log("INFO", "loop #%d go, version %s", idx, appVersion);
+            }
+            else
+            {
+                this.log("INFO", "loop #%d go", idx);
+            }
+
+            // the device and the catalog do not change during a run, 
+            // resolve them once and re-check the device every N loops only
+            if(false == this.targets.isEmpty() && 
+               0 < this.revalidateCount && 
+               0 == (idx - 1) % this.revalidateCount)
+            {
+                this.log("INFO", "revalidating DUT and App...");
+                this.targets.clear();
+                target = null;
+            }
+
+            if(null == target)
+            {
+                target = this.resolveTarget(appVersion);
+                this.targets.put(appVersion, target);
+            }
+
+            this.runOnce(target);
+            this.log("INFO", "loop #%d completed", idx);
+        }
+        catch(Throwable t)
+        {
+            // output error message
+            this.log("ERROR", "%s", t.getMessage());
+
+            // the DUT may have gone away, check it again before the next loop
+            this.targets.clear();
+            target = null;
+
+            if(null != this.soak)
+            {
+                this.soak.recordFailure();
+            }
+        }
+
+        this.lastTarget = target;
+        this.completedLoops = idx;
+        if(0 < this.checkpointEvery && 0 == idx % this.checkpointEvery)
+        {
+            this.saveCheckpoint();
+        }
+    }
+
+    /**
+     * Starts waiting for the DUT to settle after loop #idx
+     */
+    ReadyWait beginWait(int idx)
+    {
+        this.log("NOTICE", "waiting next loop to be started...");
+        this.enterPhase(idx, LoopPhase.WAIT);
+        return new ReadyWait(this.lastTarget, idx);
+    }
+
+    /**
+     * Saves the progress once more, to be called when the runner stops
+     */
+    void finish()
+    {
+        this.saveCheckpoint();
+    }
+
+    private void saveCheckpoint()
+    {
+        if(null == this.checkpoint)
+        {
+            return;
+        }
+
+        LoopCheckpoint.Device state = new LoopCheckpoint.Device();
+        state.deviceId = this.deviceId;
+        state.completedLoops = this.completedLoops;
+        for(LoopCounters counters : this.versionCounters.values())
+        {
+            state.versions.add(LoopCheckpoint.Counters.from(counters));
+        }
+
+        try
+        {
+            this.checkpoint.update(state, this.soak);
+        }
+        catch(IOException e)
+        {
+            this.log("WARN", "failed to save checkpoint: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * A fixed run stops after the loop count, a soak run once its duration
+     * elapses or its failure budget is used up
+     */
+    boolean hasLoop(int idx)
+    {
+        if(null == this.soak)
+        {
+            return idx <= this.totalCount;
+        }
+
+        return false == this.soak.isExhausted();
+    }
+
+    /**
+     * Polls the DUT with capped exponential backoff until it is online and
+     * the App is no longer installed, so the next loop starts as soon as the
+     * DUT has settled. Gives up after {@link #READY_TIMEOUT_MILLIS} and lets
+     * the next loop clean up whatever is left.
+     */
+    final class ReadyWait
+    {
+        private final LoopTarget target;
+        private final int idx;
+        private final long beginTime = System.nanoTime();
+
+        private long delay = READY_POLL_INITIAL_MILLIS;
+        private int pollCount = 0;
+
+        private ReadyWait(LoopTarget target, int idx)
+        {
+            this.target = target;
+            this.idx = idx;
+        }
+
+        /**
+         * Polls the DUT once
+         *
+         * @return milliseconds to wait before the next poll, negative once the wait is over
+         */
+        long poll()
+        {
+            this.pollCount += 1;
+
+            boolean ready;
+            try
+            {
+                ready = isReady(this.target);
+            }
+            catch(Throwable t)
+            {
+                // not ready yet, Demeter may not have caught up with the DUT
+                ready = false;
+            }
+
+            final long elapsed = (System.nanoTime() - this.beginTime) / 1000000L;
+            if(ready)
+            {
+                log("INFO", "loop #%d DUT ready after %d ms (%d polls)", this.idx, elapsed, this.pollCount);
+                return -1L;
+            }
+
+            if(elapsed >= READY_TIMEOUT_MILLIS)
+            {
+                log("WARN", "loop #%d DUT not ready after %d ms (%d polls), starting next loop anyway", this.idx, elapsed, this.pollCount);
+                return -1L;
+            }
+
+            final long next = Math.min(this.delay, READY_TIMEOUT_MILLIS - elapsed);
+            this.delay = Math.min(this.delay * 2L, READY_POLL_MAX_MILLIS);
+
+            return next;
+        }
+    }
+
+    private boolean isReady(LoopTarget target)
+    {
+        RESTfulClient client = OpenWRTPlugin.acquireClient(this.endpoint);
+        long callTime;
+
+        GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId);
+
+        callTime = System.nanoTime();
+        GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
+        this.counters.recordLatency(DemeterOperation.GET_DEVICE, System.nanoTime() - callTime);
+        if(200 != getDeviceResult.getStatusCode() || 
+           getDeviceResult.hasError() ||
+           0 != getDeviceResult.getData().getState().compareTo("online"))
+        {
+            return false;
+        }
+
+        if(null == target)
+        {
+            // the App was never resolved, nothing else to wait for
+            return true;
+        }
+
+        GetInstalledAppRequest getInstalledAppRequest = new GetInstalledAppRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId)
+                .withAppId(target.getAppId());
+
+        callTime = System.nanoTime();
+        GetInstalledAppResult getInstalledAppResult = client.getInstalledApp(getInstalledAppRequest);
+        this.counters.recordLatency(DemeterOperation.GET_INSTALLED_APP, System.nanoTime() - callTime);
+        if(200 != getInstalledAppResult.getStatusCode())
+        {
+            return false;
+        }
+
+        // Demeter reports an error when the App is not installed on the DUT
+        return getInstalledAppResult.hasError();
+    }
+
+    /**
+     * Checks the DUT and looks up the App version in the catalog of its model.
+     * The catalog is only fetched by the first DUT of a model in this build.
+     */
+    private LoopTarget resolveTarget(String appVersion)
+    throws InterruptedException
+    {
+        RESTfulClient client = OpenWRTPlugin.acquireClient(this.endpoint);
+        long callTime;
+
+        // 1. check device status and its model name
+        this.beginStep("checking device status... ");
+        GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId);
+
+        callTime = System.nanoTime();
+        GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
+        this.counters.recordLatency(DemeterOperation.GET_DEVICE, System.nanoTime() - callTime);
+        if(200 != getDeviceResult.getStatusCode())
+        {
+            this.endStep("failed");
+            throw new InterruptedException("SERVER HTTP " + getDeviceResult.getStatusCode() + ", METHOD: 'getDevice'");
+        }
+
+        if(getDeviceResult.hasError())
+        {
+            this.endStep("failed");
+
+            UMEiError error = getDeviceResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }
+
+        if(0 != getDeviceResult.getData().getState().compareTo("online"))
+        {
+            this.endStep("failed");
+            throw new InterruptedException("DEVICE IS NOT ONLINE");
+        }
+        this.endStep("ok");
+
+        final String model = getDeviceResult.getData().getModel();
+
+        // 2. obtaining App list
+        if(false == this.catalog.contains(model))
+        {
+            this.beginStep("obtaining App list from Demeter server... ");
+            try
+            {
+                this.catalog.getInstallableApps(client, model, this.counters);
+            }
+            catch(InterruptedException e)
+            {
+                this.endStep("failed");
+                throw e;
+            }
+            this.endStep("ok");
+        }
+
+        // 2-1. checking the specific App to be available or not
+        this.beginStep("checking specific App... ");
+        LoopTarget target = this.catalog.find(
+            this.deviceId,
+            model,
+            this.appPublisher,
+            this.appName,
+            appVersion);
+
+        if(null == target)
+        {
+            this.endStep("failed");
+
+            throw new InterruptedException("SPECIFIC APP CANNOT BE FOUND");
+        }
+        this.endStep("ok");
+
+        return target;
+    }
+
+    private void runOnce(LoopTarget target)
+    throws InterruptedException
+    {
+        RESTfulClient client = OpenWRTPlugin.acquireClient(this.endpoint);
+        long callTime;
+
+        // 3. check if device has installed the specific App
+        this.beginStep("checking device installed Apps... ");
+        GetInstalledAppRequest getInstalledAppRequest = new GetInstalledAppRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId)
+                .withAppId(target.getAppId());
+        callTime = System.nanoTime();
+        GetInstalledAppResult getInstalledAppResult = client.getInstalledApp(getInstalledAppRequest);
+        this.counters.recordLatency(DemeterOperation.GET_INSTALLED_APP, System.nanoTime() - callTime);
+        if(200 != getInstalledAppResult.getStatusCode())
+        {
+            this.endStep("failed");
+            throw new InterruptedException("SERVER HTTP " + getInstalledAppResult.getStatusCode() + ", METHOD: 'getInstalledApp'");
+        }
+        this.endStep("ok");
+
+        if(false == getInstalledAppResult.hasError())
+        {
+            this.beginStep("App already been installed, uninstalling it... ");
+            // App being installed
+            // 3-1. uninstall the installed App
+            UninstallAppRequest uninstallAppRequest = new UninstallAppRequest()
+                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                    .withNodeName(this.deviceId)
+                    .withAppId(getInstalledAppResult.getData().getAppId());
+
+            callTime = System.nanoTime();
+            UninstallAppResult uninstallAppResult = client.uninstallApp(uninstallAppRequest);
+            this.counters.recordLatency(DemeterOperation.UNINSTALL_APP, System.nanoTime() - callTime);
+            if(200 != uninstallAppResult.getStatusCode())
+            {
+                this.endStep("WARN", "failed");
+                throw new InterruptedException("SERVER HTTP " + uninstallAppResult.getStatusCode() + ", METHOD: 'uninstallApp'");
+            }
+
+            if(uninstallAppResult.hasError())
+            {
+                this.endStep("WARN", "failed");
+
+                UMEiError error = uninstallAppResult.getErrors().get(0);
+                throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+            }
+            this.endStep("WARN", "ok");
+        }
+
+        // 4. install the specific App
+        this.enterPhase(this.phaseLoop, LoopPhase.INSTALL);
+        this.beginStep("installing specific App... ");
+        InstallAppRequest installAppRequest = new InstallAppRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId)
+                .withRequestContents(
+                    target.getAppId(),
+                    target.getVersionId(),
+                    UUID.randomUUID().toString());
+
+        callTime = System.nanoTime();
+        InstallAppResult installAppResult = client.installApp(installAppRequest);
+        this.counters.recordLatency(DemeterOperation.INSTALL_APP, System.nanoTime() - callTime);
+        if(200 != installAppResult.getStatusCode())
+        {
+            this.endStep("failed");
+            throw new InterruptedException("SERVER HTTP " + installAppResult.getStatusCode() + ", METHOD: 'installApp'");
+        }
+
+        if(installAppResult.hasError())
+        {
+            this.endStep("failed");
+
+            UMEiError error = installAppResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }
+
+        this.counters.addInstallOK();
+        this.endStep("ok");
+
+        // 5. start the App if necessary
+        if(this.startApp)
+        {
+            this.enterPhase(this.phaseLoop, LoopPhase.START);
+            this.beginStep("starting specific App... ");
+            StartAppRequest startAppRequest = new StartAppRequest()
+                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                    .withNodeName(this.deviceId)
+                    .withAppId(target.getAppId());
+
+            callTime = System.nanoTime();
+            StartAppResult startAppResult = client.startApp(startAppRequest);
+            this.counters.recordLatency(DemeterOperation.START_APP, System.nanoTime() - callTime);
+            if(200 != startAppResult.getStatusCode())
+            {
+                this.endStep("failed");
+                throw new InterruptedException("SERVER HTTP " + startAppResult.getStatusCode() + ", METHOD: 'startApp'");
+            }
+
+            if(startAppResult.hasError())
+            {
+                this.endStep("failed");
+
+                UMEiError error = startAppResult.getErrors().get(0);
+                throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+            }
+
+            this.counters.addStartOK();
+            this.endStep("ok");
+
+            // 6. stop the App if necessary
+            this.enterPhase(this.phaseLoop, LoopPhase.STOP);
+            this.beginStep("stoping specific App... ");
+            StopAppRequest stopAppRequest = new StopAppRequest()
+                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                    .withNodeName(this.deviceId)
+                    .withAppId(target.getAppId());
+
+            callTime = System.nanoTime();
+            StopAppResult stopAppResult = client.stopApp(stopAppRequest);
+            this.counters.recordLatency(DemeterOperation.STOP_APP, System.nanoTime() - callTime);
+            if(200 != stopAppResult.getStatusCode())
+            {
+                this.endStep("failed");
+
+                throw new InterruptedException("SERVER HTTP " + stopAppResult.getStatusCode() + ", METHOD: 'stopApp'");
+            }
+
+            if(stopAppResult.hasError())
+            {
+                this.endStep("failed");
+
+                UMEiError error = stopAppResult.getErrors().get(0);
+                throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+            }
+
+            this.counters.addStopOK();
+            this.endStep("ok");
+        }
+
+        // 7. uninstall the App
+        this.enterPhase(this.phaseLoop, LoopPhase.UNINSTALL);
+        this.beginStep("uninstalling specific App... ");
+        UninstallAppRequest uninstallAppRequest = new UninstallAppRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId)
+                .withAppId(target.getAppId());
+
+        callTime = System.nanoTime();
+        UninstallAppResult uninstallAppResult = client.uninstallApp(uninstallAppRequest);
+        this.counters.recordLatency(DemeterOperation.UNINSTALL_APP, System.nanoTime() - callTime);
+        if(200 != uninstallAppResult.getStatusCode())
+        {
+            this.endStep("failed");
+
+            throw new InterruptedException("SERVER HTTP " + uninstallAppResult.getStatusCode() + ", METHOD: 'uninstallApp'");
+        }
+
+        if(uninstallAppResult.hasError())
+        {
+            this.endStep("failed");
+
+            UMEiError error = uninstallAppResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }
+
+        this.counters.addUninstallOK();
+        this.endStep("ok");
+    }
+
+    private void enterPhase(int idx, LoopPhase phase)
+    {
+        this.phaseLoop = idx;
+        this.phase = phase;
+    }
+
+    private void beginStep(String message)
+    {
+        this.pendingStep = message;
+    }
+
+    private void endStep(String result)
+    {
+        this.endStep("INFO", result);
+    }
+
+    private void endStep(String level, String result)
+    {
+        this.log(level, "%s%s", this.pendingStep, result);
+        this.pendingStep = XStringUtil.BLANK;
+    }
+
+    private void log(String level, String format, Object... args)
+    {
+        // a single printf() per line keeps concurrent runners from splitting each other's lines
+        this.logger.printf("%s - [%s] %s%s%n",
+            DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+            level,
+            this.tag,
+            String.format(format, args));
+    }
+}
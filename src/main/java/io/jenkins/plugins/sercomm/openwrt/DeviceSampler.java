@@ -0,0 +1,340 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import com.sercomm.commons.umei.UMEiError;
+import com.sercomm.commons.util.DateTime;
+import com.sercomm.commons.util.XStringUtil;
+import com.sercomm.demeter.microservices.client.v1.GetDeviceRequest;
+import com.sercomm.demeter.microservices.client.v1.GetDeviceResult;
+import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsRequest;
+import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsResult;
+import com.sercomm.demeter.microservices.client.v1.GetInstalledAppRequest;
+import com.sercomm.demeter.microservices.client.v1.GetInstalledAppResult;
+import com.sercomm.demeter.microservices.client.v1.PostUbusCommandRequest;
+import com.sercomm.demeter.microservices.client.v1.PostUbusCommandResult;
+import com.sercomm.demeter.microservices.client.v1.RESTfulClient;
+
+import hudson.model.Run;
+
+/**
+ * Resource collection of one DUT within a {@link CollectSession}, with its
+ * own sampling schedule and its own series in the {@link SampleStore}.
+ */
+class DeviceSampler
+{
+    private final Run<?, ?> run;
+    private final PrintStream logger;
+    private final OpenWRTCollectBuilder config;
+    private final String endpoint;
+    private final String deviceId;
+
+    private SampleClock clock = null;
+    private volatile ScheduledFuture<?> future = null;
+    // samples not written to the store yet, also the lock of writing them
+    private final SampleStore.Chunk chunk;
+    // guarded by the chunk as well
+    private final ResourceStats stats = new ResourceStats();
+    // null when no threshold is watched
+    private final ResourceWatchdog watchdog;
+    // null unless the sampling period is adaptive
+    private AdaptiveRate adaptiveRate = null;
+
+    DeviceSampler(
+            Run<?, ?> run,
+            PrintStream logger,
+            OpenWRTCollectBuilder config,
+            String endpoint,
+            String deviceId)
+    {
+        this.run = run;
+        this.logger = logger;
+        this.config = config;
+        this.endpoint = endpoint;
+        this.deviceId = deviceId;
+        this.chunk = new SampleStore.Chunk(deviceId);
+        this.watchdog = ResourceWatchdog.from(deviceId, config);
+    }
+
+    String getDeviceId()
+    {
+        return this.deviceId;
+    }
+
+    SampleClock getClock()
+    {
+        return this.clock;
+    }
+
+    /**
+     * Checks the DUT is online and the App is installed before sampling starts
+     */
+    void prepare()
+    throws InterruptedException, IOException
+    {
+        final PrintStream logger = this.logger;
+        RESTfulClient client = OpenWRTPlugin.acquireClient(this.endpoint);
+        
+        // 1. check device status and its model name
+        logger.printf("%s - [INFO] checking device %s status... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.deviceId);
+        GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId);
+
+        GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
+        if(200 != getDeviceResult.getStatusCode())
+        {
+            logger.printf("failed%n");
+            throw new InterruptedException("SERVER HTTP " + getDeviceResult.getStatusCode() + ", METHOD: 'getDevice'");
+        }
+
+        if(getDeviceResult.hasError())
+        {
+            logger.printf("failed%n");
+            
+            UMEiError error = getDeviceResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }
+        
+        if(0 != getDeviceResult.getData().getState().compareTo("online"))
+        {
+            logger.printf("failed%n");
+            throw new InterruptedException("DEVICE IS NOT ONLINE");
+        }
+        logger.printf("ok%n");
+
+        // 2. obtaining App list
+        logger.printf("%s - [INFO] obtaining App list... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+        GetInstallableAppsRequest getInstallableAppRequest = new GetInstallableAppsRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withModel(getDeviceResult.getData().getModel())
+                .withFrom(0)
+                .withSize(500);
+
+        GetInstallableAppsResult getInstallableAppResult = client.getInstallableApps(getInstallableAppRequest);
+        if(200 != getInstallableAppResult.getStatusCode())
+        {
+            logger.printf("failed%n");
+            throw new InterruptedException("SERVER HTTP " + getInstallableAppResult.getStatusCode() + ", METHOD: 'getInstallableApps'");
+        }
+
+        if(getInstallableAppResult.hasError())
+        {
+            logger.printf("failed%n");
+
+            UMEiError error = getInstallableAppResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }                        
+        logger.printf("ok%n");
+        
+        // 2-1. checking the specific App to be available or not
+        logger.printf("%s - [INFO] checking specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+        GetInstallableAppsResult.ResultData installableApp = null;
+        GetInstallableAppsResult.ResultData.Version installableVersion = null;
+        
+        for(GetInstallableAppsResult.ResultData app : getInstallableAppResult.getData())
+        {
+            if(0 != app.getPublisher().compareTo(this.config.getAppPublisher()))
+            {
+                continue;
+            }
+            
+            if(0 != app.getAppName().compareTo(this.config.getAppName()))
+            {
+                continue;
+            }
+            
+            for(GetInstallableAppsResult.ResultData.Version version : app.getVersions())
+            {
+                if(0 != version.getVersionName().compareTo(this.config.getAppVersion()))
+                {
+                    continue;
+                }
+                
+                installableApp = app;
+                installableVersion = version;
+            }
+        }
+        
+        if(null == installableApp || null == installableVersion)
+        {
+            logger.printf("failed%n");
+            
+            throw new InterruptedException("SPECIFIC APP CANNOT BE FOUND");
+        }
+        logger.printf("ok%n");
+        
+        // 3. check if device has installed the specific App
+        logger.printf("%s - [INFO] checking device %s installed Apps... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.deviceId);
+        GetInstalledAppRequest getInstalledAppRequest = new GetInstalledAppRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(this.deviceId)
+                .withAppId(installableApp.getAppId());
+        GetInstalledAppResult getInstalledAppResult = client.getInstalledApp(getInstalledAppRequest);
+        if(200 != getInstalledAppResult.getStatusCode())
+        {
+            logger.printf("failed%n");
+            throw new InterruptedException("SERVER HTTP " + getInstalledAppResult.getStatusCode() + ", METHOD: 'getInstalledApp'");
+        }
+        logger.printf("ok%n");
+
+        if(true == getInstalledAppResult.hasError())
+        {
+            throw new InterruptedException("SPECIFIC APP HAS NOT BEEN INSTALLED YET");
+        }
+
+        ResultsFile.append(this.run, ResultRecord.collect(
+            this.deviceId,
+            this.config.getAppPublisher(),
+            this.config.getAppName(),
+            this.config.getAppVersion()));
+    }
+
+    /**
+     * Starts the sampling schedule
+     *
+     * @param periodMillis time between two samples
+     * @param durationMillis time of the whole collection
+     * @param elapsedMillis time of the collection already spent, e.g. before a restart
+     */
+    void startClock(long periodMillis, long durationMillis, long elapsedMillis)
+    {
+        this.clock = new SampleClock(periodMillis, durationMillis, elapsedMillis);
+        if(this.config.getAdaptiveSampling())
+        {
+            this.adaptiveRate = new AdaptiveRate(
+                periodMillis,
+                OpenWRTCollectBuilder.parseMaxInterval(this.config.getMaxInterval()) * 1000L,
+                OpenWRTCollectBuilder.parseChangeTolerance(this.config.getChangeTolerance()));
+        }
+    }
+
+    /**
+     * Takes the sample that is due of the container resource consumption
+     *
+     * @return the breach record when the sample breaches a threshold, otherwise null
+     */
+    ResultRecord sample()
+    throws InterruptedException, IOException
+    {
+        final long time = this.clock.beginSample();
+        final long periodMillis = this.clock.getPeriodMillis();
+        final String result = requestContainers(this.endpoint, this.deviceId);
+
+        List<ContainerInfo> containerInfos;
+        try
+        {
+            containerInfos = ContainerInfo.parseList(result);
+        }
+        catch(Exception e)
+        {
+            this.logger.printf("%s - [WARN] unrecognized sample: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+            return null;
+        }
+
+        final ResultRecord breach;
+        synchronized(this.chunk)
+        {
+            if(null == this.adaptiveRate)
+            {
+                this.chunk.add(time, containerInfos);
+            }
+            else
+            {
+                this.chunk.add(time, containerInfos, periodMillis);
+            }
+            this.stats.add(containerInfos);
+            if(this.chunk.isFull() || this.chunk.isStale(System.currentTimeMillis()))
+            {
+                SampleStore.append(this.run, this.chunk);
+            }
+
+            breach = null == this.watchdog ? null : this.watchdog.check(time, containerInfos);
+        }
+
+        if(null != this.adaptiveRate)
+        {
+            this.clock.setPeriodMillis(this.adaptiveRate.next(periodMillis, containerInfos));
+        }
+
+        return breach;
+    }
+
+    /**
+     * Lists the execution environments of the DUT with their resource consumption
+     *
+     * @return the raw ubus result
+     */
+    static String requestContainers(String endpoint, String deviceId)
+    throws InterruptedException
+    {
+        RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
+
+        PostUbusCommandRequest request = new PostUbusCommandRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withNodeName(deviceId)
+                .withRequestContents("List", "Services.Management.LCM.ExecutionEnvironments", XStringUtil.BLANK);
+        
+        PostUbusCommandResult result = client.postUbusCommand(request);
+        if(200 != result.getStatusCode())
+        {
+            throw new InterruptedException("SERVER HTTP " + result.getStatusCode() + ", METHOD: 'postUbusCommand'");
+        }
+        
+        if(true == result.hasError())
+        {
+            UMEiError error = result.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());                    
+        }
+
+        return result.getData().getResult();
+    }
+
+    List<ResultRecord.Usage> getUsages()
+    {
+        synchronized(this.chunk)
+        {
+            return this.stats.toUsages();
+        }
+    }
+
+    /**
+     * Counts samples taken before a restart into the statistics
+     */
+    void restoreStats(List<ReportModel.Sample> samples)
+    {
+        synchronized(this.chunk)
+        {
+            this.stats.addSamples(samples);
+        }
+    }
+
+    /**
+     * Writes the samples still buffered to the store
+     */
+    void flush()
+    throws IOException
+    {
+        synchronized(this.chunk)
+        {
+            SampleStore.append(this.run, this.chunk);
+        }
+    }
+
+    void setFuture(ScheduledFuture<?> future)
+    {
+        this.future = future;
+    }
+
+    void cancel()
+    {
+        final ScheduledFuture<?> future = this.future;
+        if(null != future)
+        {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Log-linear histogram of latencies in microseconds. Every power of two is
+ * split into 16 linear buckets, which keeps quantiles within ~6% of the
+ * recorded value while recording costs a few bit operations and no allocation.
+ * Not thread-safe, each loop worker owns its histograms.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /**
+     * Persistent form of a histogram, only the non-empty buckets are kept
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class State
+    {
+        @JsonProperty("count")
+        public long count;
+        @JsonProperty("sum")
+        public long sum;
+        @JsonProperty("min")
+        public long min;
+        @JsonProperty("max")
+        public long max;
+        @JsonProperty("buckets")
+        public Map<Integer, Long> buckets = new TreeMap<>();
+    }
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count = 0L;
+    private long sum = 0L;
+    private long min = Long.MAX_VALUE;
+    private long max = 0L;
+
+    public void recordNanos(long nanos)
+    {
+        this.record(Math.max(0L, nanos / 1000L));
+    }
+
+    public void record(long micros)
+    {
+        this.buckets[indexOf(micros)] += 1L;
+        this.count += 1L;
+        this.sum += micros;
+        this.min = Math.min(this.min, micros);
+        this.max = Math.max(this.max, micros);
+    }
+
+    public void merge(LatencyHistogram other)
+    {
+        for(int idx = 0; idx < BUCKET_COUNT; idx ++)
+        {
+            this.buckets[idx] += other.buckets[idx];
+        }
+
+        this.count += other.count;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public State toState()
+    {
+        State state = new State();
+        state.count = this.count;
+        state.sum = this.sum;
+        state.min = this.min;
+        state.max = this.max;
+        for(int idx = 0; idx < BUCKET_COUNT; idx ++)
+        {
+            if(0L != this.buckets[idx])
+            {
+                state.buckets.put(idx, this.buckets[idx]);
+            }
+        }
+
+        return state;
+    }
+
+    public static LatencyHistogram fromState(State state)
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.count = state.count;
+        histogram.sum = state.sum;
+        histogram.min = state.min;
+        histogram.max = state.max;
+        for(Map.Entry<Integer, Long> entry : state.buckets.entrySet())
+        {
+            if(0 <= entry.getKey() && BUCKET_COUNT > entry.getKey())
+            {
+                histogram.buckets[entry.getKey()] = entry.getValue();
+            }
+        }
+
+        return histogram;
+    }
+
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    public long getMin()
+    {
+        return 0L == this.count ? 0L : this.min;
+    }
+
+    public long getMax()
+    {
+        return this.max;
+    }
+
+    public double getMean()
+    {
+        return 0L == this.count ? 0. : (double) this.sum / this.count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the approximated latency in microseconds
+     */
+    public long getQuantile(double quantile)
+    {
+        if(0L == this.count)
+        {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(quantile * this.count));
+
+        long seen = 0L;
+        for(int idx = 0; idx < BUCKET_COUNT; idx ++)
+        {
+            seen += this.buckets[idx];
+            if(seen >= rank)
+            {
+                return Math.max(this.getMin(), Math.min(this.max, valueOf(idx)));
+            }
+        }
+
+        return this.max;
+    }
+
+    static int indexOf(long value)
+    {
+        if(value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return the middle of the value range covered by the bucket
+     */
+    static long valueOf(int index)
+    {
+        if(index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        final long lower = (SUB_BUCKET_COUNT + subBucket) << shift;
+
+        return lower + ((1L << shift) >>> 1);
+    }
+}
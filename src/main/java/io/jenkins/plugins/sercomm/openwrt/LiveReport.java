@@ -0,0 +1,165 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hudson.model.Run;
+
+/**
+ * What a collection still running has sampled so far, for the build page.
+ * The sample store is tailed from where the last refresh stopped, so a
+ * 48 hour collection is never read twice. The most recent samples of each
+ * DUT are kept in a ring buffer for the charts, the statistics are kept
+ * over every sample. Samples show up once their chunk is written. A chunk
+ * is checked for its age only when the next sample of the DUT arrives, so a
+ * sample shows up within {@link SampleStore#CHUNK_AGE_MILLIS} or one
+ * sampling period after it was taken, whichever is longer.
+ */
+final class LiveReport
+{
+    // samples kept per DUT, 34 hours at the default period of a minute
+    static final int MAX_RECENT_SAMPLES = 2048;
+    // page reloads within this time are served what was read before
+    private static final long MIN_REFRESH_MILLIS = 5L * 1000L;
+
+    private static final Object LOCK = new Object();
+    // reports of the collections running, keyed by their sample store, guarded by LOCK
+    private static final Map<File, LiveReport> REPORTS = new HashMap<>();
+
+    /**
+     * Samples of one DUT
+     */
+    private static final class Series
+    {
+        private final ArrayDeque<ReportModel.Sample> recentSamples = new ArrayDeque<>(MAX_RECENT_SAMPLES);
+        private final ResourceStats stats = new ResourceStats();
+        private long sampleCount = 0L;
+        // epoch milliseconds, 0 before the first sample
+        private long lastTime = 0L;
+
+        private void add(List<ReportModel.Sample> samples)
+        {
+            for(ReportModel.Sample sample : samples)
+            {
+                if(MAX_RECENT_SAMPLES == this.recentSamples.size())
+                {
+                    this.recentSamples.removeFirst();
+                }
+                this.recentSamples.addLast(sample);
+                this.lastTime = Math.max(this.lastTime, sample.time);
+            }
+            this.sampleCount += samples.size();
+            this.stats.addSamples(samples);
+        }
+    }
+
+    private final File file;
+    private final SampleStore.Tail tail = new SampleStore.Tail();
+    private final Map<String, Series> series = new LinkedHashMap<>();
+    private long lastRefreshTime = 0L;
+
+    private LiveReport(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Makes the collection of the run visible on its page until {@link #release(Run)}
+     */
+    static void open(Run<?, ?> run)
+    {
+        final File file = SampleStore.getFile(run);
+        synchronized(LOCK)
+        {
+            if(false == REPORTS.containsKey(file))
+            {
+                REPORTS.put(file, new LiveReport(file));
+            }
+        }
+    }
+
+    /**
+     * @return the report of the collection running in the run, null when none is
+     */
+    static LiveReport get(Run<?, ?> run)
+    {
+        synchronized(LOCK)
+        {
+            return REPORTS.get(SampleStore.getFile(run));
+        }
+    }
+
+    static void release(Run<?, ?> run)
+    {
+        synchronized(LOCK)
+        {
+            REPORTS.remove(SampleStore.getFile(run));
+        }
+    }
+
+    /**
+     * Reads the samples appended since the last refresh, unless that was just now
+     */
+    synchronized void refresh()
+    throws IOException
+    {
+        final long now = System.currentTimeMillis();
+        if(now - this.lastRefreshTime < MIN_REFRESH_MILLIS)
+        {
+            return;
+        }
+        this.lastRefreshTime = now;
+
+        for(Map.Entry<String, List<ReportModel.Sample>> entry : this.tail.read(this.file).entrySet())
+        {
+            Series item = this.series.get(entry.getKey());
+            if(null == item)
+            {
+                item = new Series();
+                this.series.put(entry.getKey(), item);
+            }
+            item.add(entry.getValue());
+        }
+    }
+
+    synchronized List<String> getDeviceIds()
+    {
+        return new ArrayList<>(this.series.keySet());
+    }
+
+    synchronized long getSampleCount(String deviceId)
+    {
+        final Series item = this.series.get(deviceId);
+        return null == item ? 0L : item.sampleCount;
+    }
+
+    synchronized long getLastTime(String deviceId)
+    {
+        final Series item = this.series.get(deviceId);
+        return null == item ? 0L : item.lastTime;
+    }
+
+    /**
+     * @return copy of the samples in the ring buffer of the DUT, oldest first
+     */
+    synchronized List<ReportModel.Sample> getRecentSamples(String deviceId)
+    {
+        final Series item = this.series.get(deviceId);
+        return null == item ? new ArrayList<>() : new ArrayList<>(item.recentSamples);
+    }
+
+    /**
+     * @return statistics over every sample of the DUT read so far
+     */
+    synchronized List<ResultRecord.Usage> getUsages(String deviceId)
+    {
+        final Series item = this.series.get(deviceId);
+        return null == item ? new ArrayList<>() : item.stats.toUsages();
+    }
+}
@@ -1,5 +1,12 @@
 package io.jenkins.plugins.sercomm.openwrt;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
 import com.sercomm.commons.util.DateTime;
 
 public class LogParserUtil
@@ -21,13 +28,34 @@ public class LogParserUtil
     public static final String SYMBOL_UNINSTALL_APP_OK_COUNT = "* uninstall app successfully ==>";
     public static final String SYMBOL_START_APP_OK_COUNT = "* start app successfully ==>";
     public static final String SYMBOL_STOP_APP_OK_COUNT = "* stop app successfully ==>";
+    // value: deviceId,total,install,uninstall,start,stop
+    public static final String SYMBOL_DEVICE_LOOP_RESULT = "* device loop result ==>";
+    // value: operation,count,min,mean,p50,p90,p99,max (milliseconds)
+    public static final String SYMBOL_LATENCY = "* operation latency ==>";
+    // value: appVersion,total,install,uninstall,start,stop
+    public static final String SYMBOL_VERSION_LOOP_RESULT = "* version loop result ==>";
+    // value: appVersion,operation,count,min,mean,p50,p90,p99,max (milliseconds)
+    public static final String SYMBOL_VERSION_LATENCY = "* version latency ==>";
+    // value: deviceId,container,metric,count,min,mean,variance,p50,p95,max (percent)
+    public static final String SYMBOL_RESOURCE_USAGE = "* resource usage ==>";
+    // value: deviceId,time,container,metric,value,threshold,samples (time in epoch milliseconds)
+    public static final String SYMBOL_THRESHOLD_BREACH = "* threshold breach ==>";
+
+    // timestamps as written with DateTime.FORMAT_ISO_MS, d for a digit and + for the sign of the offset
+    private static final String DATE_TIME_PATTERN = "dddd-dd-ddTdd:dd:dd.ddd+dddd";
+    public static final int DATE_TIME_LENGTH = DATE_TIME_PATTERN.length();
 
     public static DateTime parseDateTime(final String line)
     {        
+        if(false == hasDateTime(line))
+        {
+            return null;
+        }
+
         DateTime dateTime;
         try
         {
-            String value = line.substring(0, 28);
+            String value = line.substring(0, DATE_TIME_LENGTH);
             dateTime = DateTime.from(value, DateTime.FORMAT_ISO_MS);
         }
         catch(Exception e)
@@ -37,4 +65,103 @@ public class LogParserUtil
         
         return dateTime;
     }
+
+    /**
+     * Tells whether the line starts with a {@link DateTime#FORMAT_ISO_MS} timestamp
+     * without parsing it, most lines of a console log do not and fail at the first character
+     */
+    public static boolean hasDateTime(final CharSequence line)
+    {
+        if(line.length() < DATE_TIME_LENGTH)
+        {
+            return false;
+        }
+
+        for(int idx = 0; idx < DATE_TIME_LENGTH; idx ++)
+        {
+            final char c = line.charAt(idx);
+            final char expected = DATE_TIME_PATTERN.charAt(idx);
+            if('d' == expected)
+            {
+                if(c < '0' || c > '9')
+                {
+                    return false;
+                }
+            }
+            else if('+' == expected)
+            {
+                if('+' != c && '-' != c)
+                {
+                    return false;
+                }
+            }
+            else if(expected != c)
+            {
+                return false;
+            }
+        }
+
+        final int month = digits(line, 5, 7);
+        final int day = digits(line, 8, 10);
+        return month >= 1 && month <= 12 &&
+               day >= 1 && day <= Month.of(month).length(Year.isLeap(digits(line, 0, 4))) &&
+               digits(line, 11, 13) < 24 &&
+               digits(line, 14, 16) < 60 &&
+               digits(line, 17, 19) < 60;
+    }
+
+    /**
+     * Same as {@link #toEpochMillis(DateTime)} for a line of which {@link #hasDateTime(CharSequence)} holds
+     */
+    public static long toEpochMillis(final CharSequence line)
+    {
+        return LocalDateTime.of(
+                digits(line, 0, 4),
+                digits(line, 5, 7),
+                digits(line, 8, 10),
+                digits(line, 11, 13),
+                digits(line, 14, 16),
+                digits(line, 17, 19))
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+    }
+
+    static int digits(final CharSequence line, int begin, int end)
+    {
+        int value = 0;
+        for(int idx = begin; idx < end; idx ++)
+        {
+            value = value * 10 + (line.charAt(idx) - '0');
+        }
+
+        return value;
+    }
+
+    public static long toEpochMillis(DateTime dateTime)
+    {
+        return LocalDateTime.of(
+                dateTime.getYear(),
+                dateTime.getMonth(),
+                dateTime.getDay(),
+                dateTime.getHour(),
+                dateTime.getMinute(),
+                dateTime.getSecond())
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+    }
+
+    public static String formatTime(long epochMillis)
+    {
+        if(0L == epochMillis)
+        {
+            return "N/A";
+        }
+
+        return TIME_FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    private static final DateTimeFormatter TIME_FORMATTER = 
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ").withZone(ZoneId.systemDefault());
 }
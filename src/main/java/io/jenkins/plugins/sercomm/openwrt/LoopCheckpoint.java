@@ -0,0 +1,201 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.sercomm.commons.util.Json;
+
+import hudson.model.Run;
+
+/**
+ * Progress of a loop run kept in the build directory, so that a run
+ * interrupted by a controller restart can continue from the last saved
+ * loop instead of starting over. Every DUT saves its own entry from its
+ * own worker thread, the file is replaced atomically on each save.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LoopCheckpoint
+{
+    public static final String FILE_NAME = "openwrt-loop-checkpoint.json";
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Counters
+    {
+        @JsonProperty("appVersion")
+        public String appVersion;
+        @JsonProperty("total")
+        public int totalCount;
+        @JsonProperty("install")
+        public int installOKCount;
+        @JsonProperty("uninstall")
+        public int uninstallOKCount;
+        @JsonProperty("start")
+        public int startOKCount;
+        @JsonProperty("stop")
+        public int stopOKCount;
+        @JsonProperty("latencies")
+        public Map<String, LatencyHistogram.State> latencies = new LinkedHashMap<>();
+
+        public static Counters from(LoopCounters counters)
+        {
+            Counters state = new Counters();
+            state.appVersion = counters.getAppVersion();
+            state.totalCount = counters.getTotalCount();
+            state.installOKCount = counters.getInstallOKCount();
+            state.uninstallOKCount = counters.getUninstallOKCount();
+            state.startOKCount = counters.getStartOKCount();
+            state.stopOKCount = counters.getStopOKCount();
+            for(DemeterOperation operation : DemeterOperation.values())
+            {
+                LatencyHistogram histogram = counters.getLatency(operation);
+                if(null != histogram)
+                {
+                    state.latencies.put(operation.getMethodName(), histogram.toState());
+                }
+            }
+
+            return state;
+        }
+
+        void restoreTo(LoopCounters counters)
+        {
+            Map<DemeterOperation, LatencyHistogram> histograms = new EnumMap<>(DemeterOperation.class);
+            for(Map.Entry<String, LatencyHistogram.State> entry : this.latencies.entrySet())
+            {
+                DemeterOperation operation = DemeterOperation.fromMethodName(entry.getKey());
+                if(null != operation)
+                {
+                    histograms.put(operation, LatencyHistogram.fromState(entry.getValue()));
+                }
+            }
+
+            counters.restore(
+                this.totalCount,
+                this.installOKCount,
+                this.uninstallOKCount,
+                this.startOKCount,
+                this.stopOKCount,
+                histograms);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Device
+    {
+        @JsonProperty("deviceId")
+        public String deviceId;
+        // loops done, the next session starts with loop #completedLoops + 1
+        @JsonProperty("completedLoops")
+        public int completedLoops;
+        @JsonProperty("versions")
+        public List<Counters> versions = new ArrayList<>();
+    }
+
+    // identifies the configuration, a checkpoint of another configuration is never resumed
+    @JsonProperty("key")
+    public String key;
+    @JsonProperty("finished")
+    public boolean finished = false;
+    @JsonProperty("soakElapsedMillis")
+    public long soakElapsedMillis = 0L;
+    @JsonProperty("soakFailureCount")
+    public int soakFailureCount = 0;
+    @JsonProperty("devices")
+    public Map<String, Device> devices = new LinkedHashMap<>();
+
+    @JsonIgnore
+    private File file;
+
+    public LoopCheckpoint()
+    {
+    }
+
+    public LoopCheckpoint(Run<?, ?> run, String key)
+    {
+        this.file = getFile(run);
+        this.key = key;
+    }
+
+    public static File getFile(Run<?, ?> run)
+    {
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * @return null if the run has no checkpoint or it cannot be read
+     */
+    public static LoopCheckpoint load(Run<?, ?> run)
+    {
+        File file = getFile(run);
+        if(false == file.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            return Json.mapper().readValue(file, LoopCheckpoint.class);
+        }
+        catch(IOException e)
+        {
+            return null;
+        }
+    }
+
+    Device getDevice(String deviceId)
+    {
+        return this.devices.get(deviceId);
+    }
+
+    /**
+     * Takes over the entry of a DUT from the checkpoint resumed from, so that
+     * saves of other DUTs keep it until the DUT saves again
+     */
+    synchronized void restore(Device device)
+    {
+        this.devices.put(device.deviceId, device);
+    }
+
+    synchronized void update(Device device, SoakControl soak)
+    throws IOException
+    {
+        this.devices.put(device.deviceId, device);
+        if(null != soak)
+        {
+            this.soakElapsedMillis = soak.getElapsedMillis();
+            this.soakFailureCount = soak.getFailureCount();
+        }
+
+        this.save();
+    }
+
+    synchronized void finish()
+    throws IOException
+    {
+        this.finished = true;
+        this.save();
+    }
+
+    private void save()
+    throws IOException
+    {
+        // write aside and rename, a restart in the middle of a save leaves the previous checkpoint intact
+        File tempFile = new File(this.file.getParentFile(), FILE_NAME + ".tmp");
+        Json.mapper().writeValue(tempFile, this);
+        Files.move(
+            tempFile.toPath(),
+            this.file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,227 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Success counters and Demeter call latencies of the install/start/stop/uninstall loop of one DUT,
+ * optionally of a single App version only.
+ * Instances are owned by a single worker while the loop runs and merged
+ * into the build wide totals afterwards.
+ */
+@SuppressFBWarnings(value = "VO_VOLATILE_INCREMENT")
+public class LoopCounters
+{
+    private final String deviceId;
+    private final String appVersion;
+
+    // written by the owning worker only, volatile so that soak checkpoints can read them meanwhile
+    private volatile int totalCount = 0;
+    private volatile int installOKCount = 0;
+    private volatile int uninstallOKCount = 0;
+    private volatile int startOKCount = 0;
+    private volatile int stopOKCount = 0;
+
+    private final Map<DemeterOperation, LatencyHistogram> latencies = new EnumMap<>(DemeterOperation.class);
+
+    public LoopCounters(String deviceId)
+    {
+        this(deviceId, null);
+    }
+
+    public LoopCounters(String deviceId, String appVersion)
+    {
+        this.deviceId = deviceId;
+        this.appVersion = appVersion;
+    }
+
+    public String getDeviceId()
+    {
+        return this.deviceId;
+    }
+
+    /**
+     * App version the loops were counted for, null when not broken down by version
+     */
+    public String getAppVersion()
+    {
+        return this.appVersion;
+    }
+
+    public int getTotalCount()
+    {
+        return this.totalCount;
+    }
+
+    public int getInstallOKCount()
+    {
+        return this.installOKCount;
+    }
+
+    public int getUninstallOKCount()
+    {
+        return this.uninstallOKCount;
+    }
+
+    public int getStartOKCount()
+    {
+        return this.startOKCount;
+    }
+
+    public int getStopOKCount()
+    {
+        return this.stopOKCount;
+    }
+
+    void addTotal()
+    {
+        this.totalCount += 1;
+    }
+
+    void addInstallOK()
+    {
+        this.installOKCount += 1;
+    }
+
+    void addUninstallOK()
+    {
+        this.uninstallOKCount += 1;
+    }
+
+    void addStartOK()
+    {
+        this.startOKCount += 1;
+    }
+
+    void addStopOK()
+    {
+        this.stopOKCount += 1;
+    }
+
+    /**
+     * Adds counts saved by a previous session of the same loop
+     */
+    void restore(
+            int totalCount,
+            int installOKCount,
+            int uninstallOKCount,
+            int startOKCount,
+            int stopOKCount,
+            Map<DemeterOperation, LatencyHistogram> latencies)
+    {
+        this.totalCount += totalCount;
+        this.installOKCount += installOKCount;
+        this.uninstallOKCount += uninstallOKCount;
+        this.startOKCount += startOKCount;
+        this.stopOKCount += stopOKCount;
+
+        for(Map.Entry<DemeterOperation, LatencyHistogram> entry : latencies.entrySet())
+        {
+            LatencyHistogram histogram = this.latencies.get(entry.getKey());
+            if(null == histogram)
+            {
+                histogram = new LatencyHistogram();
+                this.latencies.put(entry.getKey(), histogram);
+            }
+
+            histogram.merge(entry.getValue());
+        }
+    }
+
+    void recordLatency(DemeterOperation operation, long nanos)
+    {
+        LatencyHistogram histogram = this.latencies.get(operation);
+        if(null == histogram)
+        {
+            histogram = new LatencyHistogram();
+            this.latencies.put(operation, histogram);
+        }
+
+        histogram.recordNanos(nanos);
+    }
+
+    public LatencyHistogram getLatency(DemeterOperation operation)
+    {
+        return this.latencies.get(operation);
+    }
+
+    public void merge(LoopCounters other)
+    {
+        this.totalCount += other.totalCount;
+        this.installOKCount += other.installOKCount;
+        this.uninstallOKCount += other.uninstallOKCount;
+        this.startOKCount += other.startOKCount;
+        this.stopOKCount += other.stopOKCount;
+
+        for(Map.Entry<DemeterOperation, LatencyHistogram> entry : other.latencies.entrySet())
+        {
+            LatencyHistogram histogram = this.latencies.get(entry.getKey());
+            if(null == histogram)
+            {
+                histogram = new LatencyHistogram();
+                this.latencies.put(entry.getKey(), histogram);
+            }
+
+            histogram.merge(entry.getValue());
+        }
+    }
+
+    /**
+     * Formats the counters as the value of {@link LogParserUtil#SYMBOL_DEVICE_LOOP_RESULT}:
+     * {@code deviceId,total,install,uninstall,start,stop}
+     */
+    public String toSummaryValue()
+    {
+        return String.format("%s,%d,%d,%d,%d,%d",
+            this.deviceId,
+            this.totalCount,
+            this.installOKCount,
+            this.uninstallOKCount,
+            this.startOKCount,
+            this.stopOKCount);
+    }
+
+    /**
+     * Formats the counters as the value of {@link LogParserUtil#SYMBOL_VERSION_LOOP_RESULT}:
+     * {@code appVersion,total,install,uninstall,start,stop}
+     */
+    public String toVersionSummaryValue()
+    {
+        return String.format("%s,%d,%d,%d,%d,%d",
+            this.appVersion,
+            this.totalCount,
+            this.installOKCount,
+            this.uninstallOKCount,
+            this.startOKCount,
+            this.stopOKCount);
+    }
+
+    /**
+     * Formats the latency of an operation as the value of {@link LogParserUtil#SYMBOL_LATENCY}:
+     * {@code operation,count,min,mean,p50,p90,p99,max} in milliseconds
+     *
+     * @return null if the operation has never been called
+     */
+    public String toLatencyValue(DemeterOperation operation)
+    {
+        LatencyHistogram histogram = this.latencies.get(operation);
+        if(null == histogram || 0L == histogram.getCount())
+        {
+            return null;
+        }
+
+        // the line is split on ',' by the parser, a decimal comma of the default locale would shift every field
+        return String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f",
+            operation.getMethodName(),
+            histogram.getCount(),
+            histogram.getMin() / 1000.,
+            histogram.getMean() / 1000.,
+            histogram.getQuantile(0.5) / 1000.,
+            histogram.getQuantile(0.9) / 1000.,
+            histogram.getQuantile(0.99) / 1000.,
+            histogram.getMax() / 1000.);
+    }
+}
@@ -0,0 +1,48 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+/**
+ * Phases of an install/uninstall loop, resource samples taken while looping
+ * are tagged with the phase the DUT is in. The code is what the
+ * {@link SampleStore} writes, so codes must never be reused.
+ */
+public enum LoopPhase
+{
+    PREPARE(1, "prepare"),
+    INSTALL(2, "install"),
+    START(3, "start"),
+    STOP(4, "stop"),
+    UNINSTALL(5, "uninstall"),
+    WAIT(6, "wait");
+
+    private final int code;
+    private final String label;
+
+    LoopPhase(int code, String label)
+    {
+        this.code = code;
+        this.label = label;
+    }
+
+    public int getCode()
+    {
+        return this.code;
+    }
+
+    public String getLabel()
+    {
+        return this.label;
+    }
+
+    public static LoopPhase fromCode(int code)
+    {
+        for(LoopPhase phase : values())
+        {
+            if(code == phase.code)
+            {
+                return phase;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,160 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sercomm.commons.util.DateTime;
+
+import hudson.model.Run;
+
+/**
+ * Samples the resource consumption of every DUT of a {@link LoopSession} in
+ * the background while it loops. Each sample is tagged with the loop and the
+ * {@link LoopPhase} the DUT is in, so the report shows what install, start,
+ * stop and uninstall cost. The samples go to the {@link SampleStore} like
+ * those of a collection.
+ */
+class LoopSampler
+{
+    private final Run<?, ?> run;
+    private final PrintStream logger;
+    private final String endpoint;
+    private final long periodMillis;
+
+    private final List<ScheduledFuture<?>> futures = new ArrayList<>();
+    private final List<SampleStore.Chunk> chunks = new ArrayList<>();
+    private volatile boolean stopped = false;
+    // samples being taken, the chunks are only written by stop() once none is running, guarded by itself
+    private final AtomicInteger runningTasks = new AtomicInteger(0);
+
+    LoopSampler(Run<?, ?> run, PrintStream logger, String endpoint, long periodMillis)
+    {
+        this.run = run;
+        this.logger = logger;
+        this.endpoint = endpoint;
+        this.periodMillis = periodMillis;
+    }
+
+    void start(List<DeviceLoopRunner> runners)
+    {
+        for(DeviceLoopRunner runner : runners)
+        {
+            final SampleStore.Chunk chunk = new SampleStore.Chunk(runner.getDeviceId());
+            this.chunks.add(chunk);
+
+            // a fixed rate task never overlaps itself, a slow sample only delays the next one
+            this.futures.add(DemeterStepScheduler.get().scheduleAtFixedRate(
+                () -> this.sample(runner, chunk),
+                this.periodMillis,
+                this.periodMillis,
+                TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Cancels the samples not taken yet, waits for those being taken and writes
+     * them all to the store
+     */
+    void stop()
+    {
+        this.stopped = true;
+        for(ScheduledFuture<?> future : this.futures)
+        {
+            future.cancel(false);
+        }
+
+        boolean interrupted = false;
+        synchronized(this.runningTasks)
+        {
+            while(0 < this.runningTasks.get())
+            {
+                try
+                {
+                    this.runningTasks.wait();
+                }
+                catch(InterruptedException e)
+                {
+                    // the samples being taken end after a single call, the interrupt is kept for the caller
+                    interrupted = true;
+                }
+            }
+        }
+
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for(SampleStore.Chunk chunk : this.chunks)
+        {
+            synchronized(chunk)
+            {
+                try
+                {
+                    SampleStore.append(this.run, chunk);
+                }
+                catch(IOException e)
+                {
+                    this.logger.printf("%s - [ERROR] failed to write samples: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+                }
+            }
+        }
+
+        SampleStore.release(this.run);
+    }
+
+    private void sample(DeviceLoopRunner runner, SampleStore.Chunk chunk)
+    {
+        this.runningTasks.incrementAndGet();
+        try
+        {
+            // a sample starting once stop() waited for the running ones must not touch the chunk
+            if(false == this.stopped)
+            {
+                this.takeSample(runner, chunk);
+            }
+        }
+        finally
+        {
+            if(0 == this.runningTasks.decrementAndGet())
+            {
+                synchronized(this.runningTasks)
+                {
+                    this.runningTasks.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void takeSample(DeviceLoopRunner runner, SampleStore.Chunk chunk)
+    {
+        final long time = System.currentTimeMillis();
+        final int loop = runner.getPhaseLoop();
+        final LoopPhase phase = runner.getPhase();
+        try
+        {
+            List<ContainerInfo> containerInfos = ContainerInfo.parseList(DeviceSampler.requestContainers(this.endpoint, runner.getDeviceId()));
+            synchronized(chunk)
+            {
+                chunk.add(time, containerInfos, loop, phase);
+                if(chunk.isFull() || chunk.isStale(System.currentTimeMillis()))
+                {
+                    SampleStore.append(this.run, chunk);
+                }
+            }
+        }
+        catch(Throwable t)
+        {
+            // the DUT may be busy installing, the loop goes on and so does sampling
+            this.logger.printf("%s - [WARN] %s: resource sample failed: %s%n",
+                DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+                runner.getDeviceId(),
+                t.getMessage());
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sercomm.commons.util.DateTime;
+import com.sercomm.commons.util.XStringUtil;
+
+import hudson.model.Run;
+
+/**
+ * One loop run of a build, shared by the blocking builder and the Pipeline
+ * step. {@link #open()} describes the run and prepares a runner for every
+ * DUT, {@link #resume()} only prepares the runners again. The caller drives the runners and {@link #close(boolean)} writes the
+ * summary and the results.
+ */
+class LoopSession
+{
+    private final Run<?, ?> run;
+    private final PrintStream logger;
+    private final OpenWRTLoopBuilder config;
+    private final DemeterClientRegistry clientRegistry;
+
+    private long beginHitCount = 0L;
+    private long beginNewClientCount = 0L;
+    private int maxConcurrency = 1;
+
+    private final List<String> appVersions = new ArrayList<>();
+    private final List<DeviceLoopRunner> runners = new ArrayList<>();
+    private SoakControl soak = null;
+    private LoopCheckpoint checkpoint = null;
+    // null unless the DUTs are sampled while looping
+    private LoopSampler sampler = null;
+
+    LoopSession(Run<?, ?> run, PrintStream logger, OpenWRTLoopBuilder config)
+    {
+        this.run = run;
+        this.logger = logger;
+        this.config = config;
+        this.clientRegistry = OpenWRTPlugin.getDemeterPluginDescriptor().getClientRegistry();
+    }
+
+    List<DeviceLoopRunner> getRunners()
+    {
+        return this.runners;
+    }
+
+    /**
+     * @return null unless this is a soak run
+     */
+    SoakControl getSoak()
+    {
+        return this.soak;
+    }
+
+    int getMaxConcurrency()
+    {
+        return this.maxConcurrency;
+    }
+
+    /**
+     * Live counters of every DUT and version, for the soak checkpoints
+     */
+    List<LoopCounters> getLiveCounters()
+    {
+        List<LoopCounters> counters = new ArrayList<>();
+        for(DeviceLoopRunner runner : this.runners)
+        {
+            counters.addAll(runner.getVersionCounters());
+        }
+
+        return counters;
+    }
+
+    void open()
+    {
+        this.open(false);
+    }
+
+    /**
+     * Prepares the runners again in a session continuing the run after a
+     * controller restart. The opening marker and the description of the run
+     * are in the log already, a second one would leave the log with two
+     * opening markers for one closing marker.
+     */
+    void resume()
+    {
+        this.open(true);
+    }
+
+    private void open(boolean resumed)
+    {
+        final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
+        final PrintStream logger = this.logger;
+
+        this.beginHitCount = this.clientRegistry.getHitCount();
+        this.beginNewClientCount = this.clientRegistry.getNewClientCount();
+        final int totalCount = Integer.parseInt(this.config.getLoopCount());
+        this.maxConcurrency = XStringUtil.isBlank(this.config.getMaxConcurrency()) ? 
+                Integer.parseInt(OpenWRTLoopBuilder.DescriptorImpl.DEFAULT_MAX_CONCURRENCY) : Integer.parseInt(this.config.getMaxConcurrency());
+        final int revalidateValue = XStringUtil.isBlank(this.config.getRevalidateCount()) ? 
+                0 : Integer.parseInt(this.config.getRevalidateCount());
+        // convert to millisecnods
+        final long soakDurationValue = XStringUtil.isBlank(this.config.getSoakDuration()) ? 
+                0L : Long.parseLong(this.config.getSoakDuration()) * 1000L;
+        final int failureBudgetValue = XStringUtil.isBlank(this.config.getFailureBudget()) ? 
+                0 : Integer.parseInt(this.config.getFailureBudget());
+        final long checkpointIntervalValue = XStringUtil.isBlank(this.config.getCheckpointInterval()) ? 
+                Long.parseLong(OpenWRTLoopBuilder.DescriptorImpl.DEFAULT_CHECKPOINT_INTERVAL) * 1000L : Long.parseLong(this.config.getCheckpointInterval()) * 1000L;
+        final int saveProgressValue = XStringUtil.isBlank(this.config.getSaveProgressCount()) ? 
+                Integer.parseInt(OpenWRTLoopBuilder.DescriptorImpl.DEFAULT_SAVE_PROGRESS_COUNT) : Integer.parseInt(this.config.getSaveProgressCount());
+        // convert to millisecnods
+        final long sampleFrequencyValue = XStringUtil.isBlank(this.config.getSampleFrequency()) ? 
+                0L : Long.parseLong(this.config.getSampleFrequency()) * 1000L;
+
+        if(false == resumed)
+        {
+            logger.println(LogParserUtil.SYMBOL_LOOP_PROCEDURE_BPOS);
+            logger.printf("%s - [INFO] ====== Loop Builder ======%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+        }
+        else
+        {
+            logger.printf("%s - [NOTICE] loop resumed after a restart%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+        }
+
+        final List<String> appVersions = this.appVersions;
+        appVersions.add(this.config.getAppVersion());
+        for(String token : OpenWRTLoopBuilder.splitVersions(this.config.getInterleavedVersions()))
+        {
+            if(false == appVersions.contains(token))
+            {
+                appVersions.add(token);
+            }
+        }
+
+        // patterns are expanded against the online devices before anything is described
+        List<String> deviceIds = new ArrayList<>();
+        try
+        {
+            deviceIds = OpenWRTLoopBuilder.resolveDeviceIds(endpoint, this.config.getDeviceId());
+        }
+        catch(Throwable t)
+        {
+            logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+        }
+
+        if(false == resumed)
+        {
+            logger.println(LogParserUtil.SYMBOL_DESCRIBE_BPOS);
+            logger.printf("%s - [INFO] DUT: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), String.join(", ", deviceIds));
+            logger.printf("%s - [INFO] App publisher: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getAppPublisher());
+            logger.printf("%s - [INFO] App name: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getAppName());
+            logger.printf("%s - [INFO] App version: %s%s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+                String.join(", ", appVersions), appVersions.size() > 1 ? " (interleaved)" : XStringUtil.BLANK);
+            logger.printf("%s - [INFO] Start app: %b%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.config.getStartApp());
+            logger.printf("%s - [INFO] Endpoint: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), endpoint);
+            if(0L < soakDurationValue)
+            {
+                logger.printf("%s - [INFO] Soak duration: %d seconds (loop count ignored)%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), soakDurationValue / 1000L);
+                logger.printf("%s - [INFO] Failure budget: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+                    0 < failureBudgetValue ? failureBudgetValue + " failed loops" : "unlimited");
+                logger.printf("%s - [INFO] Checkpoint interval: %d seconds%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), checkpointIntervalValue / 1000L);
+            }
+            else
+            {
+                logger.printf("%s - [INFO] Total loop count: %d%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), totalCount);
+            }
+            logger.printf("%s - [INFO] Max concurrent DUTs: %d%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.maxConcurrency);
+            logger.printf("%s - [INFO] Revalidate DUT every: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+                0 < revalidateValue ? revalidateValue + " loops" : "never");
+            logger.printf("%s - [INFO] Save progress every: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+                0 < saveProgressValue ? saveProgressValue + " loops" : "never");
+            logger.printf("%s - [INFO] Resource sampling: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+                0L < sampleFrequencyValue ? "every " + sampleFrequencyValue / 1000L + " seconds" : "off");
+            logger.println(LogParserUtil.SYMBOL_DESCRIBE_EPOS);
+        
+            logger.println(LogParserUtil.SYMBOL_DETAIL_BPOS);
+        }
+
+        // progress saved by an earlier session of this build, e.g. one retried after a controller restart,
+        // or on request by the previous build when that one did not finish
+        final String checkpointKey = String.join("|",
+            String.join(",", deviceIds),
+            this.config.getAppPublisher(),
+            this.config.getAppName(),
+            String.join(",", appVersions),
+            String.valueOf(this.config.getStartApp()),
+            0L < soakDurationValue ? "soak:" + soakDurationValue : "count:" + totalCount);
+        LoopCheckpoint previous = null;
+        if(0 < saveProgressValue)
+        {
+            String previousName = "this build";
+            previous = LoopCheckpoint.load(this.run);
+            if(null == previous && this.config.getResumeUnfinished() && null != this.run.getPreviousBuild())
+            {
+                previousName = "build #" + this.run.getPreviousBuild().getNumber();
+                previous = LoopCheckpoint.load(this.run.getPreviousBuild());
+            }
+
+            if(null != previous && true == previous.finished)
+            {
+                previous = null;
+            }
+
+            if(null != previous && 0 != checkpointKey.compareTo(previous.key))
+            {
+                logger.printf("%s - [NOTICE] progress saved by %s belongs to another configuration, starting over%n", 
+                    DateTime.now().toString(DateTime.FORMAT_ISO_MS), previousName);
+                previous = null;
+            }
+
+            if(null != previous)
+            {
+                logger.printf("%s - [NOTICE] resuming from progress saved by %s%n", 
+                    DateTime.now().toString(DateTime.FORMAT_ISO_MS), previousName);
+            }
+        }
+
+        final boolean tagged = deviceIds.size() > 1;
+        final AppCatalog catalog = new AppCatalog();
+        if(0L >= soakDurationValue)
+        {
+            this.soak = null;
+        }
+        else if(null != previous)
+        {
+            this.soak = new SoakControl(
+                soakDurationValue, 
+                failureBudgetValue, 
+                checkpointIntervalValue, 
+                previous.soakElapsedMillis, 
+                previous.soakFailureCount);
+        }
+        else
+        {
+            this.soak = new SoakControl(soakDurationValue, failureBudgetValue, checkpointIntervalValue);
+        }
+
+        this.checkpoint = 0 < saveProgressValue ? 
+                new LoopCheckpoint(this.run, checkpointKey) : null;
+        for(String aDeviceId : deviceIds)
+        {
+            this.runners.add(new DeviceLoopRunner(
+                endpoint,
+                aDeviceId,
+                this.config.getAppPublisher(),
+                this.config.getAppName(),
+                appVersions,
+                this.config.getStartApp(),
+                totalCount,
+                revalidateValue,
+                this.soak,
+                catalog,
+                logger,
+                tagged));
+        }
+
+        if(null != this.checkpoint)
+        {
+            for(DeviceLoopRunner runner : this.runners)
+            {
+                LoopCheckpoint.Device state = null == previous ? null : previous.getDevice(runner.getDeviceId());
+                if(null != state)
+                {
+                    runner.restore(state);
+                    this.checkpoint.restore(state);
+                    logger.printf("%s - [NOTICE] DUT %s resumes at loop #%d%n", 
+                        DateTime.now().toString(DateTime.FORMAT_ISO_MS), runner.getDeviceId(), runner.getFirstLoop());
+                }
+
+                runner.enableCheckpoint(this.checkpoint, saveProgressValue);
+            }
+        }
+
+        if(null != this.soak)
+        {
+            // loops restored from a previous session do not count towards the first window
+            this.soak.resetWindow(this.getLiveCounters());
+        }
+
+        if(0L < sampleFrequencyValue && false == this.runners.isEmpty())
+        {
+            this.sampler = new LoopSampler(this.run, logger, endpoint, sampleFrequencyValue);
+            this.sampler.start(this.runners);
+        }
+    }
+
+    /**
+     * Logs why a soak stopped and its last checkpoint
+     */
+    void endSoak()
+    {
+        if(null == this.soak)
+        {
+            return;
+        }
+
+        this.logger.printf("%s - [NOTICE] soak stopped: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+            null != this.soak.getStopReason() ? this.soak.getStopReason() : "all DUTs stopped");
+        this.soak.writeCheckpoint(this.logger, this.getLiveCounters());
+    }
+
+    /**
+     * @param aborted the run was aborted, its progress is kept to be resumed
+     */
+    void close(boolean aborted)
+    {
+        final PrintStream logger = this.logger;
+
+        if(null != this.sampler)
+        {
+            this.sampler.stop();
+        }
+
+        logger.printf("%s - [NOTICE] all test jobs were completed%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));        
+        logger.printf("%s - [INFO] Demeter client pool hits: %d, new clients: %d (counted over all builds running meanwhile)%n", 
+            DateTime.now().toString(DateTime.FORMAT_ISO_MS), 
+            this.clientRegistry.getHitCount() - this.beginHitCount,
+            this.clientRegistry.getNewClientCount() - this.beginNewClientCount);
+        logger.println(LogParserUtil.SYMBOL_DETAIL_EPOS);
+        
+        List<LoopCounters> devices = new ArrayList<>();
+        for(DeviceLoopRunner runner : this.runners)
+        {
+            devices.add(runner.getCounters());
+        }
+
+        LoopCounters summary = new LoopCounters(XStringUtil.BLANK);
+        for(LoopCounters device : devices)
+        {
+            summary.merge(device);
+        }
+
+        // the same version of every DUT merged, only when several versions were interleaved
+        List<LoopCounters> versions = new ArrayList<>();
+        if(this.appVersions.size() > 1)
+        {
+            for(String appVersion : this.appVersions)
+            {
+                LoopCounters version = new LoopCounters(XStringUtil.BLANK, appVersion);
+                for(DeviceLoopRunner runner : this.runners)
+                {
+                    for(LoopCounters item : runner.getVersionCounters())
+                    {
+                        if(0 == appVersion.compareTo(item.getAppVersion()))
+                        {
+                            version.merge(item);
+                        }
+                    }
+                }
+                versions.add(version);
+            }
+        }
+
+        logger.println(LogParserUtil.SYMBOL_SUMMARY_BPOS);
+        logger.println(LogParserUtil.SYMBOL_TOTAL_LOOP_COUNT + summary.getTotalCount());
+        logger.println(LogParserUtil.SYMBOL_INSTALL_APP_OK_COUNT + summary.getInstallOKCount());
+        logger.println(LogParserUtil.SYMBOL_UNINSTALL_APP_OK_COUNT + summary.getUninstallOKCount());
+        logger.println(LogParserUtil.SYMBOL_START_APP_OK_COUNT + summary.getStartOKCount());
+        logger.println(LogParserUtil.SYMBOL_STOP_APP_OK_COUNT + summary.getStopOKCount());
+        for(LoopCounters device : devices)
+        {
+            logger.println(LogParserUtil.SYMBOL_DEVICE_LOOP_RESULT + device.toSummaryValue());
+        }
+        for(DemeterOperation operation : DemeterOperation.values())
+        {
+            String value = summary.toLatencyValue(operation);
+            if(null != value)
+            {
+                logger.println(LogParserUtil.SYMBOL_LATENCY + value);
+            }
+        }
+        for(LoopCounters version : versions)
+        {
+            logger.println(LogParserUtil.SYMBOL_VERSION_LOOP_RESULT + version.toVersionSummaryValue());
+            for(DemeterOperation operation : DemeterOperation.values())
+            {
+                String value = version.toLatencyValue(operation);
+                if(null != value)
+                {
+                    logger.println(LogParserUtil.SYMBOL_VERSION_LATENCY + version.getAppVersion() + "," + value);
+                }
+            }
+        }
+        logger.println(LogParserUtil.SYMBOL_SUMMARY_EPOS);
+        
+        logger.println(LogParserUtil.SYMBOL_LOOP_PROCEDURE_EPOS);
+
+        try
+        {
+            ResultsFile.append(this.run, ResultRecord.loop(
+                this.config.getAppPublisher(),
+                this.config.getAppName(),
+                String.join(",", this.appVersions),
+                summary,
+                devices,
+                versions));
+        }
+        catch(IOException e)
+        {
+            logger.printf("%s - [ERROR] failed to write results file: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+        }
+
+        if(null != this.checkpoint && false == aborted)
+        {
+            try
+            {
+                this.checkpoint.finish();
+            }
+            catch(IOException e)
+            {
+                logger.printf("%s - [ERROR] failed to save progress: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+/**
+ * The App version a loop installs on a DUT, resolved from the Demeter
+ * catalog once per build instead of on every loop.
+ */
+public class LoopTarget
+{
+    private final String deviceId;
+    private final String model;
+    private final String appId;
+    private final String versionId;
+    private final String versionName;
+
+    public LoopTarget(
+            String deviceId,
+            String model,
+            String appId,
+            String versionId,
+            String versionName)
+    {
+        this.deviceId = deviceId;
+        this.model = model;
+        this.appId = appId;
+        this.versionId = versionId;
+        this.versionName = versionName;
+    }
+
+    public String getDeviceId()
+    {
+        return this.deviceId;
+    }
+
+    public String getModel()
+    {
+        return this.model;
+    }
+
+    public String getAppId()
+    {
+        return this.appId;
+    }
+
+    public String getVersionId()
+    {
+        return this.versionId;
+    }
+
+    public String getVersionName()
+    {
+        return this.versionName;
+    }
+}
@@ -0,0 +1,300 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Feeds a plain console log file to a {@link ConsoleLogParser} by scanning
+ * its bytes in memory mapped windows instead of decoding every line. Only
+ * marker lines and lines with a value inside a summary or detail section are
+ * decoded into strings, timestamps are recognized on the bytes and the raw
+ * text is decoded in bulk, one run of consecutive lines at a time. Of a run
+ * longer than the raw text the parser keeps, only the tail is decoded.
+ */
+class MappedLogScanner
+{
+    // a line longer than a window cannot be scanned, the caller falls back to the reader
+    static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    // bytes holding the characters of the raw text at least, UTF-8 takes up to 3 bytes per char
+    private static final int MAX_RAW_TEXT_BYTES = 3 * ConsoleLogParser.MAX_RAW_TEXT_LENGTH;
+
+    private static final byte[] DELIMITER = "==>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STARTED_BY_USER = "Started by user".getBytes(StandardCharsets.US_ASCII);
+
+    private final ConsoleLogParser parser;
+    private final Charset charset;
+    private final ByteLine byteLine = new ByteLine();
+
+    private MappedByteBuffer buffer = null;
+    // offset in the window of the first line not yet appended to the raw text, -1 when none is pending
+    private int rawTextBegin = -1;
+    private int rawTextEnd = -1;
+
+    private MappedLogScanner(ConsoleLogParser parser, Charset charset)
+    {
+        this.parser = parser;
+        this.charset = charset;
+    }
+
+    /**
+     * Compressed logs and logs kept elsewhere than in a local file are read
+     * through the build's log reader instead
+     */
+    static boolean isApplicable(File logFile)
+    {
+        return null != logFile &&
+               logFile.isFile() &&
+               false == logFile.getName().endsWith(".gz");
+    }
+
+    static ReportModel parse(File logFile, Charset charset, PrintStream logger)
+    throws IOException
+    {
+        ConsoleLogParser parser = new ConsoleLogParser(logger);
+        MappedLogScanner scanner = new MappedLogScanner(parser, charset);
+
+        try(RandomAccessFile file = new RandomAccessFile(logFile, "r");
+            FileChannel channel = file.getChannel())
+        {
+            final long size = channel.size();
+            long position = 0L;
+            while(position < size)
+            {
+                final long windowSize = Math.min(WINDOW_SIZE, size - position);
+                scanner.buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                final int scanned = scanner.scan(position + windowSize == size);
+                if(0 == scanned)
+                {
+                    throw new IOException("LINE TOO LONG");
+                }
+
+                position += scanned;
+            }
+        }
+
+        return parser.finish();
+    }
+
+    /**
+     * @param last whether the window ends at the end of the file
+     * @return number of bytes of the window scanned, the incomplete line at its end is left to the next window
+     */
+    private int scan(boolean last)
+    {
+        final int limit = this.buffer.limit();
+        int lineBegin = 0;
+        while(lineBegin < limit)
+        {
+            int lineEnd = this.indexOf((byte) '\n', lineBegin, limit);
+            if(lineEnd < 0)
+            {
+                if(false == last)
+                {
+                    break;
+                }
+                lineEnd = limit;
+            }
+
+            // the text of the line without its terminator
+            int textEnd = lineEnd;
+            if(textEnd > lineBegin && '\r' == this.buffer.get(textEnd - 1))
+            {
+                textEnd --;
+            }
+
+            this.scanLine(lineBegin, textEnd);
+            lineBegin = lineEnd + 1;
+        }
+
+        this.flushRawText();
+        return Math.min(lineBegin, limit);
+    }
+
+    private void scanLine(int begin, int end)
+    {
+        if(this.isBlank(begin, end))
+        {
+            return;
+        }
+
+        if('@' == this.buffer.get(begin))
+        {
+            this.parser.acceptMarker(this.decode(begin, end));
+            return;
+        }
+
+        if(0 <= this.indexOf(STARTED_BY_USER, begin, end))
+        {
+            return;
+        }
+
+        // consecutive lines are decoded together, a skipped line or a carriage return ends the run
+        if(this.rawTextBegin < 0 || this.rawTextEnd != begin - 1)
+        {
+            this.flushRawText();
+            this.rawTextBegin = begin;
+        }
+        this.rawTextEnd = end;
+
+        final long time = this.parser.acceptTime(this.byteLine.of(this.buffer, begin, end));
+        if(this.parser.isValueSection() && 0 <= this.indexOf(DELIMITER, begin, end))
+        {
+            this.parser.acceptValue(this.decode(begin, end), time);
+        }
+    }
+
+    private void flushRawText()
+    {
+        if(this.rawTextBegin < 0)
+        {
+            return;
+        }
+
+        // earlier bytes of the run would be dropped by the parser anyway
+        if(this.rawTextEnd - this.rawTextBegin > MAX_RAW_TEXT_BYTES)
+        {
+            final int begin = this.rawTextEnd - MAX_RAW_TEXT_BYTES;
+            final int lineEnd = '\n' == this.buffer.get(begin - 1) ? begin - 1 : this.indexOf((byte) '\n', begin, this.rawTextEnd);
+            this.parser.skipRawText();
+            if(lineEnd < 0)
+            {
+                // a single line longer than the raw text
+                this.rawTextBegin = -1;
+                this.rawTextEnd = -1;
+                return;
+            }
+            this.rawTextBegin = lineEnd + 1;
+        }
+
+        // lines of the run are separated by a line feed only, as the reader would return them
+        ByteBuffer run = this.buffer.duplicate();
+        run.position(this.rawTextBegin);
+        run.limit(this.rawTextEnd);
+        this.parser.appendRawText(this.charset.decode(run));
+        this.parser.appendRawText("\n");
+
+        this.rawTextBegin = -1;
+        this.rawTextEnd = -1;
+    }
+
+    private String decode(int begin, int end)
+    {
+        byte[] bytes = new byte[end - begin];
+        ByteBuffer line = this.buffer.duplicate();
+        line.position(begin);
+        line.get(bytes);
+
+        return new String(bytes, this.charset);
+    }
+
+    private boolean isBlank(int begin, int end)
+    {
+        for(int idx = begin; idx < end; idx ++)
+        {
+            final byte b = this.buffer.get(idx);
+            if(b < 0 || b > ' ')
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int indexOf(byte b, int begin, int end)
+    {
+        for(int idx = begin; idx < end; idx ++)
+        {
+            if(b == this.buffer.get(idx))
+            {
+                return idx;
+            }
+        }
+
+        return -1;
+    }
+
+    private int indexOf(byte[] pattern, int begin, int end)
+    {
+        final int last = end - pattern.length;
+        for(int idx = begin; idx <= last; idx ++)
+        {
+            if(pattern[0] != this.buffer.get(idx))
+            {
+                continue;
+            }
+
+            int matched = 1;
+            while(matched < pattern.length && pattern[matched] == this.buffer.get(idx + matched))
+            {
+                matched ++;
+            }
+
+            if(matched == pattern.length)
+            {
+                return idx;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Bytes of a line seen as characters, enough for recognizing the ASCII
+     * timestamp a line starts with without decoding it. Bytes beyond ASCII
+     * never match a timestamp character.
+     */
+    private static class ByteLine implements CharSequence
+    {
+        private ByteBuffer buffer;
+        private int begin;
+        private int end;
+
+        ByteLine of(ByteBuffer buffer, int begin, int end)
+        {
+            this.buffer = buffer;
+            this.begin = begin;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length()
+        {
+            return this.end - this.begin;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            return (char) (this.buffer.get(this.begin + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int begin, int end)
+        {
+            StringBuilder text = new StringBuilder(end - begin);
+            for(int idx = begin; idx < end; idx ++)
+            {
+                text.append(this.charAt(idx));
+            }
+
+            return text;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.subSequence(0, this.length()).toString();
+        }
+    }
+}
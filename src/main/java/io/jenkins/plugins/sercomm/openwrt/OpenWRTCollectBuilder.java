@@ -1,16 +1,17 @@
 package io.jenkins.plugins.sercomm.openwrt;
 
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
 import com.sercomm.commons.id.NameRule;
 import com.sercomm.commons.umei.UMEiError;
-import com.sercomm.commons.util.DateTime;
 import com.sercomm.commons.util.XStringUtil;
 import com.sercomm.demeter.microservices.client.v1.GetDeviceRequest;
 import com.sercomm.demeter.microservices.client.v1.GetDeviceResult;
@@ -18,17 +19,15 @@ import com.sercomm.demeter.microservices.client.v1.GetDevicesRequest;
 import com.sercomm.demeter.microservices.client.v1.GetDevicesResult;
 import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsRequest;
 import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsResult;
-import com.sercomm.demeter.microservices.client.v1.GetInstalledAppRequest;
-import com.sercomm.demeter.microservices.client.v1.GetInstalledAppResult;
-import com.sercomm.demeter.microservices.client.v1.PostUbusCommandRequest;
-import com.sercomm.demeter.microservices.client.v1.PostUbusCommandResult;
 import com.sercomm.demeter.microservices.client.v1.RESTfulClient;
 
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractProject;
 import hudson.model.AutoCompletionCandidates;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
@@ -47,6 +46,20 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
     private String duration;
     private String frequency;
 
+    // percent, blank when the metric is not watched
+    private String cpuThreshold;
+    private String ramThreshold;
+    private String thresholdSamples;
+    // FAILURE or UNSTABLE
+    private String thresholdResult;
+
+    // samples faster while the usage changes, slower while it is steady
+    private Boolean adaptiveSampling;
+    // seconds, the ceiling of an adaptive period
+    private String maxInterval;
+    // percentage points of change that count as a change
+    private String changeTolerance;
+
     @DataBoundConstructor
     public OpenWRTCollectBuilder(
             String deviceId,
@@ -94,177 +107,152 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
     {
         return frequency;
     }
+
+    public String getCpuThreshold()
+    {
+        return cpuThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCpuThreshold(String cpuThreshold)
+    {
+        this.cpuThreshold = cpuThreshold;
+    }
+
+    public String getRamThreshold()
+    {
+        return ramThreshold;
+    }
+
+    @DataBoundSetter
+    public void setRamThreshold(String ramThreshold)
+    {
+        this.ramThreshold = ramThreshold;
+    }
+
+    public String getThresholdSamples()
+    {
+        return thresholdSamples;
+    }
+
+    @DataBoundSetter
+    public void setThresholdSamples(String thresholdSamples)
+    {
+        this.thresholdSamples = thresholdSamples;
+    }
+
+    public String getThresholdResult()
+    {
+        return thresholdResult;
+    }
+
+    @DataBoundSetter
+    public void setThresholdResult(String thresholdResult)
+    {
+        this.thresholdResult = thresholdResult;
+    }
+
+    public boolean getAdaptiveSampling()
+    {
+        return null != adaptiveSampling && adaptiveSampling;
+    }
+
+    @DataBoundSetter
+    public void setAdaptiveSampling(boolean adaptiveSampling)
+    {
+        this.adaptiveSampling = adaptiveSampling;
+    }
+
+    public String getMaxInterval()
+    {
+        return maxInterval;
+    }
+
+    @DataBoundSetter
+    public void setMaxInterval(String maxInterval)
+    {
+        this.maxInterval = maxInterval;
+    }
+
+    public String getChangeTolerance()
+    {
+        return changeTolerance;
+    }
+
+    @DataBoundSetter
+    public void setChangeTolerance(String changeTolerance)
+    {
+        this.changeTolerance = changeTolerance;
+    }
+
+    /**
+     * @return seconds
+     */
+    static long parseMaxInterval(String value)
+    {
+        return Long.parseLong(XStringUtil.isBlank(value) ? DescriptorImpl.DEFAULT_MAX_INTERVAL : value);
+    }
+
+    /**
+     * @return percentage points
+     */
+    static double parseChangeTolerance(String value)
+    {
+        return Double.parseDouble(XStringUtil.isBlank(value) ? DescriptorImpl.DEFAULT_CHANGE_TOLERANCE : value);
+    }
+
+    /**
+     * @return result of a build of which the collection breached a threshold
+     */
+    Result toThresholdResult()
+    {
+        if(false == XStringUtil.isBlank(this.thresholdResult) && 0 == this.thresholdResult.compareTo("UNSTABLE"))
+        {
+            return Result.UNSTABLE;
+        }
+
+        return Result.FAILURE;
+    }
     
     @Override
     public void perform(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener) 
     throws InterruptedException, IOException 
     {
-        final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
-        final PrintStream logger = listener.getLogger();
-
-        // convert to millisecnods
-        final long durationValue = Long.parseLong(this.duration) * 1000L;
-        final long frequencyValue = Long.parseLong(this.frequency) * 1000L;
-
-        logger.println(LogParserUtil.SYMBOL_COLLECT_PROCEDURE_BPOS);
-        logger.printf("%s - [INFO] ====== Collection Builder ======%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-        logger.println(LogParserUtil.SYMBOL_DESCRIBE_BPOS);
-        logger.printf("%s - [INFO] App publisher: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.appPublisher);
-        logger.printf("%s - [INFO] App name: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.appName);
-        logger.printf("%s - [INFO] App version: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.appVersion);
-        logger.printf("%s - [INFO] Duration: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.duration);
-        logger.printf("%s - [INFO] Frequency: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.frequency);
-        logger.printf("%s - [INFO] Endpoint: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), endpoint);
-        logger.println(LogParserUtil.SYMBOL_DESCRIBE_EPOS);
+        CollectSession session = new CollectSession(run, listener.getLogger(), this);
+        session.open();
         
         try
         {
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
-            
-            // 1. check device status and its model name
-            logger.printf("%s - [INFO] checking device status... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-            GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
-                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                    .withNodeName(this.deviceId);
-
-            GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
-            if(200 != getDeviceResult.getStatusCode())
-            {
-                logger.printf("failed%n");
-                throw new InterruptedException("SERVER HTTP " + getDeviceResult.getStatusCode() + ", METHOD: 'getDevice'");
-            }
+            session.prepare();
 
-            if(getDeviceResult.hasError())
-            {
-                logger.printf("failed%n");
-                
-                UMEiError error = getDeviceResult.getErrors().get(0);
-                throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-            }
-            
-            if(0 != getDeviceResult.getData().getState().compareTo("online"))
-            {
-                logger.printf("failed%n");
-                throw new InterruptedException("DEVICE IS NOT ONLINE");
-            }
-            logger.printf("ok%n");
-
-            // 2. obtaining App list
-            logger.printf("%s - [INFO] obtaining App list... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-            GetInstallableAppsRequest getInstallableAppRequest = new GetInstallableAppsRequest()
-                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                    .withModel(getDeviceResult.getData().getModel())
-                    .withFrom(0)
-                    .withSize(500);
-
-            GetInstallableAppsResult getInstallableAppResult = client.getInstallableApps(getInstallableAppRequest);
-            if(200 != getInstallableAppResult.getStatusCode())
-            {
-                logger.printf("failed%n");
-                throw new InterruptedException("SERVER HTTP " + getInstallableAppResult.getStatusCode() + ", METHOD: 'getInstallableApps'");
-            }
+            // the DUTs are sampled on the shared scheduler, this thread only waits for the end
+            final CountDownLatch done = new CountDownLatch(1);
+            session.start(0L, done::countDown);
+            done.await();
 
-            if(getInstallableAppResult.hasError())
-            {
-                logger.printf("failed%n");
+            session.endSamples();
+        }
+        catch(Throwable t)
+        {
+            session.stop();
+            session.fail(t);
+        }
 
-                UMEiError error = getInstallableAppResult.getErrors().get(0);
-                throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-            }                        
-            logger.printf("ok%n");
-            
-            // 2-1. checking the specific App to be available or not
-            logger.printf("%s - [INFO] checking specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-            GetInstallableAppsResult.ResultData installableApp = null;
-            GetInstallableAppsResult.ResultData.Version installableVersion = null;
-            
-            for(GetInstallableAppsResult.ResultData app : getInstallableAppResult.getData())
-            {
-                if(0 != app.getPublisher().compareTo(this.appPublisher))
-                {
-                    continue;
-                }
-                
-                if(0 != app.getAppName().compareTo(this.appName))
-                {
-                    continue;
-                }
-                
-                for(GetInstallableAppsResult.ResultData.Version version : app.getVersions())
-                {
-                    if(0 != version.getVersionName().compareTo(this.appVersion))
-                    {
-                        continue;
-                    }
-                    
-                    installableApp = app;
-                    installableVersion = version;
-                }
-            }
-            
-            if(null == installableApp || null == installableVersion)
-            {
-                logger.printf("failed%n");
-                
-                throw new InterruptedException("SPECIFIC APP CANNOT BE FOUND");
-            }
-            logger.printf("ok%n");
-            
-            // 3. check if device has installed the specific App
-            logger.printf("%s - [INFO] checking device installed Apps... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-            GetInstalledAppRequest getInstalledAppRequest = new GetInstalledAppRequest()
-                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                    .withNodeName(this.deviceId)
-                    .withAppId(installableApp.getAppId());
-            GetInstalledAppResult getInstalledAppResult = client.getInstalledApp(getInstalledAppRequest);
-            if(200 != getInstalledAppResult.getStatusCode())
-            {
-                logger.printf("failed%n");
-                throw new InterruptedException("SERVER HTTP " + getInstalledAppResult.getStatusCode() + ", METHOD: 'getInstalledApp'");
-            }
-            logger.printf("ok%n");
+        session.close();
 
-            if(true == getInstalledAppResult.hasError())
+        // a breached threshold is the only collection error that changes the build result
+        final ResultRecord breach = session.getBreach();
+        if(null != breach)
+        {
+            if(Result.UNSTABLE == this.toThresholdResult())
             {
-                throw new InterruptedException("SPECIFIC APP HAS NOT BEEN INSTALLED YET");
+                run.setResult(Result.UNSTABLE);
             }
-            
-            logger.println(LogParserUtil.SYMBOL_DETAIL_BPOS);
-
-            final long beginTime = System.currentTimeMillis();
-            while(System.currentTimeMillis() - beginTime <= durationValue)
+            else
             {
-                Thread.sleep(frequencyValue);
-
-                PostUbusCommandRequest request = new PostUbusCommandRequest()
-                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                        .withNodeName(this.deviceId)
-                        .withRequestContents("List", "Services.Management.LCM.ExecutionEnvironments", XStringUtil.BLANK);
-                
-                PostUbusCommandResult result = client.postUbusCommand(request);
-                if(200 != result.getStatusCode())
-                {
-                    throw new InterruptedException("SERVER HTTP " + getInstalledAppResult.getStatusCode() + ", METHOD: 'getInstalledApp'");
-                }
-                
-                if(true == result.hasError())
-                {
-                    UMEiError error = result.getErrors().get(0);
-                    throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());                    
-                }
-                
-                logger.printf("%s - ==>%s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), result.getData().getResult());                
-            };
-            logger.println(LogParserUtil.SYMBOL_DETAIL_EPOS);
-        }
-        catch(Throwable t)
-        {
-            logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+                throw new AbortException(CollectSession.describe(breach));
+            }
         }
-
-        logger.println(LogParserUtil.SYMBOL_COLLECT_PROCEDURE_EPOS);
     }
     
     @Extension
@@ -273,6 +261,10 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
         private static final String PLEASE_SELECT_TEXT = "--- SELECT ---";
         private static final ArrayList<ListBoxModel.Option> DEFAULT_DURATION_OPTIONS = new ArrayList<>();
         private static final ArrayList<ListBoxModel.Option> DEFAULT_FREQUENCY_OPTIONS = new ArrayList<>();
+        private static final ArrayList<ListBoxModel.Option> DEFAULT_THRESHOLD_RESULT_OPTIONS = new ArrayList<>();
+        private static final ArrayList<ListBoxModel.Option> DEFAULT_MAX_INTERVAL_OPTIONS = new ArrayList<>();
+        static final String DEFAULT_MAX_INTERVAL = "600";
+        static final String DEFAULT_CHANGE_TOLERANCE = "2";
         static 
         {
             DEFAULT_DURATION_OPTIONS.add(new ListBoxModel.Option("1  minute", "60", false));
@@ -292,6 +284,14 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
             DEFAULT_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("1  minute", "60", false));
             DEFAULT_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("5  minutes", "300", false));
             DEFAULT_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("10 minutes", "600", false));
+
+            DEFAULT_THRESHOLD_RESULT_OPTIONS.add(new ListBoxModel.Option("Fail the build", "FAILURE", false));
+            DEFAULT_THRESHOLD_RESULT_OPTIONS.add(new ListBoxModel.Option("Mark the build unstable", "UNSTABLE", false));
+
+            DEFAULT_MAX_INTERVAL_OPTIONS.add(new ListBoxModel.Option("1  minute", "60", false));
+            DEFAULT_MAX_INTERVAL_OPTIONS.add(new ListBoxModel.Option("5  minutes", "300", false));
+            DEFAULT_MAX_INTERVAL_OPTIONS.add(new ListBoxModel.Option("10 minutes", "600", false));
+            DEFAULT_MAX_INTERVAL_OPTIONS.add(new ListBoxModel.Option("30 minutes", "1800", false));
         }
 
         private int lastEditorId = 0;
@@ -311,15 +311,11 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
         public FormValidation doCheckDeviceId(
                 @QueryParameter String value)
         {
-            if(XStringUtil.isBlank(value))
+            List<String> tokens = OpenWRTLoopBuilder.splitDeviceIds(value);
+            if(tokens.isEmpty())
             {
                 return FormValidation.error("DEVICE ID IS BLANK");
             }
-            
-            if(!NameRule.isDevice(value))
-            {
-                return FormValidation.error("INVALID DEVICE ID: '" + value + "'");
-            }
 
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             if(XStringUtil.isBlank(endpoint))
@@ -327,29 +323,41 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
                 return FormValidation.error("DEMETER ENDPOINT IS NOT CONFIGURED");
             }
 
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
-            
-            GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
-                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                    .withNodeName(value);
+            RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
-            GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
-            if(200 != getDeviceResult.getStatusCode())
+            for(String token : tokens)
             {
-                return FormValidation.error("SERVER ACK HTTP " + getDeviceResult.getStatusCode());
-            }
-            
-            if(true == getDeviceResult.hasError())
-            {
-                UMEiError error = getDeviceResult.getErrors().get(0);
-                return FormValidation.error("SERVER RESPONSE HAS ERROR, CODE: " + error.getCode() + ", DETAIL: " + error.getDetail());
-            }
+                if(OpenWRTLoopBuilder.isDevicePattern(token))
+                {
+                    // patterns are expanded against the online devices when the build starts
+                    continue;
+                }
 
-            if(0 != getDeviceResult.getData().getState().compareTo("online"))
-            {
-                return FormValidation.error("DEVICE '" + value + "' IS NOT ONLINE");
+                if(!NameRule.isDevice(token))
+                {
+                    return FormValidation.error("INVALID DEVICE ID: '" + token + "'");
+                }
+
+                GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
+                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                        .withNodeName(token);
+
+                GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
+                if(200 != getDeviceResult.getStatusCode())
+                {
+                    return FormValidation.error("SERVER ACK HTTP " + getDeviceResult.getStatusCode());
+                }
+                
+                if(true == getDeviceResult.hasError())
+                {
+                    UMEiError error = getDeviceResult.getErrors().get(0);
+                    return FormValidation.error("SERVER RESPONSE HAS ERROR, CODE: " + error.getCode() + ", DETAIL: " + error.getDetail());
+                }
+
+                if(0 != getDeviceResult.getData().getState().compareTo("online"))
+                {
+                    return FormValidation.error("DEVICE '" + token + "' IS NOT ONLINE");
+                }
             }
 
             return FormValidation.ok();
@@ -368,9 +376,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
                 
                 GetDevicesRequest getDeviceRequest = new GetDevicesRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -404,6 +410,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
         {
             ListBoxModel listBoxModel = new ListBoxModel();            
 
+            deviceId = OpenWRTLoopBuilder.firstDeviceId(deviceId);
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             do
             {
@@ -418,9 +425,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -483,6 +488,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
         {
             ListBoxModel listBoxModel = new ListBoxModel();
 
+            deviceId = OpenWRTLoopBuilder.firstDeviceId(deviceId);
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             do
             {
@@ -499,9 +505,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -571,6 +575,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
         {
             ListBoxModel listBoxModel = new ListBoxModel();
 
+            deviceId = OpenWRTLoopBuilder.firstDeviceId(deviceId);
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             do
             {
@@ -589,9 +594,7 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -720,6 +723,131 @@ public class OpenWRTCollectBuilder extends Builder implements SimpleBuildStep
             return listBoxModel;
         }
 
+        public ListBoxModel doFillThresholdResultItems(
+                @QueryParameter String thresholdResult) 
+        {
+            ListBoxModel listBoxModel = new ListBoxModel();
+
+            final String selectedValue = XStringUtil.isBlank(thresholdResult) ? "FAILURE" : thresholdResult;
+            for(ListBoxModel.Option option : DEFAULT_THRESHOLD_RESULT_OPTIONS)
+            {
+                if(0 == option.value.compareTo(selectedValue))
+                {
+                    // selected
+                    listBoxModel.add(new ListBoxModel.Option(option.name, option.value, true));
+                }
+                else
+                {
+                    listBoxModel.add(option);
+                }
+            }
+
+            return listBoxModel;
+        }
+
+        public ListBoxModel doFillMaxIntervalItems(
+                @QueryParameter String maxInterval) 
+        {
+            ListBoxModel listBoxModel = new ListBoxModel();
+
+            final String selectedValue = XStringUtil.isBlank(maxInterval) ? DEFAULT_MAX_INTERVAL : maxInterval;
+            for(ListBoxModel.Option option : DEFAULT_MAX_INTERVAL_OPTIONS)
+            {
+                if(0 == option.value.compareTo(selectedValue))
+                {
+                    // selected
+                    listBoxModel.add(new ListBoxModel.Option(option.name, option.value, true));
+                }
+                else
+                {
+                    listBoxModel.add(option);
+                }
+            }
+
+            return listBoxModel;
+        }
+
+        public FormValidation doCheckChangeTolerance(
+                @QueryParameter String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                if(0. > Double.parseDouble(value))
+                {
+                    return FormValidation.error("VALUE MUST NOT BE NEGATIVE.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE NUMBER.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckCpuThreshold(
+                @QueryParameter String value)
+        {
+            return checkThreshold(value);
+        }
+
+        public FormValidation doCheckRamThreshold(
+                @QueryParameter String value)
+        {
+            return checkThreshold(value);
+        }
+
+        public FormValidation doCheckThresholdSamples(
+                @QueryParameter String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                if(0 >= Integer.parseInt(value))
+                {
+                    return FormValidation.error("VALUE MUST BE GREATER THAN 0.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE INTEGER.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        private static FormValidation checkThreshold(String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                final double threshold = Double.parseDouble(value);
+                if(0. >= threshold || 100. < threshold)
+                {
+                    return FormValidation.error("VALUE MUST BE GREATER THAN 0 AND NOT GREATER THAN 100.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE NUMBER.");
+            }
+
+            return FormValidation.ok();
+        }
+
         @Override
         public String getDisplayName() 
         {
@@ -0,0 +1,484 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/**
+ * Pipeline form of {@link OpenWRTCollectBuilder}. Samples are scheduled on
+ * {@link DemeterStepScheduler}, no thread is held between two samples.
+ */
+public class OpenWRTCollectStep extends Step implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String deviceId;
+    private final String appPublisher;
+    private final String appName;
+    private final String appVersion;
+    private final String duration;
+    private final String frequency;
+
+    private String cpuThreshold;
+    private String ramThreshold;
+    private String thresholdSamples;
+    private String thresholdResult;
+    private boolean adaptiveSampling = false;
+    private String maxInterval;
+    private String changeTolerance;
+
+    @DataBoundConstructor
+    public OpenWRTCollectStep(
+            String deviceId,
+            String appPublisher,
+            String appName,
+            String appVersion,
+            String duration,
+            String frequency)
+    {
+        this.deviceId = deviceId;
+        this.appPublisher = appPublisher;
+        this.appName = appName;
+        this.appVersion = appVersion;
+        this.duration = duration;
+        this.frequency = frequency;
+    }
+
+    public String getDeviceId()
+    {
+        return deviceId;
+    }
+
+    public String getAppPublisher()
+    {
+        return appPublisher;
+    }
+
+    public String getAppName()
+    {
+        return appName;
+    }
+
+    public String getAppVersion()
+    {
+        return appVersion;
+    }
+
+    public String getDuration()
+    {
+        return duration;
+    }
+
+    public String getFrequency()
+    {
+        return frequency;
+    }
+
+    public String getCpuThreshold()
+    {
+        return cpuThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCpuThreshold(String cpuThreshold)
+    {
+        this.cpuThreshold = cpuThreshold;
+    }
+
+    public String getRamThreshold()
+    {
+        return ramThreshold;
+    }
+
+    @DataBoundSetter
+    public void setRamThreshold(String ramThreshold)
+    {
+        this.ramThreshold = ramThreshold;
+    }
+
+    public String getThresholdSamples()
+    {
+        return thresholdSamples;
+    }
+
+    @DataBoundSetter
+    public void setThresholdSamples(String thresholdSamples)
+    {
+        this.thresholdSamples = thresholdSamples;
+    }
+
+    public String getThresholdResult()
+    {
+        return thresholdResult;
+    }
+
+    @DataBoundSetter
+    public void setThresholdResult(String thresholdResult)
+    {
+        this.thresholdResult = thresholdResult;
+    }
+
+    public boolean getAdaptiveSampling()
+    {
+        return adaptiveSampling;
+    }
+
+    @DataBoundSetter
+    public void setAdaptiveSampling(boolean adaptiveSampling)
+    {
+        this.adaptiveSampling = adaptiveSampling;
+    }
+
+    public String getMaxInterval()
+    {
+        return maxInterval;
+    }
+
+    @DataBoundSetter
+    public void setMaxInterval(String maxInterval)
+    {
+        this.maxInterval = maxInterval;
+    }
+
+    public String getChangeTolerance()
+    {
+        return changeTolerance;
+    }
+
+    @DataBoundSetter
+    public void setChangeTolerance(String changeTolerance)
+    {
+        this.changeTolerance = changeTolerance;
+    }
+
+    OpenWRTCollectBuilder toBuilder()
+    {
+        OpenWRTCollectBuilder builder = new OpenWRTCollectBuilder(
+            this.deviceId,
+            this.appPublisher,
+            this.appName,
+            this.appVersion,
+            this.duration,
+            this.frequency);
+        builder.setCpuThreshold(this.cpuThreshold);
+        builder.setRamThreshold(this.ramThreshold);
+        builder.setThresholdSamples(this.thresholdSamples);
+        builder.setThresholdResult(this.thresholdResult);
+        builder.setAdaptiveSampling(this.adaptiveSampling);
+        builder.setMaxInterval(this.maxInterval);
+        builder.setChangeTolerance(this.changeTolerance);
+
+        return builder;
+    }
+
+    @Override
+    public StepExecution start(StepContext context)
+    throws Exception
+    {
+        return new Execution(context, this);
+    }
+
+    /**
+     * The beginning of the collection and the DUTs being sampled are persisted
+     * with the step, after a controller restart the execution continues the
+     * same sampling schedules.
+     * <p>
+     * The step reports its result once, after the session is closed; a cause
+     * coming up after the completion is added to the one reported.
+     */
+    private static final class Execution extends StepExecution
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final OpenWRTCollectStep step;
+        // epoch milliseconds, 0 until the collection has started
+        private volatile long beginTime = 0L;
+        private volatile ArrayList<String> deviceIds = new ArrayList<>();
+
+        private transient volatile CollectSession session;
+        // created before the set-up is started, guarded by this
+        private transient AtomicBoolean completed;
+        private transient AtomicBoolean reported;
+        // why the step stops early, guarded by this
+        private transient Throwable cause;
+
+        Execution(StepContext context, OpenWRTCollectStep step)
+        {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start()
+        throws Exception
+        {
+            this.initCompleted();
+            DemeterStepScheduler.get().execute(() -> this.begin(false));
+            return false;
+        }
+
+        @Override
+        public void onResume()
+        {
+            this.initCompleted();
+            DemeterStepScheduler.get().execute(() -> this.begin(0L != this.beginTime));
+        }
+
+        @Override
+        public void stop(Throwable cause)
+        throws Exception
+        {
+            this.initCompleted();
+
+            final boolean forced;
+            synchronized(this)
+            {
+                forced = this.completed.get();
+            }
+
+            if(forced)
+            {
+                // stopped again while a sample still hangs in a call to Demeter: the build is released now,
+                // the session is still closed once that sample returns
+                this.report(cause);
+                return;
+            }
+
+            this.complete(cause);
+        }
+
+        /**
+         * The transient flag is gone after a restart, it must exist before the set-up is queued
+         * so that a step stopped meanwhile is never set up
+         */
+        private synchronized void initCompleted()
+        {
+            if(null == this.completed)
+            {
+                this.completed = new AtomicBoolean(false);
+                this.reported = new AtomicBoolean(false);
+            }
+        }
+
+        @Override
+        public String getStatus()
+        {
+            if(0L == this.beginTime)
+            {
+                return "starting";
+            }
+
+            return String.format("sampling %d DUT(s) for %d seconds",
+                this.deviceIds.size(),
+                (System.currentTimeMillis() - this.beginTime) / 1000L);
+        }
+
+        private void begin(boolean resumed)
+        {
+            try
+            {
+                final Run<?, ?> run = this.getContext().get(Run.class);
+                final TaskListener listener = this.getContext().get(TaskListener.class);
+
+                CollectSession current = new CollectSession(run, listener.getLogger(), this.step.toBuilder());
+                synchronized(this)
+                {
+                    if(this.completed.get())
+                    {
+                        // stopped before the set-up got its turn
+                        return;
+                    }
+                    this.session = current;
+                    // a stop meanwhile closes the session once the set-up is done
+                    current.enterTask();
+                }
+
+                try
+                {
+                    if(false == resumed)
+                    {
+                        current.open();
+                        current.prepare();
+                        this.deviceIds = new ArrayList<>(current.getDeviceIds());
+                        this.beginTime = System.currentTimeMillis();
+                    }
+                    else
+                    {
+                        current.resume(this.deviceIds);
+                    }
+
+                    current.start(System.currentTimeMillis() - this.beginTime, this::end);
+                }
+                finally
+                {
+                    current.exitTask();
+                }
+            }
+            catch(Throwable t)
+            {
+                this.fail(t);
+            }
+        }
+
+        private void end()
+        {
+            if(this.completed.get())
+            {
+                // stopped meanwhile, the session is closed by then
+                return;
+            }
+
+            try
+            {
+                this.session.endSamples();
+
+                final ResultRecord breach = this.session.getBreach();
+                if(null != breach)
+                {
+                    if(Result.UNSTABLE == this.step.toBuilder().toThresholdResult())
+                    {
+                        this.getContext().get(Run.class).setResult(Result.UNSTABLE);
+                    }
+                    else
+                    {
+                        this.complete(new AbortException(CollectSession.describe(breach)));
+                        return;
+                    }
+                }
+
+                this.complete(null);
+            }
+            catch(Throwable t)
+            {
+                this.fail(t);
+            }
+        }
+
+        /**
+         * Same as the builder, a failing collection is logged and ends the step without failing the build,
+         * only a breached threshold does
+         */
+        private void fail(Throwable t)
+        {
+            final CollectSession current = this.session;
+            if(null != current && false == this.completed.get())
+            {
+                current.fail(t);
+            }
+
+            this.complete(null);
+        }
+
+        private void complete(Throwable cause)
+        {
+            final CollectSession current;
+            synchronized(this)
+            {
+                if(this.completed.get())
+                {
+                    // reported with the cause of the completion once the session is closed
+                    this.addCause(cause);
+                    return;
+                }
+                this.completed.set(true);
+                this.cause = cause;
+                current = this.session;
+            }
+
+            if(null == current)
+            {
+                this.report(cause);
+                return;
+            }
+
+            // the samples being taken end first, nothing is sampled or written after the session is closed
+            current.stop(() -> {
+                current.close();
+                final Throwable reportedCause;
+                synchronized(this)
+                {
+                    reportedCause = this.cause;
+                }
+                this.report(reportedCause);
+            });
+        }
+
+        /**
+         * Keeps the cause of a failure after the completion, guarded by this
+         */
+        private void addCause(Throwable cause)
+        {
+            if(null == cause || cause == this.cause)
+            {
+                return;
+            }
+
+            if(null == this.cause)
+            {
+                this.cause = cause;
+            }
+            else
+            {
+                this.cause.addSuppressed(cause);
+            }
+        }
+
+        /**
+         * Completes the context of the step, only the first call does
+         */
+        private void report(Throwable cause)
+        {
+            if(false == this.reported.compareAndSet(false, true))
+            {
+                return;
+            }
+
+            if(null == cause)
+            {
+                this.getContext().onSuccess(null);
+            }
+            else
+            {
+                this.getContext().onFailure(cause);
+            }
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor
+    {
+        @Override
+        public Set<? extends Class<?>> getRequiredContext()
+        {
+            return new HashSet<>(Arrays.asList(Run.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName()
+        {
+            return "openwrtCollect";
+        }
+
+        @Override
+        public String getDisplayName()
+        {
+            return Messages.DemeterCollectStep_DescriptorImpl_DisplayName();
+        }
+    }
+}
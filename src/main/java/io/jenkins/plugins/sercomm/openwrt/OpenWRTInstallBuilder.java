@@ -105,11 +105,12 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
         logger.printf("%s - [INFO] Start app: %b%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.startApp);
         logger.printf("%s - [INFO] Endpoint: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), endpoint);
 
+        boolean ok = false;
+        String message = null;
+
         try
         {
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
+            RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
             
             // 1. check device status and its model name
             logger.printf("%s - [INFO] checking device status... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
@@ -292,12 +293,32 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
                 }
                 logger.printf("ok%n");
             }
+
+            ok = true;
         }
         catch(Throwable t)
         {
+            message = t.getMessage();
+
             // output error message
             logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
         }
+
+        try
+        {
+            ResultsFile.append(run, ResultRecord.step(
+                ResultRecord.TYPE_INSTALL,
+                this.deviceId,
+                this.appPublisher,
+                this.appName,
+                this.appVersion,
+                ok,
+                message));
+        }
+        catch(IOException e)
+        {
+            logger.printf("%s - [ERROR] failed to write results file: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+        }
     }
     
     @Extension
@@ -338,9 +359,7 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
                 return FormValidation.error("DEMETER ENDPOINT IS NOT CONFIGURED");
             }
 
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
+            RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
             
             GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                     .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -379,9 +398,7 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
                 
                 GetDevicesRequest getDeviceRequest = new GetDevicesRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -429,9 +446,7 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -510,9 +525,7 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -600,9 +613,7 @@ public class OpenWRTInstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
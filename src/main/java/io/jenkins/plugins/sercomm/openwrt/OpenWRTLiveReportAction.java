@@ -0,0 +1,275 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.time.Second;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.sercomm.commons.util.Json;
+import com.sercomm.commons.util.XStringUtil;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Run;
+import jenkins.model.TransientActionFactory;
+
+/**
+ * Charts and running statistics of a collection while it is still running,
+ * on the page of its build. Nothing is stored with the build, the action
+ * is offered only while the {@link LiveReport} of the collection is open.
+ */
+public class OpenWRTLiveReportAction implements Action
+{
+    public static final String URL_NAME = "openwrt-live";
+
+    private final Run<?, ?> run;
+
+    OpenWRTLiveReportAction(Run<?, ?> run)
+    {
+        this.run = run;
+    }
+
+    public Run<?, ?> getRun()
+    {
+        return this.run;
+    }
+
+    @Override
+    public String getIconFileName()
+    {
+        return "graph.png";
+    }
+
+    @Override
+    public String getDisplayName()
+    {
+        return Messages.OpenWRTLiveReportAction_DisplayName();
+    }
+
+    @Override
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+
+    /**
+     * DUTs sampled so far, the samples appended since the last call are read first
+     */
+    public List<DeviceView> getDevices()
+    {
+        final LiveReport report = LiveReport.get(this.run);
+        List<DeviceView> devices = new ArrayList<>();
+        if(null == report)
+        {
+            return devices;
+        }
+
+        try
+        {
+            report.refresh();
+        }
+        catch(IOException e)
+        {
+            // what was read before is still worth showing, the next call tries again
+        }
+
+        for(String deviceId : report.getDeviceIds())
+        {
+            devices.add(new DeviceView(
+                deviceId,
+                report.getSampleCount(deviceId),
+                report.getLastTime(deviceId),
+                report.getUsages(deviceId)));
+        }
+
+        return devices;
+    }
+
+    /**
+     * Running statistics of every DUT as JSON
+     */
+    public void doStats(StaplerRequest request, StaplerResponse response)
+    throws IOException
+    {
+        List<Map<String, Object>> devices = new ArrayList<>();
+        for(DeviceView device : this.getDevices())
+        {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("deviceId", device.deviceId);
+            item.put("sampleCount", device.sampleCount);
+            item.put("lastTime", device.lastTime);
+            item.put("usages", device.usages);
+            devices.add(item);
+        }
+
+        response.setContentType("application/json;charset=UTF-8");
+        Json.mapper().writeValue(response.getOutputStream(), devices);
+    }
+
+    /**
+     * Chart of one metric of the recent samples of a DUT, a series per container
+     * <p>
+     * Parameters: 'device' and 'metric', one of cpu, ram and storage
+     */
+    public void doChart(StaplerRequest request, StaplerResponse response)
+    throws IOException
+    {
+        final LiveReport report = LiveReport.get(this.run);
+        final String deviceId = request.getParameter("device");
+        final String metric = request.getParameter("metric");
+        if(null == report || XStringUtil.isBlank(deviceId) || null == toTitle(metric))
+        {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Map<String, TimeSeries> containerSeries = new LinkedHashMap<>();
+        for(ReportModel.Sample sample : report.getRecentSamples(deviceId))
+        {
+            Second second = new Second(new Date(sample.time));
+            for(ResultRecord.Container container : sample.containers)
+            {
+                final Double value = toValue(container, metric);
+                if(null == value)
+                {
+                    continue;
+                }
+
+                final String key = SampleStore.containerKey(container.id, container.name);
+                TimeSeries series = containerSeries.get(key);
+                if(null == series)
+                {
+                    series = new TimeSeries(XStringUtil.isBlank(container.name) ? key : container.name);
+                    containerSeries.put(key, series);
+                }
+                series.addOrUpdate(second, value);
+            }
+        }
+
+        TimeSeriesCollection dataset = new TimeSeriesCollection();
+        for(TimeSeries series : containerSeries.values())
+        {
+            dataset.addSeries(series);
+        }
+
+        JFreeChart chart = OpenWRTReportPublisher.createChart(
+            ChartDownsampler.downsample(dataset, OpenWRTReportPublisher.CHART_WIDTH),
+            deviceId + " " + toTitle(metric),
+            "Time (sec.)",
+            "Usage (pct.)");
+
+        response.setContentType("image/png");
+        // every request shows the samples read by then
+        response.setHeader("Cache-Control", "no-cache");
+        try(OutputStream outputStream = response.getOutputStream())
+        {
+            ChartUtils.writeChartAsPNG(outputStream, chart, OpenWRTReportPublisher.CHART_WIDTH, OpenWRTReportPublisher.CHART_HEIGHT);
+        }
+    }
+
+    private static String toTitle(String metric)
+    {
+        if(ResourceStats.METRIC_CPU.equals(metric))
+        {
+            return "CPU Usage";
+        }
+
+        if(ResourceStats.METRIC_RAM.equals(metric))
+        {
+            return "RAM Usage";
+        }
+
+        if(ResourceStats.METRIC_STORAGE.equals(metric))
+        {
+            return "Storage Usage";
+        }
+
+        return null;
+    }
+
+    private static Double toValue(ResultRecord.Container container, String metric)
+    {
+        if(ResourceStats.METRIC_CPU.equals(metric))
+        {
+            return container.cpu;
+        }
+
+        return ResourceStats.METRIC_RAM.equals(metric) ? container.ram : container.storage;
+    }
+
+    /**
+     * One DUT on the page
+     */
+    public static final class DeviceView
+    {
+        private final String deviceId;
+        private final long sampleCount;
+        private final long lastTime;
+        private final List<ResultRecord.Usage> usages;
+
+        DeviceView(String deviceId, long sampleCount, long lastTime, List<ResultRecord.Usage> usages)
+        {
+            this.deviceId = deviceId;
+            this.sampleCount = sampleCount;
+            this.lastTime = lastTime;
+            this.usages = usages;
+        }
+
+        public String getDeviceId()
+        {
+            return this.deviceId;
+        }
+
+        public long getSampleCount()
+        {
+            return this.sampleCount;
+        }
+
+        public String getLastTime()
+        {
+            return LogParserUtil.formatTime(this.lastTime);
+        }
+
+        public List<ResultRecord.Usage> getUsages()
+        {
+            return this.usages;
+        }
+    }
+
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Factory extends TransientActionFactory<Run>
+    {
+        @Override
+        public Class<Run> type()
+        {
+            return Run.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Run target)
+        {
+            if(null == LiveReport.get(target))
+            {
+                return Collections.emptyList();
+            }
+
+            return Collections.singletonList(new OpenWRTLiveReportAction(target));
+        }
+    }
+}
@@ -13,6 +13,7 @@ import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import hudson.tasks.BuildStepDescriptor;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
@@ -26,21 +27,21 @@ import com.sercomm.demeter.microservices.client.v1.GetDevicesRequest;
 import com.sercomm.demeter.microservices.client.v1.GetDevicesResult;
 import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsRequest;
 import com.sercomm.demeter.microservices.client.v1.GetInstallableAppsResult;
-import com.sercomm.demeter.microservices.client.v1.GetInstalledAppRequest;
-import com.sercomm.demeter.microservices.client.v1.GetInstalledAppResult;
-import com.sercomm.demeter.microservices.client.v1.InstallAppRequest;
-import com.sercomm.demeter.microservices.client.v1.InstallAppResult;
 import com.sercomm.demeter.microservices.client.v1.RESTfulClient;
-import com.sercomm.demeter.microservices.client.v1.StartAppRequest;
-import com.sercomm.demeter.microservices.client.v1.StartAppResult;
-import com.sercomm.demeter.microservices.client.v1.StopAppRequest;
-import com.sercomm.demeter.microservices.client.v1.StopAppResult;
-import com.sercomm.demeter.microservices.client.v1.UninstallAppRequest;
-import com.sercomm.demeter.microservices.client.v1.UninstallAppResult;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import jenkins.tasks.SimpleBuildStep;
 
@@ -54,6 +55,20 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
     private Boolean startApp;
 
     private String loopCount;
+    private String maxConcurrency;
+    private String revalidateCount;
+
+    private String interleavedVersions;
+
+    private String saveProgressCount;
+    private Boolean resumeUnfinished;
+
+    private String soakDuration;
+    private String failureBudget;
+    private String checkpointInterval;
+
+    // seconds between two resource samples taken while looping, blank or 0 when not sampling
+    private String sampleFrequency;
 
     @DataBoundConstructor
     public OpenWRTLoopBuilder(
@@ -104,317 +119,401 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
         return loopCount;
     }
 
+    public String getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrency(String maxConcurrency)
+    {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public String getRevalidateCount()
+    {
+        return revalidateCount;
+    }
+
+    @DataBoundSetter
+    public void setRevalidateCount(String revalidateCount)
+    {
+        this.revalidateCount = revalidateCount;
+    }
+
+    public String getInterleavedVersions()
+    {
+        return interleavedVersions;
+    }
+
+    @DataBoundSetter
+    public void setInterleavedVersions(String interleavedVersions)
+    {
+        this.interleavedVersions = interleavedVersions;
+    }
+
+    public String getSaveProgressCount()
+    {
+        return saveProgressCount;
+    }
+
+    @DataBoundSetter
+    public void setSaveProgressCount(String saveProgressCount)
+    {
+        this.saveProgressCount = saveProgressCount;
+    }
+
+    public boolean getResumeUnfinished()
+    {
+        return null != resumeUnfinished && resumeUnfinished;
+    }
+
+    @DataBoundSetter
+    public void setResumeUnfinished(boolean resumeUnfinished)
+    {
+        this.resumeUnfinished = resumeUnfinished;
+    }
+
+    public String getSoakDuration()
+    {
+        return soakDuration;
+    }
+
+    @DataBoundSetter
+    public void setSoakDuration(String soakDuration)
+    {
+        this.soakDuration = soakDuration;
+    }
+
+    public String getFailureBudget()
+    {
+        return failureBudget;
+    }
+
+    @DataBoundSetter
+    public void setFailureBudget(String failureBudget)
+    {
+        this.failureBudget = failureBudget;
+    }
+
+    public String getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+    @DataBoundSetter
+    public void setCheckpointInterval(String checkpointInterval)
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public String getSampleFrequency()
+    {
+        return sampleFrequency;
+    }
+
+    @DataBoundSetter
+    public void setSampleFrequency(String sampleFrequency)
+    {
+        this.sampleFrequency = sampleFrequency;
+    }
+
     @Override
     public void perform(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener) 
     throws InterruptedException, IOException 
     {
-        final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
         final PrintStream logger = listener.getLogger();
-        
-        final int totalCount = Integer.parseInt(this.loopCount);
-        int installOKCount = 0;
-        int uninstallOKCount = 0;
-        int startOKCount = 0;
-        int stopOKCount = 0;
-        
-        logger.println(LogParserUtil.SYMBOL_LOOP_PROCEDURE_BPOS);
-        logger.printf("%s - [INFO] ====== Loop Builder ======%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-        logger.println(LogParserUtil.SYMBOL_DESCRIBE_BPOS);
-        logger.printf("%s - [INFO] App publisher: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.appPublisher);
-        logger.printf("%s - [INFO] App name: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.appName);
-        logger.printf("%s - [INFO] App version: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.appVersion);
-        logger.printf("%s - [INFO] Start app: %b%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.startApp);
-        logger.printf("%s - [INFO] Endpoint: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), endpoint);
-        logger.printf("%s - [INFO] Total loop count: %d%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), totalCount);
-        logger.println(LogParserUtil.SYMBOL_DESCRIBE_EPOS);
-        
-        logger.println(LogParserUtil.SYMBOL_DETAIL_BPOS);
-        for(int idx = 1; idx <= totalCount; idx ++)
-        {
-            try
-            {
-                logger.println();
-                logger.printf("%s - [INFO] loop #%d go%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), idx);
-                
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
-                
-                // 1. check device status and its model name
-                logger.printf("%s - [INFO] checking device status... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
-                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                        .withNodeName(this.deviceId);
-
-                GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
-                if(200 != getDeviceResult.getStatusCode())
-                {
-                    logger.printf("failed%n");
-                    throw new InterruptedException("SERVER HTTP " + getDeviceResult.getStatusCode() + ", METHOD: 'getDevice'");
-                }
 
-                if(getDeviceResult.hasError())
-                {
-                    logger.printf("failed%n");
-                    
-                    UMEiError error = getDeviceResult.getErrors().get(0);
-                    throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                }
-                
-                if(0 != getDeviceResult.getData().getState().compareTo("online"))
-                {
-                    logger.printf("failed%n");
-                    throw new InterruptedException("DEVICE IS NOT ONLINE");
-                }
-                logger.printf("ok%n");
+        LoopSession session = new LoopSession(run, logger, this);
+        session.open();
 
-                // 2. obtaining App list
-                logger.printf("%s - [INFO] obtaining App list from Demeter server... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                GetInstallableAppsRequest getInstallableAppRequest = new GetInstallableAppsRequest()
-                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                        .withModel(getDeviceResult.getData().getModel())
-                        .withFrom(0)
-                        .withSize(500);
+        final List<DeviceLoopRunner> runners = session.getRunners();
+        final SoakControl soak = session.getSoak();
 
-                GetInstallableAppsResult getInstallableAppResult = client.getInstallableApps(getInstallableAppRequest);
-                if(200 != getInstallableAppResult.getStatusCode())
+        InterruptedException aborted = null;
+        if(false == runners.isEmpty())
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(session.getMaxConcurrency(), runners.size())),
+                new LoopThreadFactory(run.getExternalizableId()));
+            try
+            {
+                List<Future<LoopCounters>> futures = new ArrayList<>();
+                for(DeviceLoopRunner runner : runners)
                 {
-                    logger.printf("failed%n");
-                    throw new InterruptedException("SERVER HTTP " + getInstallableAppResult.getStatusCode() + ", METHOD: 'getInstallableApps'");
+                    futures.add(executor.submit(runner));
                 }
 
-                if(getInstallableAppResult.hasError())
-                {
-                    logger.printf("failed%n");
+                List<LoopCounters> counters = session.getLiveCounters();
 
-                    UMEiError error = getInstallableAppResult.getErrors().get(0);
-                    throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                }                        
-                logger.printf("ok%n");
-                
-                // 2-1. checking the specific App to be available or not
-                logger.printf("%s - [INFO] checking specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                GetInstallableAppsResult.ResultData installableApp = null;
-                GetInstallableAppsResult.ResultData.Version installableVersion = null;
-                
-                for(GetInstallableAppsResult.ResultData app : getInstallableAppResult.getData())
+                for(Future<LoopCounters> future : futures)
                 {
-                    if(0 != app.getPublisher().compareTo(this.appPublisher))
+                    while(true)
                     {
-                        continue;
-                    }
-                    
-                    if(0 != app.getAppName().compareTo(this.appName))
-                    {
-                        continue;
-                    }
-                    
-                    for(GetInstallableAppsResult.ResultData.Version version : app.getVersions())
-                    {
-                        if(0 != version.getVersionName().compareTo(this.appVersion))
+                        try
+                        {
+                            if(null == soak)
+                            {
+                                future.get();
+                            }
+                            else
+                            {
+                                // wake up for the checkpoints while the DUTs are soaking
+                                future.get(soak.getCheckpointDelayMillis(), TimeUnit.MILLISECONDS);
+                            }
+                            break;
+                        }
+                        catch(TimeoutException e)
+                        {
+                            if(soak.isCheckpointDue())
+                            {
+                                soak.writeCheckpoint(logger, counters);
+                            }
+                        }
+                        catch(ExecutionException e)
                         {
-                            continue;
+                            logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getCause().getMessage());
+                            break;
                         }
-                        
-                        installableApp = app;
-                        installableVersion = version;
                     }
                 }
-                
-                if(null == installableApp || null == installableVersion)
-                {
-                    logger.printf("failed%n");
-                    
-                    throw new InterruptedException("SPECIFIC APP CANNOT BE FOUND");
-                }
-                logger.printf("ok%n");
-                
-                // 3. check if device has installed the specific App
-                logger.printf("%s - [INFO] checking device installed Apps... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                GetInstalledAppRequest getInstalledAppRequest = new GetInstalledAppRequest()
-                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                        .withNodeName(this.deviceId)
-                        .withAppId(installableApp.getAppId());
-                GetInstalledAppResult getInstalledAppResult = client.getInstalledApp(getInstalledAppRequest);
-                if(200 != getInstalledAppResult.getStatusCode())
+
+                session.endSoak();
+            }
+            catch(InterruptedException e)
+            {
+                // build was aborted, stop all DUTs but still report what has been done
+                aborted = e;
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        session.close(null != aborted);
+
+        if(null != aborted)
+        {
+            throw aborted;
+        }
+    }
+
+    /**
+     * Splits the DUT field into device IDs. Entries containing '*' or '?' are
+     * treated as patterns and expanded against the online devices.
+     */
+    static List<String> resolveDeviceIds(String endpoint, String value)
+    throws InterruptedException
+    {
+        List<String> deviceIds = new ArrayList<>();
+        List<String> onlineDeviceIds = null;
+
+        for(String token : splitDeviceIds(value))
+        {
+            if(false == isDevicePattern(token))
+            {
+                if(false == deviceIds.contains(token))
                 {
-                    logger.printf("failed%n");
-                    throw new InterruptedException("SERVER HTTP " + getInstalledAppResult.getStatusCode() + ", METHOD: 'getInstalledApp'");
+                    deviceIds.add(token);
                 }
-                logger.printf("ok%n");
-                
-                if(false == getInstalledAppResult.hasError())
-                {
-                    logger.printf("%s - [WARN] App already been installed, uninstalling it... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                    // App being installed
-                    // 3-1. uninstall the installed App
-                    UninstallAppRequest uninstallAppRequest = new UninstallAppRequest()
-                            .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                            .withNodeName(this.deviceId)
-                            .withAppId(getInstalledAppResult.getData().getAppId());
-                    
-                    UninstallAppResult uninstallAppResult = client.uninstallApp(uninstallAppRequest);
-                    if(200 != uninstallAppResult.getStatusCode())
-                    {
-                        logger.printf("failed%n");
-                        throw new InterruptedException("SERVER HTTP " + uninstallAppResult.getStatusCode() + ", METHOD: 'uninstallApp'");
-                    }
-                    
-                    if(uninstallAppResult.hasError())
-                    {
-                        logger.printf("failed%n");
+                continue;
+            }
 
-                        UMEiError error = getDeviceResult.getErrors().get(0);
-                        throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                    }
-                    logger.printf("ok%n");
-                }
-                                
-                // 4. install the specific App
-                logger.printf("%s - [INFO] installing specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                InstallAppRequest installAppRequest = new InstallAppRequest()
-                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                        .withNodeName(this.deviceId)
-                        .withRequestContents(
-                            installableApp.getAppId(), 
-                            installableVersion.getVersionId(), 
-                            UUID.randomUUID().toString());
-                
-                InstallAppResult installAppResult = client.installApp(installAppRequest);
-                if(200 != installAppResult.getStatusCode())
+            if(null == onlineDeviceIds)
+            {
+                onlineDeviceIds = getOnlineDeviceIds(endpoint);
+            }
+
+            Pattern pattern = toDevicePattern(token);
+            for(String onlineDeviceId : onlineDeviceIds)
+            {
+                if(pattern.matcher(onlineDeviceId).matches() &&
+                   false == deviceIds.contains(onlineDeviceId))
                 {
-                    logger.printf("failed%n");
-                    throw new InterruptedException("SERVER HTTP " + installAppResult.getStatusCode() + ", METHOD: 'installApp'");
+                    deviceIds.add(onlineDeviceId);
                 }
-                
-                if(installAppResult.hasError())
-                {
-                    logger.printf("failed%n");
+            }
+        }
 
-                    UMEiError error = installAppResult.getErrors().get(0);
-                    throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                }
+        return deviceIds;
+    }
 
-                installOKCount += 1;
-                logger.printf("ok%n");
-                
-                // 5. start the App if necessary
-                if(this.startApp)
-                {
-                    logger.printf("%s - [INFO] starting specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                    StartAppRequest startAppRequest = new StartAppRequest()
-                            .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                            .withNodeName(this.deviceId)
-                            .withAppId(installableApp.getAppId());
-                    
-                    StartAppResult startAppResult = client.startApp(startAppRequest);
-                    if(200 != startAppResult.getStatusCode())
-                    {
-                        logger.printf("failed%n");
-                        throw new InterruptedException("SERVER HTTP " + startAppResult.getStatusCode() + ", METHOD: 'startApp'");
-                    }
-                    
-                    if(startAppResult.hasError())
-                    {
-                        logger.printf("failed%n");
+    static List<String> splitVersions(String value)
+    {
+        List<String> tokens = new ArrayList<>();
+        if(XStringUtil.isBlank(value))
+        {
+            return tokens;
+        }
 
-                        UMEiError error = startAppResult.getErrors().get(0);
-                        throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                    }
+        // version names are case sensitive and may not contain commas
+        for(String token : value.split(","))
+        {
+            if(XStringUtil.isBlank(token))
+            {
+                continue;
+            }
 
-                    startOKCount += 1;
-                    logger.printf("ok%n");
+            tokens.add(token.trim());
+        }
 
-                    // 6. stop the App if necessary
-                    logger.printf("%s - [INFO] stoping specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                    StopAppRequest stopAppRequest = new StopAppRequest()
-                            .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                            .withNodeName(this.deviceId)
-                            .withAppId(installableApp.getAppId());
-                    
-                    StopAppResult stopAppResult = client.stopApp(stopAppRequest);
-                    if(200 != stopAppResult.getStatusCode())
-                    {
-                        logger.printf("failed%n");
+        return tokens;
+    }
 
-                        throw new InterruptedException("SERVER HTTP " + stopAppResult.getStatusCode() + ", METHOD: 'stopApp'");
-                    }
-                    
-                    if(stopAppResult.hasError())
-                    {
-                        logger.printf("failed%n");
+    static List<String> splitDeviceIds(String value)
+    {
+        List<String> tokens = new ArrayList<>();
+        if(XStringUtil.isBlank(value))
+        {
+            return tokens;
+        }
 
-                        UMEiError error = stopAppResult.getErrors().get(0);
-                        throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                    }
+        for(String token : value.split("[,\\s]+"))
+        {
+            if(XStringUtil.isBlank(token))
+            {
+                continue;
+            }
 
-                    stopOKCount += 1;
-                    logger.printf("ok%n");
-                }
-                
-                // 7. uninstall the App
-                logger.printf("%s - [INFO] uninstalling specific App... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                UninstallAppRequest uninstallAppRequest = new UninstallAppRequest()
-                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                        .withNodeName(this.deviceId)
-                        .withAppId(installableApp.getAppId());
-                
-                UninstallAppResult uninstallAppResult = client.uninstallApp(uninstallAppRequest);
-                if(200 != uninstallAppResult.getStatusCode())
-                {
-                    logger.printf("failed%n");
+            tokens.add(token.trim().toLowerCase());
+        }
 
-                    throw new InterruptedException("SERVER HTTP " + uninstallAppResult.getStatusCode() + ", METHOD: 'uninstallApp'");
-                }
-                
-                if(uninstallAppResult.hasError())
-                {
-                    logger.printf("failed%n");
+        return tokens;
+    }
 
-                    UMEiError error = uninstallAppResult.getErrors().get(0);
-                    throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
-                }
+    /**
+     * The package lists are resolved by the model of the first concrete DUT
+     */
+    static String firstDeviceId(String value)
+    {
+        for(String token : splitDeviceIds(value))
+        {
+            if(false == isDevicePattern(token))
+            {
+                return token;
+            }
+        }
 
-                uninstallOKCount += 1;
-                logger.printf("ok%n");
+        return XStringUtil.BLANK;
+    }
 
-                // complete
-                logger.printf("%s - [INFO] loop #%d completed%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), idx);
-                
-                // wait next round
-                if(totalCount > idx)
-                {
-                    logger.printf("%s - [NOTICE] waiting next loop to be started...%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
-                    Thread.sleep(3000L);
-                }
+    static boolean isDevicePattern(String token)
+    {
+        return token.indexOf('*') >= 0 || token.indexOf('?') >= 0;
+    }
+
+    private static Pattern toDevicePattern(String token)
+    {
+        StringBuilder regex = new StringBuilder();
+        for(String part : token.split("((?<=[*?])|(?=[*?]))"))
+        {
+            if(0 == part.compareTo("*"))
+            {
+                regex.append(".*");
             }
-            catch(Throwable t)
+            else if(0 == part.compareTo("?"))
             {
-                // output error message
-                logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+                regex.append(".");
+            }
+            else if(false == part.isEmpty())
+            {
+                regex.append(Pattern.quote(part));
             }
         }
 
-        logger.printf("%s - [NOTICE] all test jobs were completed%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));        
-        logger.println(LogParserUtil.SYMBOL_DETAIL_EPOS);
-        
-        logger.println(LogParserUtil.SYMBOL_SUMMARY_BPOS);
-        logger.println(LogParserUtil.SYMBOL_TOTAL_LOOP_COUNT + totalCount);
-        logger.println(LogParserUtil.SYMBOL_INSTALL_APP_OK_COUNT + installOKCount);
-        logger.println(LogParserUtil.SYMBOL_UNINSTALL_APP_OK_COUNT + uninstallOKCount);
-        logger.println(LogParserUtil.SYMBOL_START_APP_OK_COUNT + startOKCount);
-        logger.println(LogParserUtil.SYMBOL_STOP_APP_OK_COUNT + stopOKCount);
-        logger.println(LogParserUtil.SYMBOL_SUMMARY_EPOS);
-        
-        logger.println(LogParserUtil.SYMBOL_LOOP_PROCEDURE_EPOS);
+        return Pattern.compile(regex.toString());
+    }
+
+    private static List<String> getOnlineDeviceIds(String endpoint)
+    throws InterruptedException
+    {
+        RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
+
+        GetDevicesRequest getDevicesRequest = new GetDevicesRequest()
+                .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                .withFrom(0)
+                .withSize(500)
+                .withState("online");
+
+        GetDevicesResult getDevicesResult = client.getDevices(getDevicesRequest);
+        if(200 != getDevicesResult.getStatusCode())
+        {
+            throw new InterruptedException("SERVER HTTP " + getDevicesResult.getStatusCode() + ", METHOD: 'getDevices'");
+        }
+
+        if(getDevicesResult.hasError())
+        {
+            UMEiError error = getDevicesResult.getErrors().get(0);
+            throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
+        }
+
+        List<String> deviceIds = new ArrayList<>();
+        for(GetDevicesResult.ResultData row : getDevicesResult.getData())
+        {
+            deviceIds.add(NameRule.formatDeviceName(row.getSerial(), row.getMac()));
+        }
+
+        return deviceIds;
+    }
+
+    private static final class LoopThreadFactory implements ThreadFactory
+    {
+        private final String name;
+        private final AtomicInteger lastThreadId = new AtomicInteger(0);
+
+        LoopThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "OpenWRT loop " + this.name + " #" + this.lastThreadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
     
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> 
     {
         private static final String DEFAULT_LOOP_COUNT = "1";
+        static final String DEFAULT_MAX_CONCURRENCY = "8";
+        private static final String DEFAULT_SOAK_DURATION = "0";
+        static final String DEFAULT_CHECKPOINT_INTERVAL = "900";
+        static final String DEFAULT_SAVE_PROGRESS_COUNT = "10";
+        private static final String DEFAULT_SAMPLE_FREQUENCY = "0";
         private static final String PLEASE_SELECT_TEXT = "--- SELECT ---";
         
+        private static final ArrayList<ListBoxModel.Option> DEFAULT_SOAK_DURATION_OPTIONS = new ArrayList<>();
+        private static final ArrayList<ListBoxModel.Option> DEFAULT_CHECKPOINT_INTERVAL_OPTIONS = new ArrayList<>();
+        private static final ArrayList<ListBoxModel.Option> DEFAULT_SAMPLE_FREQUENCY_OPTIONS = new ArrayList<>();
+        static 
+        {
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("Off (use loop count)", "0", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("1  hour", "3600", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("4  hours", "14400", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("8  hours", "28800", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("12 hours", "43200", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("16 hours", "57600", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("24 hours", "86400", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("48 hours", "172800", false));
+            DEFAULT_SOAK_DURATION_OPTIONS.add(new ListBoxModel.Option("72 hours", "259200", false));
+
+            DEFAULT_CHECKPOINT_INTERVAL_OPTIONS.add(new ListBoxModel.Option("5  minutes", "300", false));
+            DEFAULT_CHECKPOINT_INTERVAL_OPTIONS.add(new ListBoxModel.Option("15 minutes", "900", false));
+            DEFAULT_CHECKPOINT_INTERVAL_OPTIONS.add(new ListBoxModel.Option("30 minutes", "1800", false));
+            DEFAULT_CHECKPOINT_INTERVAL_OPTIONS.add(new ListBoxModel.Option("1  hour", "3600", false));
+
+            DEFAULT_SAMPLE_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("Off", "0", false));
+            DEFAULT_SAMPLE_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("5  seconds", "5", false));
+            DEFAULT_SAMPLE_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("15 seconds", "15", false));
+            DEFAULT_SAMPLE_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("30 seconds", "30", false));
+            DEFAULT_SAMPLE_FREQUENCY_OPTIONS.add(new ListBoxModel.Option("1  minute", "60", false));
+        }
+
         private int lastEditorId = 0;
 
         @JavaScriptMethod
@@ -429,48 +528,68 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
             return DEFAULT_LOOP_COUNT;
         }
 
+        @JavaScriptMethod
+        public String defaultSaveProgressCount()
+        {
+            return DEFAULT_SAVE_PROGRESS_COUNT;
+        }
+
+        @JavaScriptMethod
+        public String defaultMaxConcurrency()
+        {
+            return DEFAULT_MAX_CONCURRENCY;
+        }
+
         public FormValidation doCheckDeviceId(
                 @QueryParameter String value)
         {
-            if(XStringUtil.isBlank(value))
+            List<String> tokens = splitDeviceIds(value);
+            if(tokens.isEmpty())
             {
                 return FormValidation.error("DEVICE ID IS BLANK");
             }
 
-            if(!NameRule.isDevice(value))
-            {
-                FormValidation.error("INVALID DEVICE ID: '" + value + "'");
-            }
-
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             if(XStringUtil.isBlank(endpoint))
             {
                 return FormValidation.error("DEMETER ENDPOINT IS NOT CONFIGURED");
             }
 
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
-            
-            GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
-                    .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
-                    .withNodeName(value);
+            RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
-            GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
-            if(200 != getDeviceResult.getStatusCode())
-            {
-                return FormValidation.error("SERVER ACK HTTP " + getDeviceResult.getStatusCode());
-            }
-            
-            if(true == getDeviceResult.hasError())
+            for(String token : tokens)
             {
-                UMEiError error = getDeviceResult.getErrors().get(0);
-                return FormValidation.error("SERVER RESPONSE HAS ERROR, CODE: " + error.getCode() + ", DETAIL: " + error.getDetail());
-            }
+                if(isDevicePattern(token))
+                {
+                    // patterns are expanded against the online devices when the build starts
+                    continue;
+                }
 
-            if(0 != getDeviceResult.getData().getState().compareTo("online"))
-            {
-                return FormValidation.error("DEVICE '" + value + "' IS NOT ONLINE");
+                if(!NameRule.isDevice(token))
+                {
+                    return FormValidation.error("INVALID DEVICE ID: '" + token + "'");
+                }
+
+                GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
+                        .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
+                        .withNodeName(token);
+
+                GetDeviceResult getDeviceResult = client.getDevice(getDeviceRequest);
+                if(200 != getDeviceResult.getStatusCode())
+                {
+                    return FormValidation.error("SERVER ACK HTTP " + getDeviceResult.getStatusCode());
+                }
+                
+                if(true == getDeviceResult.hasError())
+                {
+                    UMEiError error = getDeviceResult.getErrors().get(0);
+                    return FormValidation.error("SERVER RESPONSE HAS ERROR, CODE: " + error.getCode() + ", DETAIL: " + error.getDetail());
+                }
+
+                if(0 != getDeviceResult.getData().getState().compareTo("online"))
+                {
+                    return FormValidation.error("DEVICE '" + token + "' IS NOT ONLINE");
+                }
             }
 
             return FormValidation.ok();
@@ -489,9 +608,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
                 
                 GetDevicesRequest getDeviceRequest = new GetDevicesRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -525,6 +642,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
         {
             ListBoxModel listBoxModel = new ListBoxModel();            
 
+            deviceId = firstDeviceId(deviceId);
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             do
             {
@@ -539,9 +657,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -604,6 +720,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
         {
             ListBoxModel listBoxModel = new ListBoxModel();
 
+            deviceId = firstDeviceId(deviceId);
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             do
             {
@@ -620,9 +737,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -692,6 +807,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
         {
             ListBoxModel listBoxModel = new ListBoxModel();
 
+            deviceId = firstDeviceId(deviceId);
             final String endpoint = OpenWRTPlugin.getDemeterPluginDescriptor().getEndpoint();
             do
             {
@@ -710,9 +826,7 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -784,6 +898,140 @@ public class OpenWRTLoopBuilder extends Builder implements SimpleBuildStep
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckRevalidateCount(
+                @QueryParameter String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                if(0 > Integer.parseInt(value))
+                {
+                    return FormValidation.error("VALUE MUST NOT BE NEGATIVE.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE INTEGER.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        public ListBoxModel doFillSoakDurationItems(
+                @QueryParameter String soakDuration) 
+        {
+            return fillOptions(DEFAULT_SOAK_DURATION_OPTIONS, soakDuration, DEFAULT_SOAK_DURATION);
+        }
+
+        public ListBoxModel doFillCheckpointIntervalItems(
+                @QueryParameter String checkpointInterval) 
+        {
+            return fillOptions(DEFAULT_CHECKPOINT_INTERVAL_OPTIONS, checkpointInterval, DEFAULT_CHECKPOINT_INTERVAL);
+        }
+
+        public ListBoxModel doFillSampleFrequencyItems(
+                @QueryParameter String sampleFrequency) 
+        {
+            return fillOptions(DEFAULT_SAMPLE_FREQUENCY_OPTIONS, sampleFrequency, DEFAULT_SAMPLE_FREQUENCY);
+        }
+
+        public FormValidation doCheckSaveProgressCount(
+                @QueryParameter String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                if(0 > Integer.parseInt(value))
+                {
+                    return FormValidation.error("VALUE MUST NOT BE NEGATIVE.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE INTEGER.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckFailureBudget(
+                @QueryParameter String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                if(0 > Integer.parseInt(value))
+                {
+                    return FormValidation.error("VALUE MUST NOT BE NEGATIVE.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE INTEGER.");
+            }
+
+            return FormValidation.ok();
+        }
+
+        private static ListBoxModel fillOptions(
+                List<ListBoxModel.Option> options,
+                String value,
+                String defaultValue)
+        {
+            ListBoxModel listBoxModel = new ListBoxModel();
+
+            final String selectedValue = XStringUtil.isBlank(value) ? defaultValue : value;
+            for(ListBoxModel.Option option : options)
+            {
+                if(0 == option.value.compareTo(selectedValue))
+                {
+                    // selected
+                    listBoxModel.add(new ListBoxModel.Option(option.name, option.value, true));
+                }
+                else
+                {
+                    listBoxModel.add(option);
+                }
+            }
+
+            return listBoxModel;
+        }
+
+        public FormValidation doCheckMaxConcurrency(
+                @QueryParameter String value)
+        {
+            if(XStringUtil.isBlank(value))
+            {
+                return FormValidation.ok();
+            }
+
+            try
+            {
+                if(0 >= Integer.parseInt(value))
+                {
+                    return FormValidation.error("VALUE MUST BE GREATER THAN 0.");
+                }
+            }
+            catch(Throwable t)
+            {
+                return FormValidation.error("VALUE MUST BE INTEGER.");
+            }
+
+            return FormValidation.ok();
+        }
+
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> aClass) 
         {
@@ -0,0 +1,662 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.sercomm.commons.util.DateTime;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/**
+ * Pipeline form of {@link OpenWRTLoopBuilder}. Takes the same parameters but
+ * does not block a thread for the whole run: every loop and every readiness
+ * poll of every DUT is a short task on {@link DemeterStepScheduler}.
+ */
+public class OpenWRTLoopStep extends Step implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String deviceId;
+    private final String appPublisher;
+    private final String appName;
+    private final String appVersion;
+    private final String loopCount;
+
+    private boolean startApp = false;
+    private String maxConcurrency;
+    private String revalidateCount;
+    private String interleavedVersions;
+    private String saveProgressCount;
+    private boolean resumeUnfinished = false;
+    private String soakDuration;
+    private String failureBudget;
+    private String checkpointInterval;
+    private String sampleFrequency;
+
+    @DataBoundConstructor
+    public OpenWRTLoopStep(
+            String deviceId,
+            String appPublisher,
+            String appName,
+            String appVersion,
+            String loopCount)
+    {
+        this.deviceId = deviceId;
+        this.appPublisher = appPublisher;
+        this.appName = appName;
+        this.appVersion = appVersion;
+        this.loopCount = loopCount;
+    }
+
+    public String getDeviceId()
+    {
+        return deviceId;
+    }
+
+    public String getAppPublisher()
+    {
+        return appPublisher;
+    }
+
+    public String getAppName()
+    {
+        return appName;
+    }
+
+    public String getAppVersion()
+    {
+        return appVersion;
+    }
+
+    public String getLoopCount()
+    {
+        return loopCount;
+    }
+
+    public boolean getStartApp()
+    {
+        return startApp;
+    }
+
+    @DataBoundSetter
+    public void setStartApp(boolean startApp)
+    {
+        this.startApp = startApp;
+    }
+
+    public String getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrency(String maxConcurrency)
+    {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public String getRevalidateCount()
+    {
+        return revalidateCount;
+    }
+
+    @DataBoundSetter
+    public void setRevalidateCount(String revalidateCount)
+    {
+        this.revalidateCount = revalidateCount;
+    }
+
+    public String getInterleavedVersions()
+    {
+        return interleavedVersions;
+    }
+
+    @DataBoundSetter
+    public void setInterleavedVersions(String interleavedVersions)
+    {
+        this.interleavedVersions = interleavedVersions;
+    }
+
+    public String getSaveProgressCount()
+    {
+        return saveProgressCount;
+    }
+
+    @DataBoundSetter
+    public void setSaveProgressCount(String saveProgressCount)
+    {
+        this.saveProgressCount = saveProgressCount;
+    }
+
+    public boolean getResumeUnfinished()
+    {
+        return resumeUnfinished;
+    }
+
+    @DataBoundSetter
+    public void setResumeUnfinished(boolean resumeUnfinished)
+    {
+        this.resumeUnfinished = resumeUnfinished;
+    }
+
+    public String getSoakDuration()
+    {
+        return soakDuration;
+    }
+
+    @DataBoundSetter
+    public void setSoakDuration(String soakDuration)
+    {
+        this.soakDuration = soakDuration;
+    }
+
+    public String getFailureBudget()
+    {
+        return failureBudget;
+    }
+
+    @DataBoundSetter
+    public void setFailureBudget(String failureBudget)
+    {
+        this.failureBudget = failureBudget;
+    }
+
+    public String getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+    @DataBoundSetter
+    public void setCheckpointInterval(String checkpointInterval)
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public String getSampleFrequency()
+    {
+        return sampleFrequency;
+    }
+
+    @DataBoundSetter
+    public void setSampleFrequency(String sampleFrequency)
+    {
+        this.sampleFrequency = sampleFrequency;
+    }
+
+    OpenWRTLoopBuilder toBuilder()
+    {
+        OpenWRTLoopBuilder builder = new OpenWRTLoopBuilder(
+            this.deviceId,
+            this.appPublisher,
+            this.appName,
+            this.appVersion,
+            this.startApp,
+            this.loopCount);
+        builder.setMaxConcurrency(this.maxConcurrency);
+        builder.setRevalidateCount(this.revalidateCount);
+        builder.setInterleavedVersions(this.interleavedVersions);
+        builder.setSaveProgressCount(this.saveProgressCount);
+        builder.setResumeUnfinished(this.resumeUnfinished);
+        builder.setSoakDuration(this.soakDuration);
+        builder.setFailureBudget(this.failureBudget);
+        builder.setCheckpointInterval(this.checkpointInterval);
+        builder.setSampleFrequency(this.sampleFrequency);
+
+        return builder;
+    }
+
+    @Override
+    public StepExecution start(StepContext context)
+    throws Exception
+    {
+        return new Execution(context, this);
+    }
+
+    /**
+     * Only the step itself is persisted. After a controller restart the
+     * execution opens a new session, which continues from the progress the
+     * runners saved to the build directory.
+     * <p>
+     * Once the step is completed no task starts any more and the tasks not
+     * started yet are cancelled. The session is closed by whichever comes
+     * last, the completion or the end of the tasks still running, so no DUT
+     * is operated and no counter changes after the summary is written. The
+     * step reports its result once, right after that; a task failing after
+     * the completion only adds its cause.
+     */
+    private static final class Execution extends StepExecution
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final OpenWRTLoopStep step;
+        // the session has written its opening marker, a resumed execution does not write another one
+        private volatile boolean opened = false;
+
+        private transient volatile LoopSession session;
+        private transient volatile PrintStream logger;
+        private transient Deque<DeviceLoopRunner> pendingRunners;
+        private transient AtomicInteger activeRunners;
+        // created before any task is, guarded by this
+        private transient AtomicBoolean completed;
+        private transient AtomicInteger runningTasks;
+        private transient AtomicBoolean finished;
+        private transient AtomicBoolean reported;
+        private transient Set<Future<?>> futures;
+        private transient volatile Throwable cause;
+
+        Execution(StepContext context, OpenWRTLoopStep step)
+        {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start()
+        throws Exception
+        {
+            this.initTasks();
+            // resolving the DUTs already calls Demeter, keep it off the Pipeline thread
+            DemeterStepScheduler.get().execute(() -> this.run(() -> this.begin(false)));
+            return false;
+        }
+
+        @Override
+        public void onResume()
+        {
+            this.initTasks();
+            DemeterStepScheduler.get().execute(() -> this.run(() -> this.begin(this.opened)));
+        }
+
+        @Override
+        public void stop(Throwable cause)
+        throws Exception
+        {
+            this.initTasks();
+
+            final boolean forced;
+            synchronized(this)
+            {
+                forced = this.completed.get();
+            }
+
+            if(forced && false == this.finished.get())
+            {
+                // stopped again while tasks still hang in calls to Demeter: the build is released now,
+                // the session is still closed once those tasks return
+                this.report(cause);
+                return;
+            }
+
+            this.complete(cause);
+        }
+
+        @Override
+        public String getStatus()
+        {
+            LoopSession current = this.session;
+            if(null == current)
+            {
+                return "starting";
+            }
+
+            return String.format("%d DUT(s) looping, %d waiting",
+                this.activeRunners.get(),
+                this.pendingRunners.size());
+        }
+
+        /**
+         * Creates what the tasks share, the transient fields are gone after a restart
+         */
+        private synchronized void initTasks()
+        {
+            if(null == this.completed)
+            {
+                this.completed = new AtomicBoolean(false);
+                this.runningTasks = new AtomicInteger(0);
+                this.finished = new AtomicBoolean(false);
+                this.reported = new AtomicBoolean(false);
+                this.futures = new HashSet<>();
+            }
+        }
+
+        private void begin(boolean resumed)
+        {
+            final Run<?, ?> run;
+            try
+            {
+                run = this.getContext().get(Run.class);
+                this.logger = this.getContext().get(TaskListener.class).getLogger();
+            }
+            catch(Exception e)
+            {
+                this.complete(e);
+                return;
+            }
+
+            this.pendingRunners = new ArrayDeque<>();
+            this.activeRunners = new AtomicInteger(0);
+
+            LoopSession current = new LoopSession(run, this.logger, this.step.toBuilder());
+            if(resumed)
+            {
+                current.resume();
+            }
+            else
+            {
+                current.open();
+                this.opened = true;
+            }
+
+            List<DeviceLoopRunner> runners = current.getRunners();
+            synchronized(this)
+            {
+                this.pendingRunners.addAll(runners);
+                this.activeRunners.set(Math.max(1, Math.min(current.getMaxConcurrency(), runners.size())));
+            }
+            this.session = current;
+
+            if(runners.isEmpty())
+            {
+                this.complete(null);
+                return;
+            }
+
+            final SoakControl soak = current.getSoak();
+            if(null != soak)
+            {
+                this.scheduleCheckpoint(soak);
+            }
+
+            for(int idx = 0; idx < this.activeRunners.get(); idx ++)
+            {
+                this.startNextRunner();
+            }
+        }
+
+        private void startNextRunner()
+        {
+            final DeviceLoopRunner runner;
+            synchronized(this)
+            {
+                runner = this.pendingRunners.pollFirst();
+            }
+
+            if(null == runner)
+            {
+                return;
+            }
+
+            this.submitLoop(() -> this.runLoop(runner, runner.getFirstLoop()));
+        }
+
+        private void runLoop(DeviceLoopRunner runner, int idx)
+        {
+            if(false == runner.hasLoop(idx))
+            {
+                this.finishRunner(runner);
+                return;
+            }
+
+            runner.runLoop(idx);
+
+            if(false == runner.hasLoop(idx + 1))
+            {
+                this.finishRunner(runner);
+                return;
+            }
+
+            final DeviceLoopRunner.ReadyWait wait = runner.beginWait(idx);
+            this.schedule(() -> this.poll(runner, wait, idx + 1), 0L);
+        }
+
+        private void poll(DeviceLoopRunner runner, DeviceLoopRunner.ReadyWait wait, int nextIdx)
+        {
+            final long delay = wait.poll();
+            if(0L <= delay)
+            {
+                this.schedule(() -> this.poll(runner, wait, nextIdx), delay);
+            }
+            else
+            {
+                this.submitLoop(() -> this.runLoop(runner, nextIdx));
+            }
+        }
+
+        private void finishRunner(DeviceLoopRunner runner)
+        {
+            runner.finish();
+
+            boolean hasPending;
+            synchronized(this)
+            {
+                hasPending = false == this.pendingRunners.isEmpty();
+            }
+
+            if(hasPending)
+            {
+                this.startNextRunner();
+            }
+            else if(0 == this.activeRunners.decrementAndGet())
+            {
+                this.complete(null);
+            }
+        }
+
+        private void scheduleCheckpoint(SoakControl soak)
+        {
+            this.schedule(() -> {
+                if(soak.isCheckpointDue())
+                {
+                    soak.writeCheckpoint(this.logger, this.session.getLiveCounters());
+                }
+                this.scheduleCheckpoint(soak);
+            }, soak.getCheckpointDelayMillis());
+        }
+
+        /**
+         * Runs a short task of a DUT later on the scheduler
+         */
+        private void schedule(Runnable task, long delayMillis)
+        {
+            this.keep(DemeterStepScheduler.get().schedule(() -> this.run(task), delayMillis, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * Runs a loop cycle of a DUT on the loop executor, it blocks for the whole cycle
+         */
+        private void submitLoop(Runnable task)
+        {
+            this.keep(DemeterStepScheduler.getLoopExecutor().submit(() -> this.run(task)));
+        }
+
+        /**
+         * Keeps the future to cancel it on completion, a task submitted after that is cancelled right away
+         */
+        private void keep(Future<?> future)
+        {
+            synchronized(this)
+            {
+                if(false == this.completed.get())
+                {
+                    this.futures.removeIf(Future::isDone);
+                    this.futures.add(future);
+                    return;
+                }
+            }
+
+            future.cancel(false);
+        }
+
+        /**
+         * Runs a task unless the step is completed, a task failing unexpectedly fails the step.
+         * The last task to end after the completion finishes the step.
+         */
+        private void run(Runnable task)
+        {
+            this.runningTasks.incrementAndGet();
+            try
+            {
+                if(false == this.completed.get())
+                {
+                    task.run();
+                }
+            }
+            catch(Throwable t)
+            {
+                this.complete(t);
+            }
+            finally
+            {
+                if(0 == this.runningTasks.decrementAndGet() && this.completed.get())
+                {
+                    this.finish();
+                }
+            }
+        }
+
+        /**
+         * @param cause null when every DUT is done, otherwise why the step stops early
+         */
+        private void complete(Throwable cause)
+        {
+            synchronized(this)
+            {
+                if(this.completed.get())
+                {
+                    // reported with the cause of the completion once the tasks are done
+                    this.addCause(cause);
+                    return;
+                }
+
+                this.cause = cause;
+                this.completed.set(true);
+                for(Future<?> future : this.futures)
+                {
+                    future.cancel(false);
+                }
+                this.futures.clear();
+            }
+
+            // otherwise the last task still running finishes the step when it ends
+            if(0 == this.runningTasks.get())
+            {
+                this.finish();
+            }
+        }
+
+        /**
+         * Closes the session once no task is running any more
+         */
+        private void finish()
+        {
+            if(false == this.finished.compareAndSet(false, true))
+            {
+                return;
+            }
+
+            final Throwable cause = this.cause;
+            final LoopSession current = this.session;
+            if(null != current)
+            {
+                if(null == cause)
+                {
+                    current.endSoak();
+                }
+                else
+                {
+                    this.logger.printf("%s - [NOTICE] loop stopped: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), cause.getMessage());
+                    for(DeviceLoopRunner runner : current.getRunners())
+                    {
+                        runner.finish();
+                    }
+                }
+
+                // a stopped run keeps its progress, so that it can be resumed
+                current.close(null != cause);
+            }
+
+            this.report(this.cause);
+        }
+
+        /**
+         * Keeps the cause of a failure after the completion, guarded by this
+         */
+        private void addCause(Throwable cause)
+        {
+            if(null == cause || cause == this.cause)
+            {
+                return;
+            }
+
+            if(null == this.cause)
+            {
+                this.cause = cause;
+            }
+            else
+            {
+                this.cause.addSuppressed(cause);
+            }
+        }
+
+        /**
+         * Completes the context of the step, only the first call does
+         */
+        private void report(Throwable cause)
+        {
+            if(false == this.reported.compareAndSet(false, true))
+            {
+                return;
+            }
+
+            if(null == cause)
+            {
+                this.getContext().onSuccess(null);
+            }
+            else
+            {
+                this.getContext().onFailure(cause);
+            }
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor
+    {
+        @Override
+        public Set<? extends Class<?>> getRequiredContext()
+        {
+            return new HashSet<>(Arrays.asList(Run.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName()
+        {
+            return "openwrtLoop";
+        }
+
+        @Override
+        public String getDisplayName()
+        {
+            return Messages.DemeterLoopStep_DescriptorImpl_DisplayName();
+        }
+    }
+}
@@ -50,12 +50,18 @@ public class OpenWRTPlugin extends JobProperty<Job<?, ?>>
         return null;
     }
 
+    public static RESTfulClient acquireClient(String endpoint)
+    {
+        return getDemeterPluginDescriptor().getClientRegistry().acquire(endpoint);
+    }
+
     @Extension
     public static final class DescriptorImpl extends JobPropertyDescriptor 
     {
         private static final String DEFAULT_ENDPOINT = "backend.demeter.smartgaiacloud.com";
         private static final String HELLO_MESSAGE = "Hello Demeter";
         private String endpoint = XStringUtil.BLANK;
+        private final transient DemeterClientRegistry clientRegistry = new DemeterClientRegistry();
 
         public DescriptorImpl()
         {
@@ -75,7 +81,14 @@ public class OpenWRTPlugin extends JobProperty<Job<?, ?>>
         {
             req.bindParameters(this);
 
-            this.endpoint = formData.getString("endpoint");
+            final String value = formData.getString("endpoint");
+            if(null == this.endpoint || 0 != this.endpoint.compareTo(value))
+            {
+                // clients of the previous endpoint are no longer needed
+                this.clientRegistry.invalidate();
+            }
+
+            this.endpoint = value;
             save();
 
             return super.configure(req, formData);
@@ -91,6 +104,11 @@ public class OpenWRTPlugin extends JobProperty<Job<?, ?>>
         {
             return this.endpoint;
         }
+
+        public DemeterClientRegistry getClientRegistry()
+        {
+            return this.clientRegistry;
+        }
         
         @Override
         public String getDisplayName() 
@@ -102,15 +120,15 @@ public class OpenWRTPlugin extends JobProperty<Job<?, ?>>
                 @QueryParameter("endpoint") String value)
         throws IOException, ServletException
         {
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(value).build();
+            // whatever is typed into the form is not kept, only the configured endpoint is in the registry
+            RESTfulClient client = DemeterClientRegistry.newClient(value);
             
             PostEchoRequest request = new PostEchoRequest()
                     .withOriginatorId(ORIGINATOR_ID)
                     .withMessage(HELLO_MESSAGE);
             
             PostEchoResult result = client.postEcho(request);
+
             if(200 != result.getStatusCode())
             {
                 return FormValidation.error("SERVER ACK HTTP " + result.getStatusCode());
@@ -0,0 +1,134 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.sercomm.commons.util.Json;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * Report of a build on its page, backed by the {@link ReportModelFile} the
+ * publisher left in the build directory. Only the action itself is kept in
+ * build.xml, the model is loaded when a page or an API client first asks for
+ * it and is kept softly, so builds nobody looks at cost no memory.
+ */
+public class OpenWRTReportAction implements RunAction2
+{
+    public static final String URL_NAME = "openwrt-report";
+
+    private transient Run<?, ?> run;
+    private transient SoftReference<ReportModel> model = null;
+
+    @Override
+    public void onAttached(Run<?, ?> run)
+    {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run)
+    {
+        this.run = run;
+    }
+
+    public Run<?, ?> getRun()
+    {
+        return this.run;
+    }
+
+    @Override
+    public String getIconFileName()
+    {
+        return "graph.png";
+    }
+
+    @Override
+    public String getDisplayName()
+    {
+        return Messages.OpenWRTReportAction_DisplayName();
+    }
+
+    @Override
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+
+    /**
+     * @return the model without the quoted console log, null when the build has none or it cannot be read
+     */
+    public synchronized ReportModel getModel()
+    {
+        ReportModel result = null == this.model ? null : this.model.get();
+        if(null != result || null == this.run)
+        {
+            return result;
+        }
+
+        File file = ReportModelFile.getFile(this.run);
+        if(false == file.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            result = ReportModelFile.read(file, false);
+        }
+        catch(IOException e)
+        {
+            return null;
+        }
+
+        this.model = new SoftReference<>(result);
+        return result;
+    }
+
+    /**
+     * Summary of the report as JSON, the samples are left out
+     */
+    public void doModel(StaplerRequest request, StaplerResponse response)
+    throws IOException
+    {
+        final ReportModel result = this.getModel();
+        if(null == result)
+        {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("beginTime", result.getBeginTime());
+        summary.put("endTime", result.getEndTime());
+        summary.put("loops", result.getLoops());
+        summary.put("steps", result.getSteps());
+
+        List<Map<String, Object>> collects = new ArrayList<>();
+        for(ReportModel.CollectResult collect : result.getCollects())
+        {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("deviceId", collect.deviceId);
+            item.put("sampleCount", collect.samples.size());
+            item.put("schedule", collect.schedule);
+            item.put("usages", collect.usages);
+            item.put("breach", collect.breach);
+            collects.add(item);
+        }
+        summary.put("collects", collects);
+
+        response.setContentType("application/json;charset=UTF-8");
+        Json.mapper().writeValue(response.getOutputStream(), summary);
+    }
+}
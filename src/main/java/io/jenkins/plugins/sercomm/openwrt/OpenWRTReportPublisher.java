@@ -3,11 +3,18 @@ package io.jenkins.plugins.sercomm.openwrt;
 import java.awt.Color;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.commonmark.ext.gfm.tables.TablesExtension;
 import org.commonmark.node.Node;
@@ -16,6 +23,7 @@ import org.commonmark.renderer.html.HtmlRenderer;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.time.Second;
 import org.jfree.data.time.TimeSeries;
@@ -23,11 +31,8 @@ import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.xy.XYDataset;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import com.sercomm.commons.util.DateTime;
-import com.sercomm.commons.util.Json;
 import com.sercomm.commons.util.XStringUtil;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -42,9 +47,15 @@ import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
 
-@SuppressFBWarnings(value = {"ICAST_IDIV_CAST_TO_DOUBLE","NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE"})
+@SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
 public class OpenWRTReportPublisher extends Recorder
 {
+    // more boundaries than this would hide the series, only loop boundaries are marked then
+    private static final int MAX_PHASE_MARKERS = 40;
+    // pixels, series are thinned out to a point per column
+    static final int CHART_WIDTH = 600;
+    static final int CHART_HEIGHT = 200;
+
     private String filePrefix;
     
     @DataBoundConstructor
@@ -71,386 +82,631 @@ public class OpenWRTReportPublisher extends Recorder
     {
         final PrintStream logger = listener.getLogger();
         
-        FilePath cpuChartFile = null;
-        FilePath ramChartFile = null;
-        FilePath storageChartFile = null;
-        FilePath htmlFile = null;
-        
         logger.println();
         logger.printf("%s - [INFO] ====== Generating Report ======%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
         try
         {
-            boolean isLoopProcSection = false;
-            boolean isLoopProcSummarySection = false;
-            
-            boolean isCollectProcSection = false;
-            boolean isCollectProcDetailSection = false;
-            
-            StringBuilder markdownText = new StringBuilder();
-            StringBuilder rawText = new StringBuilder();
-            TimeSeries cpuTimeSeries = new TimeSeries("CPU Usage");
-            TimeSeries ramTimeSeries = new TimeSeries("RAM Usage");
-            TimeSeries storageTimeSeries = new TimeSeries("Storage Usage");
-            
-            DateTime beginTime = null;
-            DateTime endTime = null;
-            
-            try(BufferedReader reader = new BufferedReader(build.getLogReader()))
-            {
-                String line = null;
-                int totalLoopCount = 0;
-                
-                while((line = reader.readLine()) != null)
+            final long beginNanos = System.nanoTime();
+            ReportModel model;
+
+            File resultsFile = ResultsFile.getFile(build);
+            File samplesFile = SampleStore.getFile(build);
+            File modelFile = ReportModelFile.getFile(build);
+            // published before and nothing was recorded since, the stamps are taken before the files are read
+            final long[] sources = ReportModelFile.stamp(resultsFile, samplesFile);
+            final boolean modelSaved = ReportModelFile.isCurrent(modelFile, sources);
+            if(modelSaved)
+            {
+                logger.printf("%s - [INFO] reading report model file... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+                model = ReportModelFile.read(modelFile, true);
+            }
+            else if(resultsFile.exists())
+            {
+                logger.printf("%s - [INFO] reading results file... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+                model = ReportModel.from(ResultsFile.read(resultsFile));
+
+                if(samplesFile.exists())
                 {
-                    if(XStringUtil.isBlank(line) ||
-                       line.contains("Started by user"))
-                    {
-                        continue;
-                    }
-                    
-                    if(false == line.startsWith("@"))
-                    {
-                        rawText.append(line).append("\n");
-                    }
+                    model.addSamples(SampleStore.read(samplesFile));
+                }
+            }
+            else
+            {
+                // builds made by older plugin versions only have the console log
+                logger.printf("%s - [INFO] no results file, parsing console log... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+                model = parseLog(build, logger);
+            }
 
-                    DateTime dateTime = LogParserUtil.parseDateTime(line);
-                    if(null == beginTime && null != dateTime)
-                    {
-                        beginTime = dateTime;
-                    }
-                    
-                    if(null != dateTime)
-                    {
-                        endTime = dateTime;
-                    }
-                    
-                    if(line.contains(LogParserUtil.SYMBOL_LOOP_PROCEDURE_BPOS))
-                    {
-                        isLoopProcSection = true;
-                        logger.printf("%s - [INFO] parsing loop installation results... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+            if(false == modelSaved)
+            {
+                saveModel(build, model, sources, logger);
+            }
 
-                        markdownText.append("# Loop Installation Test Result").append("\n");
-                        markdownText.append("---").append("\n");
+            logger.printf("%s - [INFO] results loaded in %d ms%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beginNanos));
 
-                        markdownText.append("| Step Name | Total Loop   | Done     | Successful Rate |").append("\n");
-                        markdownText.append("| --------  | --------     | -------- | --------        |").append("\n");
-                        continue;
-                    }
-                    
-                    if(line.contains(LogParserUtil.SYMBOL_LOOP_PROCEDURE_EPOS))
-                    {
-                        isLoopProcSection = false;
-                        continue;
-                    }
-                    
-                    if(line.contains(LogParserUtil.SYMBOL_COLLECT_PROCEDURE_BPOS))
-                    {
-                        isCollectProcSection = true;
-                        logger.printf("%s - [INFO] parsing resource consumption results... %n", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
+            this.render(build, model, logger);
+        }
+        catch(Throwable t)
+        {
+            logger.println();
+            logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+        }
 
-                        markdownText.append("# Resource Consumption Test Result").append("\n");
-                        continue;
-                    }
-                    
-                    if(line.contains(LogParserUtil.SYMBOL_COLLECT_PROCEDURE_EPOS))
-                    {
-                        isCollectProcSection = false;
-                        continue;
-                    }
-                    
-                    if(isLoopProcSection && line.contains(LogParserUtil.SYMBOL_SUMMARY_BPOS))
-                    {
-                        isLoopProcSummarySection = true;
-                        continue;
-                    }
-                    
-                    if(isLoopProcSummarySection && line.contains(LogParserUtil.SYMBOL_SUMMARY_EPOS))
-                    {
-                        isLoopProcSummarySection = false;
-                        continue;
-                    }
-                    
-                    if(isCollectProcSection && line.contains(LogParserUtil.SYMBOL_DETAIL_BPOS))
-                    {
-                        isCollectProcDetailSection = true;
-                        continue;
-                    }
+        return true;
+    }
 
-                    if(isCollectProcSection && line.contains(LogParserUtil.SYMBOL_DETAIL_EPOS))
-                    {
-                        isCollectProcDetailSection = false;
-                        continue;
-                    }
-                    
-                    // parse loop installation summary
-                    if(isLoopProcSummarySection)
-                    {
-                        if(line.contains(LogParserUtil.SYMBOL_TOTAL_LOOP_COUNT))
-                        {
-                            String[] tokens = line.split("==>");
-                            totalLoopCount = Integer.parseInt(tokens[1]);
-                        }
+    private void render(AbstractBuild<?, ?> build, ReportModel model, PrintStream logger)
+    throws Exception
+    {
+        // charts are rendered in the background while the document is built, each task tells how long it took
+        List<Future<Long>> charts = new ArrayList<>();
+        try
+        {
+            this.render(build, model, logger, charts);
+        }
+        finally
+        {
+            for(Future<Long> chart : charts)
+            {
+                chart.cancel(true);
+            }
+        }
+    }
 
-                        if(line.contains(LogParserUtil.SYMBOL_INSTALL_APP_OK_COUNT))
-                        {
-                            String[] tokens = line.split("==>");
-                            int value = Integer.parseInt(tokens[1]);
-                            markdownText.append("|")
-                                        .append("Installation")
-                                        .append("|")
-                                        .append(totalLoopCount)
-                                        .append("|")
-                                        .append(value)
-                                        .append("|")
-                                        .append(String.format("%.2f%%", (value / totalLoopCount) * 100.))
-                                        .append("|")
-                                        .append("\n");
-                        }
-                        
-                        if(line.contains(LogParserUtil.SYMBOL_UNINSTALL_APP_OK_COUNT))
-                        {
-                            String[] tokens = line.split("==>");
-                            int value = Integer.parseInt(tokens[1]);
-                            markdownText.append("|")
-                                .append("Uninstallation")
-                                .append("|")
-                                .append(totalLoopCount)
+    private void render(AbstractBuild<?, ?> build, ReportModel model, PrintStream logger, List<Future<Long>> charts)
+    throws Exception
+    {
+        final long beginNanos = System.nanoTime();
+        StringBuilder markdownText = new StringBuilder();
+
+        for(ReportModel.LoopResult loop : model.getLoops())
+        {
+            markdownText.append("# Loop Installation Test Result").append("\n");
+            markdownText.append("---").append("\n");
+
+            markdownText.append("| Step Name | Total Loop   | Done     | Successful Rate |").append("\n");
+            markdownText.append("| --------  | --------     | -------- | --------        |").append("\n");
+            appendStepRow(markdownText, "Installation", loop.totalCount, loop.installOKCount, false);
+            appendStepRow(markdownText, "Uninstallation", loop.totalCount, loop.uninstallOKCount, false);
+            appendStepRow(markdownText, "Start App", loop.totalCount, loop.startOKCount, true);
+            appendStepRow(markdownText, "Stop App", loop.totalCount, loop.stopOKCount, true);
+
+            if(false == loop.devices.isEmpty())
+            {
+                markdownText.append("\n### Per-DUT Breakdown").append("\n");
+                markdownText.append("| DUT | Total Loop | Installation | Uninstallation | Start App | Stop App | Completed Rate |").append("\n");
+                markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                for(ResultRecord.DeviceLoop device : loop.devices)
+                {
+                    markdownText.append("|")
+                                .append(device.deviceId)
                                 .append("|")
-                                .append(value)
+                                .append(device.totalCount)
                                 .append("|")
-                                .append(String.format("%.2f%%", (value / totalLoopCount) * 100.))
+                                .append(device.installOKCount)
                                 .append("|")
-                                .append("\n");
-                        }
-
-                        if(line.contains(LogParserUtil.SYMBOL_START_APP_OK_COUNT))
-                        {
-                            String[] tokens = line.split("==>");
-                            int value = Integer.parseInt(tokens[1]);
-                            markdownText.append("|")
-                                .append("Start App")
+                                .append(device.uninstallOKCount)
                                 .append("|")
-                                .append(totalLoopCount)
+                                .append(device.startOKCount)
                                 .append("|")
-                                .append(value != 0 ? value : "N/A")
+                                .append(device.stopOKCount)
                                 .append("|")
-                                .append(value != 0 ? String.format("%.2f%%", (value / totalLoopCount) * 100.) : "N/A")
+                                .append(formatRate(device.uninstallOKCount, device.totalCount))
                                 .append("|")
                                 .append("\n");
-                        }
+                }
+            }
 
-                        if(line.contains(LogParserUtil.SYMBOL_STOP_APP_OK_COUNT))
-                        {
-                            String[] tokens = line.split("==>");
-                            int value = Integer.parseInt(tokens[1]);
-                            markdownText.append("|")
-                                .append("Stop App")
+            if(false == loop.versions.isEmpty())
+            {
+                markdownText.append("\n### Per-Version Breakdown").append("\n");
+                markdownText.append("| Version | Total Loop | Installation Rate | Uninstallation Rate | Start App Rate | Stop App Rate |").append("\n");
+                markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                for(ResultRecord.VersionLoop version : loop.versions)
+                {
+                    markdownText.append("|")
+                                .append(version.appVersion)
+                                .append("|")
+                                .append(version.totalCount)
+                                .append("|")
+                                .append(formatRate(version.installOKCount, version.totalCount))
                                 .append("|")
-                                .append(totalLoopCount)
+                                .append(formatRate(version.uninstallOKCount, version.totalCount))
                                 .append("|")
-                                .append(value != 0 ? value : "N/A")
+                                .append(0 == version.startOKCount ? "N/A" : formatRate(version.startOKCount, version.totalCount))
                                 .append("|")
-                                .append(value != 0 ? String.format("%.2f%%", (value / totalLoopCount) * 100.) : "N/A")
+                                .append(0 == version.stopOKCount ? "N/A" : formatRate(version.stopOKCount, version.totalCount))
                                 .append("|")
                                 .append("\n");
-                        }
-                    }
-                    
-                    // parse collected resource consumption logs
-                    if(isCollectProcDetailSection)
-                    {                        
-                        String[] tokens = line.split("==>");
-                        if(2 != tokens.length)
-                        {
-                            continue;
-                        }
+                }
 
-                        try
+                markdownText.append("\n### Operation Latency by Version (ms)").append("\n");
+                markdownText.append("| Operation | Version | Calls | Min | Mean | P50 | P90 | P99 | Max |").append("\n");
+                markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                for(DemeterOperation operation : DemeterOperation.values())
+                {
+                    // versions side by side for each operation
+                    for(ResultRecord.VersionLoop version : loop.versions)
+                    {
+                        for(ResultRecord.Latency latency : version.latencies)
                         {
-                            JsonNode rootNode = Json.parse(tokens[1]);                        
-                            ArrayList<ContainerInfo> containers = Json.mapper().readValue(
-                                Json.mapper().treeAsTokens(rootNode.findPath("List")), 
-                                Json.JavaTypeUtil.collectionType(
-                                    ArrayList.class, 
-                                    ContainerInfo.class));
-                            
-                            if(0 == containers.size())
+                            if(0 != operation.getMethodName().compareTo(latency.operation))
                             {
                                 continue;
                             }
-                            
-                            ContainerInfo container = containers.get(0);
-                            
-                            double value = 0.;
-                            if(null != container.resources.cpu)
-                            {
-                                value = Double.parseDouble(container.resources.cpu.usage.replaceAll("%", XStringUtil.BLANK));
-                                cpuTimeSeries.add(
-                                    new Second(
-                                        dateTime.getSecond(),
-                                        dateTime.getMinute(),
-                                        dateTime.getHour(),
-                                        dateTime.getDay(),
-                                        dateTime.getMonth(),
-                                        dateTime.getYear()), 
-                                    value);
-                            }
-                            
-                            if(null != container.resources.memory)
-                            {
-                                value = container.resources.memory.usage * 100.;
-                                value = Double.parseDouble(String.format("%.2f", value));
-                                ramTimeSeries.add(
-                                    new Second(
-                                        dateTime.getSecond(),
-                                        dateTime.getMinute(),
-                                        dateTime.getHour(),
-                                        dateTime.getDay(),
-                                        dateTime.getMonth(),
-                                        dateTime.getYear()), 
-                                    value);
-                            }
 
-                            if(null != container.resources.storage)
-                            {
-                                value = container.resources.storage.usage * 100.;
-                                value = Double.parseDouble(String.format("%.2f", value));
-                                storageTimeSeries.add(
-                                    new Second(
-                                        dateTime.getSecond(),
-                                        dateTime.getMinute(),
-                                        dateTime.getHour(),
-                                        dateTime.getDay(),
-                                        dateTime.getMonth(),
-                                        dateTime.getYear()), 
-                                    value);                        
-                            }
-                        }
-                        catch(Throwable t)
-                        {
-                            logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
-                            continue;
+                            markdownText.append(String.format("|%s|%s|%d|%.1f|%.1f|%.1f|%.1f|%.1f|%.1f|%n",
+                                latency.operation,
+                                version.appVersion,
+                                latency.count,
+                                latency.min,
+                                latency.mean,
+                                latency.p50,
+                                latency.p90,
+                                latency.p99,
+                                latency.max));
                         }
                     }
-                };
+                }
+            }
 
-                markdownText.append("### System Wide Charts").append("\n");
-                markdownText.append("---").append("\n");
+            if(false == loop.latencies.isEmpty())
+            {
+                markdownText.append("\n### Demeter Operation Latency (ms)").append("\n");
+                markdownText.append("| Operation | Calls | Min | Mean | P50 | P90 | P99 | Max |").append("\n");
+                markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                for(ResultRecord.Latency latency : loop.latencies)
+                {
+                    markdownText.append(String.format("|%s|%d|%.1f|%.1f|%.1f|%.1f|%.1f|%.1f|%n",
+                        latency.operation,
+                        latency.count,
+                        latency.min,
+                        latency.mean,
+                        latency.p50,
+                        latency.p90,
+                        latency.p99,
+                        latency.max));
+                }
+            }
+        }
 
-                JFreeChart chart;
-                chart = createChart(
-                    new TimeSeriesCollection(cpuTimeSeries),
-                    "CPU Consumption",
-                    "Time (sec.)",
-                    "Usage (pct.)");
-                
-                cpuChartFile = build.getWorkspace().createTempFile(
-                    XStringUtil.isBlank(this.filePrefix) ? 
-                            String.format("%s-cpu-", build.getId()) :
-                            String.format("%s-%s-cpu-", this.filePrefix, build.getId()),
-                    ".jpg");
-                ChartUtils.writeChartAsJPEG(cpuChartFile.write(), chart, 600, 200);
-                markdownText.append("![](").append(cpuChartFile.getName()).append(")\n");
-                markdownText.append("---").append("\n");
-                
-                chart = createChart(
-                    new TimeSeriesCollection(ramTimeSeries),
-                    "RAM Consumption",
-                    "Time (sec.)",
-                    "Usage (pct.)");
-
-                ramChartFile = build.getWorkspace().createTempFile(
-                    XStringUtil.isBlank(this.filePrefix) ? 
-                            String.format("%s-ram-", build.getId()) :
-                            String.format("%s-%s-ram-", this.filePrefix, build.getId()),
-                    ".jpg");
-                ChartUtils.writeChartAsJPEG(ramChartFile.write(), chart, 600, 200);
-                markdownText.append("![](").append(ramChartFile.getName()).append(")\n");                
-                markdownText.append("---").append("\n");
-                
-                chart = createChart(
-                    new TimeSeriesCollection(storageTimeSeries),
-                    "Storage Consumption",
-                    "Time (sec.)",
-                    "Usage (pct.)");
-
-                storageChartFile = build.getWorkspace().createTempFile(
-                    XStringUtil.isBlank(this.filePrefix) ? 
-                            String.format("%s-storage-", build.getId()) :
-                            String.format("%s-%s-storage-", this.filePrefix, build.getId()),
-                    ".jpg");
-                ChartUtils.writeChartAsJPEG(storageChartFile.write(), chart, 600, 200);
-                markdownText.append("![](").append(storageChartFile.getName()).append(")\n");
-                markdownText.append("---").append("\n");
+        if(false == model.getSteps().isEmpty())
+        {
+            markdownText.append("# Installation Test Result").append("\n");
+            markdownText.append("---").append("\n");
+            markdownText.append("| Time | Step Name | DUT | App | Version | Result |").append("\n");
+            markdownText.append("| -------- | -------- | -------- | -------- | -------- | -------- |").append("\n");
+            for(ResultRecord step : model.getSteps())
+            {
+                markdownText.append("|")
+                            .append(LogParserUtil.formatTime(step.time))
+                            .append("|")
+                            .append(0 == ResultRecord.TYPE_INSTALL.compareTo(step.type) ? "Installation" : "Uninstallation")
+                            .append("|")
+                            .append(step.deviceId)
+                            .append("|")
+                            .append(step.appPublisher).append(" / ").append(step.appName)
+                            .append("|")
+                            .append(step.appVersion)
+                            .append("|")
+                            .append(Boolean.TRUE.equals(step.ok) ? "OK" : "FAILED: " + step.message)
+                            .append("|")
+                            .append("\n");
+            }
+        }
 
-                // TODO:
-                markdownText.append("## Container Wide Charts").append("\n");
-                markdownText.append("---").append("\n");
-                
-                markdownText.append("\n# Raw Text Log").append("\n");
+        if(false == model.getCollects().isEmpty())
+        {
+            markdownText.append("# Resource Consumption Test Result").append("\n");
+
+            boolean hasSchedule = false;
+            for(ReportModel.CollectResult collect : model.getCollects())
+            {
+                if(null == collect.schedule)
+                {
+                    continue;
+                }
+
+                if(false == hasSchedule)
+                {
+                    markdownText.append("| DUT | Planned Samples | Taken | Late | Missed | Max Delay (ms) |").append("\n");
+                    markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                    hasSchedule = true;
+                }
+
+                ResultRecord schedule = collect.schedule;
+                markdownText.append("|")
+                            .append(schedule.deviceId)
+                            .append("|")
+                            .append(schedule.plannedCount)
+                            .append("|")
+                            .append(schedule.takenCount)
+                            .append("|")
+                            .append(schedule.lateCount)
+                            .append("|")
+                            .append(schedule.missedCount)
+                            .append("|")
+                            .append(schedule.maxDelayMillis)
+                            .append("|")
+                            .append("\n");
+            }
+
+            boolean hasBreach = false;
+            for(ReportModel.CollectResult collect : model.getCollects())
+            {
+                final ResultRecord breach = collect.breach;
+                if(null == breach)
+                {
+                    continue;
+                }
+
+                if(false == hasBreach)
+                {
+                    markdownText.append("\n### Threshold Breaches").append("\n");
+                    markdownText.append("| DUT | Time | Container | Metric | Value (%) | Threshold (%) | Samples |").append("\n");
+                    markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                    hasBreach = true;
+                }
+
+                markdownText.append("|")
+                            .append(null == breach.deviceId ? "N/A" : breach.deviceId)
+                            .append("|")
+                            .append(String.format("%tF %<tT", breach.time))
+                            .append("|")
+                            .append(XStringUtil.isBlank(breach.breach.name) ? breach.breach.container : breach.breach.name)
+                            .append("|")
+                            .append(breach.breach.metric)
+                            .append("|")
+                            .append(String.format("%.2f", breach.breach.value))
+                            .append("|")
+                            .append(String.format("%.2f", breach.breach.threshold))
+                            .append("|")
+                            .append(breach.breach.sampleCount)
+                            .append("|")
+                            .append("\n");
+            }
+
+            boolean hasUsage = false;
+            for(ReportModel.CollectResult collect : model.getCollects())
+            {
+                for(ResultRecord.Usage usage : collect.usages)
+                {
+                    if(false == hasUsage)
+                    {
+                        markdownText.append("\n### Resource Usage Summary (%)").append("\n");
+                        markdownText.append("| DUT | Container | Metric | p50 | p95 | Max | Mean |").append("\n");
+                        markdownText.append("| --------  | -------- | -------- | -------- | -------- | -------- | -------- |").append("\n");
+                        hasUsage = true;
+                    }
+
+                    markdownText.append("|")
+                                .append(null == collect.deviceId ? "N/A" : collect.deviceId)
+                                .append("|")
+                                .append(XStringUtil.isBlank(usage.name) ? usage.container : usage.name)
+                                .append("|")
+                                .append(usage.metric)
+                                .append("|")
+                                .append(String.format("%.2f", usage.p50))
+                                .append("|")
+                                .append(String.format("%.2f", usage.p95))
+                                .append("|")
+                                .append(String.format("%.2f", usage.max))
+                                .append("|")
+                                .append(String.format("%.2f", usage.mean))
+                                .append("|")
+                                .append("\n");
+                }
+            }
+        }
+
+        TimeSeriesCollection fleetCpuDataset = new TimeSeriesCollection();
+        TimeSeriesCollection fleetRamDataset = new TimeSeriesCollection();
+        TimeSeriesCollection fleetStorageDataset = new TimeSeriesCollection();
+        for(ReportModel.CollectResult collect : model.getCollects())
+        {
+            // console logs of older builds do not tell the DUT
+            final String seriesName = null == collect.deviceId ? "Usage" : collect.deviceId;
+            TimeSeries cpuTimeSeries = new TimeSeries(seriesName);
+            TimeSeries ramTimeSeries = new TimeSeries(seriesName);
+            TimeSeries storageTimeSeries = new TimeSeries(seriesName);
+            // every container of the same samples, keyed by its ID
+            Map<String, ContainerSeries> containerSeries = new LinkedHashMap<>();
+
+            ReportModel.Sample previous = null;
+            for(ReportModel.Sample sample : collect.samples)
+            {
+                if(null == sample.containers || sample.containers.isEmpty())
+                {
+                    continue;
+                }
+
+                Second second = new Second(new Date(sample.time));
+                // an adaptive collection tells how far apart its samples were scheduled, 
+                // the lines break where samples went missing instead of bridging a backed off period
+                if(null != previous && null != sample.interval && sample.time - previous.time > sample.interval * 3L / 2L)
+                {
+                    Second gap = new Second(new Date(previous.time + 1000L));
+                    cpuTimeSeries.addOrUpdate(gap, (Number) null);
+                    ramTimeSeries.addOrUpdate(gap, (Number) null);
+                    storageTimeSeries.addOrUpdate(gap, (Number) null);
+                    for(ContainerSeries series : containerSeries.values())
+                    {
+                        series.addGap(gap);
+                    }
+                }
+                previous = sample;
+
+                for(ResultRecord.Container item : sample.containers)
+                {
+                    final String key = XStringUtil.isBlank(item.id) ? item.name : item.id;
+                    if(XStringUtil.isBlank(key))
+                    {
+                        continue;
+                    }
+
+                    ContainerSeries series = containerSeries.get(key);
+                    if(null == series)
+                    {
+                        series = new ContainerSeries(key, item.name);
+                        containerSeries.put(key, series);
+                    }
+                    series.add(second, item);
+                }
+
+                ResultRecord.Container container = sample.containers.get(0);
+                if(null != container.cpu)
+                {
+                    cpuTimeSeries.addOrUpdate(second, container.cpu);
+                }
+
+                if(null != container.ram)
+                {
+                    ramTimeSeries.addOrUpdate(second, container.ram);
+                }
+
+                if(null != container.storage)
+                {
+                    storageTimeSeries.addOrUpdate(second, container.storage);
+                }
+            }
+
+            fleetCpuDataset.addSeries(cpuTimeSeries);
+            fleetRamDataset.addSeries(ramTimeSeries);
+            fleetStorageDataset.addSeries(storageTimeSeries);
+
+            final String fileTag = null == collect.deviceId ? "" : collect.deviceId.replaceAll("[^A-Za-z0-9_]", "_") + "-";
+            // the breach point and the loop phases are marked on every chart of the DUT
+            final List<ChartMarker> markers = createMarkers(collect);
+
+            markdownText.append("### System Wide Charts");
+            if(null != collect.deviceId)
+            {
+                markdownText.append(": ").append(collect.deviceId);
+            }
+            markdownText.append("\n");
+            markdownText.append("---").append("\n");
+
+            this.appendChart(build, charts, markdownText, new TimeSeriesCollection(cpuTimeSeries), "CPU Consumption", fileTag + "cpu", markers);
+            this.appendChart(build, charts, markdownText, new TimeSeriesCollection(ramTimeSeries), "RAM Consumption", fileTag + "ram", markers);
+            this.appendChart(build, charts, markdownText, new TimeSeriesCollection(storageTimeSeries), "Storage Consumption", fileTag + "storage", markers);
+            appendPhaseTable(markdownText, collect);
+
+            if(false == containerSeries.isEmpty())
+            {
+                markdownText.append("### Container Wide Charts");
+                if(null != collect.deviceId)
+                {
+                    markdownText.append(": ").append(collect.deviceId);
+                }
+                markdownText.append("\n");
                 markdownText.append("---").append("\n");
-                markdownText.append("```").append("\n");
-                markdownText.append(rawText);
-                markdownText.append("```").append("\n");
-                
-                
-                markdownText.insert(0, "| End Time   | " + endTime.toString(DateTime.FORMAT_ISO_MS) + " |\n");
-                markdownText.insert(0, "| Begin Time | " + beginTime.toString(DateTime.FORMAT_ISO_MS) + " |\n");
-                markdownText.insert(0, "| -----      | -----     |\n");
-                markdownText.insert(0, "|            | Timestamp |\n");
-                
-                markdownText.insert(0, "---\n");
-                markdownText.insert(0, "\n# Information\n");
-                
-                String markdownString = markdownText.toString();
-                
-                List<org.commonmark.Extension> extensions = 
-                        Arrays.asList(TablesExtension.create());
-                
-                Parser parser = Parser.builder()
-                        .extensions(extensions)
-                        .build();
-                
-                Node document = parser.parse(markdownString);
-                
-                HtmlRenderer renderer = HtmlRenderer.builder()
-                        .extensions(extensions)
-                        .build();
-                
-                String htmlText = renderer.render(document);
-                
-                htmlText = "<html>\r\n<head>\r\n</head>\r\n<body>\r\n" + htmlText + "</body>\r\n</html>\r\n";
-                
-                htmlFile = build.getWorkspace().createTextTempFile(
-                    XStringUtil.isBlank(this.filePrefix) ? 
-                            String.format("%s-output-", build.getId()) :
-                            String.format("%s-%s-output-", this.filePrefix, build.getId()),
-                    ".html", 
-                    htmlText);
-
-                FilePath pdfFile = build.getWorkspace().createTempFile(
-                    XStringUtil.isBlank(this.filePrefix) ? 
-                            String.format("%s-output-", build.getId()) :
-                            String.format("%s-%s-output-", this.filePrefix, build.getId()),
-                    ".pdf");
-                
-                try(OutputStream outputStream = pdfFile.write())
+
+                for(ContainerSeries series : containerSeries.values())
                 {
-                    PdfRendererBuilder builder = new PdfRendererBuilder();
-                    builder.useFastMode();
-                    builder.withFile(new File(htmlFile.getRemote()));
-                    builder.toStream(outputStream);
-                    builder.run();
+                    this.appendChart(
+                        build, 
+                        charts,
+                        markdownText, 
+                        series.toDataset(), 
+                        series.title + " Consumption", 
+                        fileTag + "container-" + series.key.replaceAll("[^A-Za-z0-9_]", "_"),
+                        markers);
                 }
             }
         }
-        catch(Throwable t)
+
+        if(1 < model.getCollects().size())
         {
-            logger.println();
-            logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
+            markdownText.append("### Fleet Overlay Charts").append("\n");
+            markdownText.append("---").append("\n");
+
+            this.appendChart(build, charts, markdownText, fleetCpuDataset, "CPU Consumption of All DUTs", "fleet-cpu", new ArrayList<>());
+            this.appendChart(build, charts, markdownText, fleetRamDataset, "RAM Consumption of All DUTs", "fleet-ram", new ArrayList<>());
+            this.appendChart(build, charts, markdownText, fleetStorageDataset, "Storage Consumption of All DUTs", "fleet-storage", new ArrayList<>());
         }
 
-        return true;
+        if(null != model.getRawText())
+        {
+            markdownText.append("\n# Raw Text Log").append("\n");
+            markdownText.append("---").append("\n");
+            markdownText.append("```").append("\n");
+            markdownText.append(model.getRawText());
+            markdownText.append("```").append("\n");
+        }
+        
+        markdownText.insert(0, "| End Time   | " + LogParserUtil.formatTime(model.getEndTime()) + " |\n");
+        markdownText.insert(0, "| Begin Time | " + LogParserUtil.formatTime(model.getBeginTime()) + " |\n");
+        markdownText.insert(0, "| -----      | -----     |\n");
+        markdownText.insert(0, "|            | Timestamp |\n");
+        
+        markdownText.insert(0, "---\n");
+        markdownText.insert(0, "\n# Information\n");
+        
+        String markdownString = markdownText.toString();
+        
+        List<org.commonmark.Extension> extensions = 
+                Arrays.asList(TablesExtension.create());
+        
+        Parser parser = Parser.builder()
+                .extensions(extensions)
+                .build();
+        
+        Node document = parser.parse(markdownString);
+        
+        HtmlRenderer renderer = HtmlRenderer.builder()
+                .extensions(extensions)
+                .build();
+        
+        final String htmlText = "<html>\r\n<head>\r\n</head>\r\n<body>\r\n" + renderer.render(document) + "</body>\r\n</html>\r\n";
+        final long documentNanos = System.nanoTime();
+
+        final FilePath workspace = build.getWorkspace();
+        final String filePrefix = XStringUtil.isBlank(this.filePrefix) ? 
+                String.format("%s-output-", build.getId()) :
+                String.format("%s-%s-output-", this.filePrefix, build.getId());
+
+        // the HTML file is written while the PDF is laid out from the same text
+        Future<FilePath> htmlFile = ReportRenderExecutor.get().submit(
+            () -> workspace.createTextTempFile(filePrefix, ".html", htmlText));
+        try
+        {
+            // the PDF embeds the charts
+            long slowestChartMillis = 0L;
+            for(Future<Long> chart : charts)
+            {
+                slowestChartMillis = Math.max(slowestChartMillis, getResult(chart));
+            }
+            final long chartsNanos = System.nanoTime();
+
+            FilePath pdfFile = workspace.createTempFile(filePrefix, ".pdf");
+            try(OutputStream outputStream = pdfFile.write())
+            {
+                PdfRendererBuilder builder = new PdfRendererBuilder();
+                builder.useFastMode();
+                // charts are resolved relative to the workspace, where the HTML file goes as well
+                builder.withHtmlContent(htmlText, new File(workspace.getRemote()).toURI().toString());
+                builder.toStream(outputStream);
+                builder.run();
+            }
+            final long pdfNanos = System.nanoTime();
+
+            getResult(htmlFile);
+
+            logger.printf("%s - [INFO] report rendered in %d ms: document %d ms, %d chart(s) done %d ms later (slowest %d ms), PDF %d ms%n",
+                DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beginNanos),
+                TimeUnit.NANOSECONDS.toMillis(documentNanos - beginNanos),
+                charts.size(),
+                TimeUnit.NANOSECONDS.toMillis(chartsNanos - documentNanos),
+                slowestChartMillis,
+                TimeUnit.NANOSECONDS.toMillis(pdfNanos - chartsNanos));
+        }
+        finally
+        {
+            htmlFile.cancel(true);
+        }
+    }
+
+    /**
+     * Waits for a render task, the failure of a task is the failure of the report
+     */
+    private static <T> T getResult(Future<T> future)
+    throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Keeps the model in the build directory for the build page, a build
+     * whose model cannot be written still gets its report
+     */
+    private static void saveModel(AbstractBuild<?, ?> build, ReportModel model, long[] sources, PrintStream logger)
+    {
+        try
+        {
+            ReportModelFile.write(build, model, sources);
+            build.addOrReplaceAction(new OpenWRTReportAction());
+        }
+        catch(IOException e)
+        {
+            logger.printf("%s - [WARN] failed to save report model: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the report model from the markers written into the console log,
+     * scanning the log file in place when it is a plain local file
+     */
+    private static ReportModel parseLog(AbstractBuild<?, ?> build, PrintStream logger)
+    throws IOException
+    {
+        File logFile = build.getLogFile();
+        if(MappedLogScanner.isApplicable(logFile))
+        {
+            try
+            {
+                return MappedLogScanner.parse(logFile, build.getCharset(), logger);
+            }
+            catch(IOException e)
+            {
+                logger.printf("%s - [WARN] failed to scan console log, reading it instead: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+            }
+        }
+
+        try(BufferedReader reader = new BufferedReader(build.getLogReader()))
+        {
+            return parseLog(reader, logger);
+        }
+    }
+
+    private static ReportModel parseLog(BufferedReader reader, PrintStream logger)
+    throws IOException
+    {
+        ConsoleLogParser parser = new ConsoleLogParser(logger);
+
+        String line = null;
+        while((line = reader.readLine()) != null)
+        {
+            parser.accept(line);
+        }
+
+        return parser.finish();
+    }
+
+    private static void appendStepRow(
+            StringBuilder markdownText, 
+            String stepName, 
+            int totalCount, 
+            int value,
+            boolean optional)
+    {
+        markdownText.append("|")
+                    .append(stepName)
+                    .append("|")
+                    .append(totalCount)
+                    .append("|")
+                    .append(optional && 0 == value ? "N/A" : String.valueOf(value))
+                    .append("|")
+                    .append(optional && 0 == value ? "N/A" : formatRate(value, totalCount))
+                    .append("|")
+                    .append("\n");
+    }
+
+    private static String formatRate(int value, int totalCount)
+    {
+        return 0 != totalCount ? String.format("%.2f%%", (value * 100.) / totalCount) : "N/A";
     }
 
     @Extension
@@ -469,7 +725,237 @@ public class OpenWRTReportPublisher extends Recorder
         }
     }
 
-    private static JFreeChart createChart(
+    /**
+     * Marks the threshold breach and, for samples taken while looping, where the
+     * DUT moved on to another loop phase as seen by the samples
+     */
+    private static List<ChartMarker> createMarkers(ReportModel.CollectResult collect)
+    {
+        List<ChartMarker> markers = new ArrayList<>();
+        if(null != collect.breach)
+        {
+            markers.add(new ChartMarker(collect.breach.time, "threshold breach", Color.RED));
+        }
+
+        List<ChartMarker> phaseMarkers = new ArrayList<>();
+        List<ChartMarker> loopMarkers = new ArrayList<>();
+        ReportModel.Sample last = null;
+        for(ReportModel.Sample sample : collect.samples)
+        {
+            if(null == sample.phase)
+            {
+                continue;
+            }
+
+            if(null == last || false == sample.loop.equals(last.loop))
+            {
+                loopMarkers.add(new ChartMarker(sample.time, "#" + sample.loop, Color.GRAY));
+            }
+
+            if(null == last || false == sample.loop.equals(last.loop) || 0 != sample.phase.compareTo(last.phase))
+            {
+                phaseMarkers.add(new ChartMarker(sample.time, "#" + sample.loop + " " + sample.phase, Color.GRAY));
+            }
+            last = sample;
+        }
+
+        if(phaseMarkers.size() <= MAX_PHASE_MARKERS)
+        {
+            markers.addAll(phaseMarkers);
+        }
+        else if(loopMarkers.size() <= MAX_PHASE_MARKERS)
+        {
+            markers.addAll(loopMarkers);
+        }
+
+        return markers;
+    }
+
+    /**
+     * Mean system wide consumption of each loop phase, only for samples taken while looping
+     */
+    private static void appendPhaseTable(StringBuilder markdownText, ReportModel.CollectResult collect)
+    {
+        // sample count, CPU sum and count, RAM sum and count of each phase
+        Map<String, double[]> phases = new LinkedHashMap<>();
+        for(LoopPhase phase : LoopPhase.values())
+        {
+            phases.put(phase.getLabel(), new double[5]);
+        }
+
+        boolean tagged = false;
+        for(ReportModel.Sample sample : collect.samples)
+        {
+            if(null == sample.phase || false == phases.containsKey(sample.phase) || sample.containers.isEmpty())
+            {
+                continue;
+            }
+
+            final ResultRecord.Container container = sample.containers.get(0);
+            double[] sums = phases.get(sample.phase);
+            sums[0] ++;
+            if(null != container.cpu)
+            {
+                sums[1] += container.cpu;
+                sums[2] ++;
+            }
+            if(null != container.ram)
+            {
+                sums[3] += container.ram;
+                sums[4] ++;
+            }
+            tagged = true;
+        }
+
+        if(false == tagged)
+        {
+            return;
+        }
+
+        markdownText.append("| Loop Phase | Samples | Mean CPU (%) | Mean RAM (%) |").append("\n");
+        markdownText.append("| --------  | -------- | -------- | -------- |").append("\n");
+        for(Map.Entry<String, double[]> entry : phases.entrySet())
+        {
+            final double[] sums = entry.getValue();
+            if(0. == sums[0])
+            {
+                continue;
+            }
+
+            markdownText.append("|")
+                        .append(entry.getKey())
+                        .append("|")
+                        .append((long) sums[0])
+                        .append("|")
+                        .append(0. == sums[2] ? "N/A" : String.format("%.2f", sums[1] / sums[2]))
+                        .append("|")
+                        .append(0. == sums[4] ? "N/A" : String.format("%.2f", sums[3] / sums[4]))
+                        .append("|")
+                        .append("\n");
+        }
+        markdownText.append("---").append("\n");
+    }
+
+    private static final class ChartMarker
+    {
+        // epoch milliseconds
+        private final long time;
+        private final String label;
+        private final Color paint;
+
+        ChartMarker(long time, String label, Color paint)
+        {
+            this.time = time;
+            this.label = label;
+            this.paint = paint;
+        }
+    }
+
+    /**
+     * Series of one container, the three metrics share a chart
+     */
+    private static final class ContainerSeries
+    {
+        private final String key;
+        private final String title;
+        private final TimeSeries cpuTimeSeries = new TimeSeries("CPU Usage");
+        private final TimeSeries ramTimeSeries = new TimeSeries("RAM Usage");
+        private final TimeSeries storageTimeSeries = new TimeSeries("Storage Usage");
+
+        ContainerSeries(String key, String name)
+        {
+            this.key = key;
+            this.title = XStringUtil.isBlank(name) || 0 == key.compareTo(name) ? key : name + " (" + key + ")";
+        }
+
+        void add(Second second, ResultRecord.Container container)
+        {
+            if(null != container.cpu)
+            {
+                this.cpuTimeSeries.addOrUpdate(second, container.cpu);
+            }
+
+            if(null != container.ram)
+            {
+                this.ramTimeSeries.addOrUpdate(second, container.ram);
+            }
+
+            if(null != container.storage)
+            {
+                this.storageTimeSeries.addOrUpdate(second, container.storage);
+            }
+        }
+
+        void addGap(Second second)
+        {
+            this.cpuTimeSeries.addOrUpdate(second, (Number) null);
+            this.ramTimeSeries.addOrUpdate(second, (Number) null);
+            this.storageTimeSeries.addOrUpdate(second, (Number) null);
+        }
+
+        TimeSeriesCollection toDataset()
+        {
+            TimeSeriesCollection dataset = new TimeSeriesCollection();
+            dataset.addSeries(this.cpuTimeSeries);
+            dataset.addSeries(this.ramTimeSeries);
+            dataset.addSeries(this.storageTimeSeries);
+
+            return dataset;
+        }
+    }
+
+    /**
+     * Links the chart from the report and writes it into the workspace in the background
+     *
+     * @param charts the task writing the chart is added to these
+     * @param markers points of time marked on the time axis, e.g. a threshold breach
+     */
+    private void appendChart(
+            AbstractBuild<?, ?> build,
+            List<Future<Long>> charts,
+            StringBuilder markdownText,
+            TimeSeriesCollection dataset,
+            String title,
+            String fileTag,
+            List<ChartMarker> markers)
+    throws IOException, InterruptedException
+    {
+        FilePath chartFile = build.getWorkspace().createTempFile(
+            XStringUtil.isBlank(this.filePrefix) ? 
+                    String.format("%s-%s-", build.getId(), fileTag) :
+                    String.format("%s-%s-%s-", this.filePrefix, build.getId(), fileTag),
+            ".jpg");
+        // the series are only read from here on, the chart is built on copies thinned out to its width
+        charts.add(ReportRenderExecutor.get().submit(() ->
+        {
+            final long beginNanos = System.nanoTime();
+            JFreeChart chart = createChart(
+                ChartDownsampler.downsample(dataset, CHART_WIDTH),
+                title,
+                "Time (sec.)",
+                "Usage (pct.)");
+
+            for(ChartMarker item : markers)
+            {
+                ValueMarker marker = new ValueMarker(item.time);
+                marker.setPaint(item.paint);
+                marker.setLabel(item.label);
+                ((XYPlot)chart.getPlot()).addDomainMarker(marker);
+            }
+
+            try(OutputStream outputStream = chartFile.write())
+            {
+                ChartUtils.writeChartAsJPEG(outputStream, chart, CHART_WIDTH, CHART_HEIGHT);
+            }
+
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beginNanos);
+        }));
+
+        markdownText.append("![](").append(chartFile.getName()).append(")\n");
+        markdownText.append("---").append("\n");
+    }
+
+    static JFreeChart createChart(
             XYDataset dataset,
             String title,
             String timeAxisLabel,
@@ -492,61 +978,4 @@ public class OpenWRTReportPublisher extends Recorder
 
         return chart;
     }
-
-    @SuppressFBWarnings(value = "URF_UNREAD_FIELD")
-    protected final static class ContainerInfo
-    {
-        public final static class CPU
-        {
-            @JsonProperty("Usage")
-            private String usage = "0.0";
-        }
-        
-        public final static class Memory
-        {
-            @JsonProperty("Total")
-            private Long total = 0L;
-            @JsonProperty("Free")
-            private Long free = 0L;
-            @JsonProperty("Usage")
-            private Double usage = 0.;
-        }
-
-        public final static class Storage
-        {
-            @JsonProperty("Total")
-            private Long total = 0L;
-            @JsonProperty("Free")
-            private Long free = 0L;
-            @JsonProperty("Usage")
-            private Double usage = 0.;
-        }
-        
-        public final static class Resources
-        {
-            @JsonProperty("CPU")
-            private CPU cpu;
-            @JsonProperty("Storage")
-            private Storage storage;
-            @JsonProperty("Memory")
-            private Memory memory;
-        }
-        
-        @JsonProperty("Id")
-        private String id;
-        @JsonProperty("Name")
-        private String name;
-        @JsonProperty("Enabled")
-        private Boolean enabled;
-        @JsonProperty("Version")
-        private String version;
-        @JsonProperty("Vendor")
-        private String vendor;
-        @JsonProperty("Type")
-        private String type;
-        @JsonProperty("Status")
-        private String status;
-        @JsonProperty("Resources")
-        private Resources resources;
-    }
 }
@@ -102,11 +102,12 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
         logger.printf("%s - [INFO] Stop app: %b%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), this.stopApp);
         logger.printf("%s - [INFO] Endpoint: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), endpoint);
 
+        boolean ok = false;
+        String message = null;
+
         try
         {
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
+            RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
             // 1. check device status and its model name
             logger.printf("%s - [INFO] checking device status... ", DateTime.now().toString(DateTime.FORMAT_ISO_MS));
@@ -265,12 +266,32 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
                 throw new InterruptedException("SERVER REPORTED ERROR,  CODE: " +  error.getCode() + ", DETAIL: " + error.getDetail());
             }
             logger.printf("ok%n");
+
+            ok = true;
         }
         catch(Throwable t)
         {
+            message = t.getMessage();
+
             // output error message
             logger.printf("%s - [ERROR] %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), t.getMessage());
         }
+
+        try
+        {
+            ResultsFile.append(run, ResultRecord.step(
+                ResultRecord.TYPE_UNINSTALL,
+                this.deviceId,
+                this.appPublisher,
+                this.appName,
+                this.appVersion,
+                ok,
+                message));
+        }
+        catch(IOException e)
+        {
+            logger.printf("%s - [ERROR] failed to write results file: %s%n", DateTime.now().toString(DateTime.FORMAT_ISO_MS), e.getMessage());
+        }
     }
     
     @Extension
@@ -311,9 +332,7 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
                 return FormValidation.error("DEMETER ENDPOINT IS NOT CONFIGURED");
             }
 
-            RESTfulClient client = new RESTfulClient.Builder()
-                    .enableSSL(true)
-                    .endpoint(endpoint).build();
+            RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
             
             GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                     .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -352,9 +371,7 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
                 
                 GetDevicesRequest getDeviceRequest = new GetDevicesRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -402,9 +419,7 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -483,9 +498,7 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
                 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -573,9 +586,7 @@ public class OpenWRTUninstallBuilder extends Builder implements SimpleBuildStep
                     break;
                 }
 
-                RESTfulClient client = new RESTfulClient.Builder()
-                        .enableSSL(true)
-                        .endpoint(endpoint).build();
+                RESTfulClient client = OpenWRTPlugin.acquireClient(endpoint);
 
                 GetDeviceRequest getDeviceRequest = new GetDeviceRequest()
                         .withOriginatorId(OpenWRTPlugin.ORIGINATOR_ID)
@@ -0,0 +1,244 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the report publisher renders, filled either from the results
+ * file of a build or, for older builds, from its console log.
+ */
+public class ReportModel
+{
+    public static class LoopResult
+    {
+        public int totalCount = 0;
+        public int installOKCount = 0;
+        public int uninstallOKCount = 0;
+        public int startOKCount = 0;
+        public int stopOKCount = 0;
+
+        public final List<ResultRecord.DeviceLoop> devices = new ArrayList<>();
+        public final List<ResultRecord.Latency> latencies = new ArrayList<>();
+        public final List<ResultRecord.VersionLoop> versions = new ArrayList<>();
+    }
+
+    public static class Sample
+    {
+        // epoch milliseconds
+        public final long time;
+        public final List<ResultRecord.Container> containers;
+        // loop and its phase the DUT was in, null unless sampled while looping
+        public Integer loop = null;
+        public String phase = null;
+        // milliseconds the sample was scheduled after the previous one, null unless sampled adaptively
+        public Long interval = null;
+
+        public Sample(long time, List<ResultRecord.Container> containers)
+        {
+            this.time = time;
+            this.containers = containers;
+        }
+    }
+
+    public static class CollectResult
+    {
+        public final String deviceId;
+        public final List<Sample> samples = new ArrayList<>();
+
+        // sampling schedule, null when the collection did not record it
+        public ResultRecord schedule = null;
+        // statistics kept while sampling, empty for older builds
+        public final List<ResultRecord.Usage> usages = new ArrayList<>();
+        // threshold breach that stopped the collection, null when none did
+        public ResultRecord breach = null;
+
+        public CollectResult(String deviceId)
+        {
+            this.deviceId = deviceId;
+        }
+    }
+
+    // epoch milliseconds, 0 when nothing has been recorded
+    private long beginTime = 0L;
+    private long endTime = 0L;
+
+    private final List<LoopResult> loops = new ArrayList<>();
+    private final List<CollectResult> collects = new ArrayList<>();
+    private final List<ResultRecord> steps = new ArrayList<>();
+    private String rawText = null;
+
+    public long getBeginTime()
+    {
+        return this.beginTime;
+    }
+
+    public long getEndTime()
+    {
+        return this.endTime;
+    }
+
+    public List<LoopResult> getLoops()
+    {
+        return this.loops;
+    }
+
+    public List<CollectResult> getCollects()
+    {
+        return this.collects;
+    }
+
+    public List<ResultRecord> getSteps()
+    {
+        return this.steps;
+    }
+
+    /**
+     * @return the console text to be quoted in the report, null if not available
+     */
+    public String getRawText()
+    {
+        return this.rawText;
+    }
+
+    public void setRawText(String rawText)
+    {
+        this.rawText = rawText;
+    }
+
+    public void touch(long time)
+    {
+        if(0L == this.beginTime || time < this.beginTime)
+        {
+            this.beginTime = time;
+        }
+
+        if(time > this.endTime)
+        {
+            this.endTime = time;
+        }
+    }
+
+    /**
+     * Adds the samples read from the sample store to the collections of their DUTs
+     */
+    public void addSamples(Map<String, List<Sample>> samples)
+    {
+        for(Map.Entry<String, List<Sample>> entry : samples.entrySet())
+        {
+            CollectResult collect = null;
+            for(CollectResult item : this.collects)
+            {
+                if(null != item.deviceId && 0 == item.deviceId.compareTo(entry.getKey()))
+                {
+                    collect = item;
+                }
+            }
+
+            if(null == collect)
+            {
+                collect = new CollectResult(entry.getKey());
+                this.collects.add(collect);
+            }
+
+            for(Sample sample : entry.getValue())
+            {
+                this.touch(sample.time);
+                collect.samples.add(sample);
+            }
+        }
+    }
+
+    public static ReportModel from(List<ResultRecord> records)
+    {
+        ReportModel model = new ReportModel();
+
+        // DUTs of one collection are sampled concurrently, their records interleave
+        Map<String, CollectResult> collects = new HashMap<>();
+        for(ResultRecord record : records)
+        {
+            model.touch(record.time);
+
+            switch(record.type)
+            {
+                case ResultRecord.TYPE_LOOP:
+                {
+                    LoopResult loop = new LoopResult();
+                    loop.totalCount = record.totalCount;
+                    loop.installOKCount = record.installOKCount;
+                    loop.uninstallOKCount = record.uninstallOKCount;
+                    loop.startOKCount = record.startOKCount;
+                    loop.stopOKCount = record.stopOKCount;
+                    if(null != record.devices)
+                    {
+                        loop.devices.addAll(record.devices);
+                    }
+                    if(null != record.latencies)
+                    {
+                        loop.latencies.addAll(record.latencies);
+                    }
+                    if(null != record.versions)
+                    {
+                        loop.versions.addAll(record.versions);
+                    }
+
+                    model.loops.add(loop);
+                    break;
+                }
+                case ResultRecord.TYPE_COLLECT:
+                {
+                    CollectResult collect = new CollectResult(record.deviceId);
+                    collects.put(record.deviceId, collect);
+                    model.collects.add(collect);
+                    break;
+                }
+                case ResultRecord.TYPE_SAMPLE:
+                {
+                    CollectResult collect = collects.get(record.deviceId);
+                    if(null == collect)
+                    {
+                        collect = new CollectResult(record.deviceId);
+                        collects.put(record.deviceId, collect);
+                        model.collects.add(collect);
+                    }
+
+                    collect.samples.add(new Sample(record.time, record.containers));
+                    break;
+                }
+                case ResultRecord.TYPE_COLLECT_END:
+                {
+                    CollectResult collect = collects.get(record.deviceId);
+                    if(null != collect)
+                    {
+                        collect.schedule = record;
+                        if(null != record.usages)
+                        {
+                            collect.usages.addAll(record.usages);
+                        }
+                    }
+                    break;
+                }
+                case ResultRecord.TYPE_BREACH:
+                {
+                    CollectResult collect = collects.get(record.deviceId);
+                    if(null != collect)
+                    {
+                        collect.breach = record;
+                    }
+                    break;
+                }
+                case ResultRecord.TYPE_INSTALL:
+                case ResultRecord.TYPE_UNINSTALL:
+                {
+                    model.steps.add(record);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        return model;
+    }
+}
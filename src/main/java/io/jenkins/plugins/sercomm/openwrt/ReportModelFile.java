@@ -0,0 +1,453 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.sercomm.commons.util.Json;
+
+import hudson.model.Run;
+
+/**
+ * The report model of a build as the publisher rendered it, kept in the build
+ * directory so it can be loaded again without the results file, the sample
+ * store or the console log. The summaries are stored as JSON of their result
+ * records, the samples of each DUT as columns like in the {@link SampleStore}.
+ *
+ * <pre>
+ * file    := MAGIC VERSION sourceCount:short (length:long lastModified:long){sourceCount}
+ *            beginTime:long endTime:long
+ *            loopCount:short loop{loopCount} steps:json
+ *            collectCount:short collect{collectCount} rawText:text
+ * loop    := total:int install:int uninstall:int start:int stop:int devices:json latencies:json versions:json
+ * collect := deviceId:text schedule:json usages:json breach:json samples
+ * samples := count:int (firstTime:long delta:zigzag{count-1})?
+ *            containerCount:short (key:utf name:utf cpu:float{count} ram:float{count} storage:float{count})*
+ *            flags:byte (loop:varint phase:byte){count}? (interval+1:varint){count}?
+ * json    := text
+ * text    := length:int utf8{length}, length -1 for null
+ * phase 0 and interval+1 0 stand for null, deltas are zigzag encoded as
+ * console log timestamps are not guaranteed to go forward
+ * </pre>
+ *
+ * The sources are the length and modification time of each file the model
+ * was built from, -1 for both when it did not exist. A model is current as
+ * long as they all match, version 1 files have none and never are.
+ * The raw text comes last, readers which do not quote the console log skip it.
+ */
+public class ReportModelFile
+{
+    public static final String FILE_NAME = "openwrt-report.bin";
+
+    private static final int MAGIC = 0x4F575232; // "OWR2"
+    private static final byte VERSION = 2;
+
+    private static final int FLAG_PHASES = 0x01;
+    private static final int FLAG_INTERVALS = 0x02;
+
+    public static File getFile(Run<?, ?> run)
+    {
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * @return length and modification time of each file, to be taken before the files are read
+     */
+    public static long[] stamp(File... sources)
+    {
+        long[] stamps = new long[2 * sources.length];
+        for(int idx = 0; idx < sources.length; idx ++)
+        {
+            final boolean exists = sources[idx].isFile();
+            stamps[2 * idx] = exists ? sources[idx].length() : -1L;
+            stamps[2 * idx + 1] = exists ? sources[idx].lastModified() : -1L;
+        }
+
+        return stamps;
+    }
+
+    /**
+     * @param sources stamps of the files the model would be built from now
+     * @return whether the file holds a model built from the very same files
+     */
+    public static boolean isCurrent(File file, long[] sources)
+    {
+        if(false == file.isFile())
+        {
+            return false;
+        }
+
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))
+        {
+            if(MAGIC != input.readInt() || VERSION != input.readByte())
+            {
+                return false;
+            }
+
+            return Arrays.equals(sources, readSources(input));
+        }
+        catch(IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the file of the run, readers never see a partly written model
+     *
+     * @param sources stamps of the files the model was built from, taken before they were read
+     */
+    public static void write(Run<?, ?> run, ReportModel model, long[] sources)
+    throws IOException
+    {
+        final File file = getFile(run);
+        final File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))))
+        {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeShort(sources.length / 2);
+            for(long value : sources)
+            {
+                output.writeLong(value);
+            }
+            output.writeLong(model.getBeginTime());
+            output.writeLong(model.getEndTime());
+
+            output.writeShort(model.getLoops().size());
+            for(ReportModel.LoopResult loop : model.getLoops())
+            {
+                output.writeInt(loop.totalCount);
+                output.writeInt(loop.installOKCount);
+                output.writeInt(loop.uninstallOKCount);
+                output.writeInt(loop.startOKCount);
+                output.writeInt(loop.stopOKCount);
+                writeJson(output, loop.devices);
+                writeJson(output, loop.latencies);
+                writeJson(output, loop.versions);
+            }
+            writeJson(output, model.getSteps());
+
+            output.writeShort(model.getCollects().size());
+            for(ReportModel.CollectResult collect : model.getCollects())
+            {
+                writeText(output, collect.deviceId);
+                writeJson(output, collect.schedule);
+                writeJson(output, collect.usages);
+                writeJson(output, collect.breach);
+                writeSamples(output, collect.samples);
+            }
+
+            writeText(output, model.getRawText());
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param withRawText whether to read the quoted console log as well, the bulk of the file for older builds
+     */
+    public static ReportModel read(File file, boolean withRawText)
+    throws IOException
+    {
+        ReportModel model = new ReportModel();
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))
+        {
+            final int version = MAGIC == input.readInt() ? input.readByte() : 0;
+            if(version < 1 || version > VERSION)
+            {
+                throw new IOException("UNKNOWN REPORT MODEL FILE: " + file.getName());
+            }
+
+            if(1 < version)
+            {
+                readSources(input);
+            }
+
+            model.touch(input.readLong());
+            model.touch(input.readLong());
+
+            final int loopCount = input.readUnsignedShort();
+            for(int idx = 0; idx < loopCount; idx ++)
+            {
+                ReportModel.LoopResult loop = new ReportModel.LoopResult();
+                loop.totalCount = input.readInt();
+                loop.installOKCount = input.readInt();
+                loop.uninstallOKCount = input.readInt();
+                loop.startOKCount = input.readInt();
+                loop.stopOKCount = input.readInt();
+                loop.devices.addAll(readJsonList(input, ResultRecord.DeviceLoop.class));
+                loop.latencies.addAll(readJsonList(input, ResultRecord.Latency.class));
+                loop.versions.addAll(readJsonList(input, ResultRecord.VersionLoop.class));
+                model.getLoops().add(loop);
+            }
+            model.getSteps().addAll(readJsonList(input, ResultRecord.class));
+
+            final int collectCount = input.readUnsignedShort();
+            for(int idx = 0; idx < collectCount; idx ++)
+            {
+                ReportModel.CollectResult collect = new ReportModel.CollectResult(readText(input));
+                collect.schedule = readJson(input, ResultRecord.class);
+                collect.usages.addAll(readJsonList(input, ResultRecord.Usage.class));
+                collect.breach = readJson(input, ResultRecord.class);
+                collect.samples.addAll(readSamples(input));
+                model.getCollects().add(collect);
+            }
+
+            if(withRawText)
+            {
+                model.setRawText(readText(input));
+            }
+        }
+
+        return model;
+    }
+
+    private static long[] readSources(DataInputStream input)
+    throws IOException
+    {
+        long[] sources = new long[2 * input.readUnsignedShort()];
+        for(int idx = 0; idx < sources.length; idx ++)
+        {
+            sources[idx] = input.readLong();
+        }
+
+        return sources;
+    }
+
+    private static void writeSamples(DataOutputStream output, List<ReportModel.Sample> samples)
+    throws IOException
+    {
+        final int count = samples.size();
+        output.writeInt(count);
+        if(0 == count)
+        {
+            return;
+        }
+
+        output.writeLong(samples.get(0).time);
+        for(int row = 1; row < count; row ++)
+        {
+            SampleStore.writeZigZagLong(output, samples.get(row).time - samples.get(row - 1).time);
+        }
+
+        // one column per container seen in any sample, NaN where it was not sampled
+        Map<String, float[][]> columns = new LinkedHashMap<>();
+        Map<String, String> names = new LinkedHashMap<>();
+        int flags = 0;
+        for(int row = 0; row < count; row ++)
+        {
+            final ReportModel.Sample sample = samples.get(row);
+            flags |= null == sample.phase ? 0 : FLAG_PHASES;
+            flags |= null == sample.interval ? 0 : FLAG_INTERVALS;
+            for(ResultRecord.Container container : sample.containers)
+            {
+                final String key = SampleStore.containerKey(container.id, container.name);
+                if(null == key)
+                {
+                    continue;
+                }
+
+                float[][] column = columns.get(key);
+                if(null == column)
+                {
+                    column = new float[][] { newColumn(count), newColumn(count), newColumn(count) };
+                    columns.put(key, column);
+                    names.put(key, null == container.name ? "" : container.name);
+                }
+                column[0][row] = toFloat(container.cpu);
+                column[1][row] = toFloat(container.ram);
+                column[2][row] = toFloat(container.storage);
+            }
+        }
+
+        output.writeShort(columns.size());
+        for(Map.Entry<String, float[][]> entry : columns.entrySet())
+        {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(names.get(entry.getKey()));
+            for(float[] values : entry.getValue())
+            {
+                SampleStore.writeColumn(output, values, count);
+            }
+        }
+
+        output.writeByte(flags);
+        if(0 != (flags & FLAG_PHASES))
+        {
+            for(ReportModel.Sample sample : samples)
+            {
+                SampleStore.writeVarLong(output, null == sample.loop ? 0L : sample.loop);
+                output.writeByte(toPhaseCode(sample.phase));
+            }
+        }
+        if(0 != (flags & FLAG_INTERVALS))
+        {
+            for(ReportModel.Sample sample : samples)
+            {
+                SampleStore.writeVarLong(output, null == sample.interval ? 0L : sample.interval + 1L);
+            }
+        }
+    }
+
+    private static List<ReportModel.Sample> readSamples(DataInputStream input)
+    throws IOException
+    {
+        final int count = input.readInt();
+        List<ReportModel.Sample> samples = new ArrayList<>(count);
+        if(0 == count)
+        {
+            return samples;
+        }
+
+        long time = input.readLong();
+        samples.add(new ReportModel.Sample(time, new ArrayList<>()));
+        for(int row = 1; row < count; row ++)
+        {
+            time += SampleStore.readZigZagLong(input);
+            samples.add(new ReportModel.Sample(time, new ArrayList<>()));
+        }
+
+        final int containerCount = input.readUnsignedShort();
+        for(int column = 0; column < containerCount; column ++)
+        {
+            final String key = input.readUTF();
+            final String name = input.readUTF();
+            final float[] cpu = SampleStore.readColumn(input, count);
+            final float[] ram = SampleStore.readColumn(input, count);
+            final float[] storage = SampleStore.readColumn(input, count);
+            for(int row = 0; row < count; row ++)
+            {
+                if(Float.isNaN(cpu[row]) && Float.isNaN(ram[row]) && Float.isNaN(storage[row]))
+                {
+                    // not in this sample
+                    continue;
+                }
+
+                ResultRecord.Container item = new ResultRecord.Container();
+                item.id = key;
+                item.name = name.isEmpty() ? null : name;
+                item.cpu = SampleStore.toDouble(cpu[row]);
+                item.ram = SampleStore.toDouble(ram[row]);
+                item.storage = SampleStore.toDouble(storage[row]);
+                samples.get(row).containers.add(item);
+            }
+        }
+
+        final int flags = input.readUnsignedByte();
+        if(0 != (flags & FLAG_PHASES))
+        {
+            for(ReportModel.Sample sample : samples)
+            {
+                final int loop = (int) SampleStore.readVarLong(input);
+                final LoopPhase phase = LoopPhase.fromCode(input.readUnsignedByte());
+                if(null != phase)
+                {
+                    sample.loop = loop;
+                    sample.phase = phase.getLabel();
+                }
+            }
+        }
+        if(0 != (flags & FLAG_INTERVALS))
+        {
+            for(ReportModel.Sample sample : samples)
+            {
+                final long interval = SampleStore.readVarLong(input);
+                sample.interval = 0L == interval ? null : interval - 1L;
+            }
+        }
+
+        return samples;
+    }
+
+    private static int toPhaseCode(String label)
+    {
+        for(LoopPhase phase : LoopPhase.values())
+        {
+            if(phase.getLabel().equals(label))
+            {
+                return phase.getCode();
+            }
+        }
+
+        return 0;
+    }
+
+    private static float[] newColumn(int count)
+    {
+        float[] values = new float[count];
+        Arrays.fill(values, Float.NaN);
+        return values;
+    }
+
+    private static float toFloat(Double value)
+    {
+        return null == value ? Float.NaN : value.floatValue();
+    }
+
+    private static void writeJson(DataOutputStream output, Object value)
+    throws IOException
+    {
+        writeText(output, null == value ? null : Json.mapper().writeValueAsString(value));
+    }
+
+    private static <T> T readJson(DataInputStream input, Class<T> type)
+    throws IOException
+    {
+        final String text = readText(input);
+        return null == text ? null : Json.mapper().readValue(text, type);
+    }
+
+    private static <T> List<T> readJsonList(DataInputStream input, Class<T> type)
+    throws IOException
+    {
+        final String text = readText(input);
+        if(null == text)
+        {
+            return new ArrayList<>();
+        }
+
+        final JavaType listType = Json.JavaTypeUtil.collectionType(ArrayList.class, type);
+        return Json.mapper().readValue(text, listType);
+    }
+
+    private static void writeText(DataOutputStream output, String text)
+    throws IOException
+    {
+        if(null == text)
+        {
+            output.writeInt(-1);
+            return;
+        }
+
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readText(DataInputStream input)
+    throws IOException
+    {
+        final int length = input.readInt();
+        if(length < 0)
+        {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,67 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by every report being rendered. Charts and documents are
+ * CPU bound, so the pool is bounded by the processors of the controller no
+ * matter how many builds publish their reports at the same time.
+ */
+final class ReportRenderExecutor
+{
+    private static final int MAX_POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private static volatile ExecutorService executor = null;
+
+    private ReportRenderExecutor()
+    {
+    }
+
+    static ExecutorService get()
+    {
+        ExecutorService result = executor;
+        if(null != result)
+        {
+            return result;
+        }
+
+        synchronized(ReportRenderExecutor.class)
+        {
+            if(null == executor)
+            {
+                final int poolSize = Math.max(1, Math.min(MAX_POOL_SIZE, Runtime.getRuntime().availableProcessors()));
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    poolSize,
+                    poolSize,
+                    KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new RenderThreadFactory());
+                // no thread is kept while no report is rendered
+                pool.allowCoreThreadTimeOut(true);
+                executor = pool;
+            }
+
+            return executor;
+        }
+    }
+
+    private static final class RenderThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger lastThreadId = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "OpenWRT report #" + this.lastThreadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Running statistics of every container of one DUT, keyed the same way as
+ * the series of the {@link SampleStore}
+ */
+class ResourceStats
+{
+    static final String METRIC_CPU = "cpu";
+    static final String METRIC_RAM = "ram";
+    static final String METRIC_STORAGE = "storage";
+
+    private static final class ContainerStats
+    {
+        private final String name;
+        private final UsageStats cpu = new UsageStats();
+        private final UsageStats ram = new UsageStats();
+        private final UsageStats storage = new UsageStats();
+
+        ContainerStats(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private final Map<String, ContainerStats> containers = new LinkedHashMap<>();
+
+    void add(List<ContainerInfo> containerInfos)
+    {
+        for(ContainerInfo containerInfo : containerInfos)
+        {
+            this.add(
+                containerInfo.getId(),
+                containerInfo.getName(),
+                containerInfo.getCpuUsage(),
+                containerInfo.getMemoryUsage(),
+                containerInfo.getStorageUsage());
+        }
+    }
+
+    /**
+     * Adds samples read back from the store, e.g. after a restart
+     */
+    void addSamples(List<ReportModel.Sample> samples)
+    {
+        for(ReportModel.Sample sample : samples)
+        {
+            for(ResultRecord.Container container : sample.containers)
+            {
+                this.add(container.id, container.name, container.cpu, container.ram, container.storage);
+            }
+        }
+    }
+
+    private void add(String id, String name, Double cpu, Double ram, Double storage)
+    {
+        final String key = SampleStore.containerKey(id, name);
+        if(null == key)
+        {
+            return;
+        }
+
+        ContainerStats stats = this.containers.get(key);
+        if(null == stats)
+        {
+            stats = new ContainerStats(name);
+            this.containers.put(key, stats);
+        }
+
+        stats.cpu.add(cpu);
+        stats.ram.add(ram);
+        stats.storage.add(storage);
+    }
+
+    List<ResultRecord.Usage> toUsages()
+    {
+        List<ResultRecord.Usage> usages = new ArrayList<>();
+        for(Map.Entry<String, ContainerStats> entry : this.containers.entrySet())
+        {
+            final ContainerStats stats = entry.getValue();
+            addUsage(usages, entry.getKey(), stats.name, METRIC_CPU, stats.cpu);
+            addUsage(usages, entry.getKey(), stats.name, METRIC_RAM, stats.ram);
+            addUsage(usages, entry.getKey(), stats.name, METRIC_STORAGE, stats.storage);
+        }
+
+        return usages;
+    }
+
+    /**
+     * @return value of the console summary line: deviceId,container,metric,count,min,mean,variance,p50,p95,max
+     */
+    static String toSummaryValue(String deviceId, ResultRecord.Usage usage)
+    {
+        // the line is split on ',' by the parser, a decimal comma of the default locale would shift every field
+        return String.format(Locale.ROOT, "%s,%s,%s,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f",
+            deviceId,
+            usage.container,
+            usage.metric,
+            usage.count,
+            usage.min,
+            usage.mean,
+            usage.variance,
+            usage.p50,
+            usage.p95,
+            usage.max);
+    }
+
+    private static void addUsage(List<ResultRecord.Usage> usages, String container, String name, String metric, UsageStats stats)
+    {
+        if(0L == stats.getCount())
+        {
+            return;
+        }
+
+        ResultRecord.Usage usage = new ResultRecord.Usage();
+        usage.container = container;
+        usage.name = name;
+        usage.metric = metric;
+        usage.count = stats.getCount();
+        usage.min = stats.getMin();
+        usage.mean = stats.getMean();
+        usage.variance = stats.getVariance();
+        usage.p50 = stats.getQuantile(0.5);
+        usage.p95 = stats.getQuantile(0.95);
+        usage.max = stats.getMax();
+        usages.add(usage);
+    }
+}
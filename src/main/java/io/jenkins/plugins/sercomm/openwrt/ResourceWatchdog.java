@@ -0,0 +1,135 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sercomm.commons.util.XStringUtil;
+
+/**
+ * Thresholds of a resource collection, checked on every sample of one DUT.
+ * A container of which the CPU or RAM usage stays above its threshold for
+ * the configured number of consecutive samples is a breach, which stops the
+ * collection instead of sampling a bad build for the whole duration.
+ */
+class ResourceWatchdog
+{
+    private final String deviceId;
+    // percent, null when the metric is not watched
+    private final Double cpuThreshold;
+    private final Double ramThreshold;
+    private final int sampleCount;
+
+    // consecutive samples above the threshold, keyed by container and metric
+    private final Map<String, Integer> overCounts = new HashMap<>();
+
+    private ResourceWatchdog(String deviceId, Double cpuThreshold, Double ramThreshold, int sampleCount)
+    {
+        this.deviceId = deviceId;
+        this.cpuThreshold = cpuThreshold;
+        this.ramThreshold = ramThreshold;
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * @return null when no threshold is configured
+     */
+    static ResourceWatchdog from(String deviceId, OpenWRTCollectBuilder config)
+    {
+        final Double cpuThreshold = parseThreshold(config.getCpuThreshold());
+        final Double ramThreshold = parseThreshold(config.getRamThreshold());
+        if(null == cpuThreshold && null == ramThreshold)
+        {
+            return null;
+        }
+
+        return new ResourceWatchdog(deviceId, cpuThreshold, ramThreshold, parseSampleCount(config.getThresholdSamples()));
+    }
+
+    static Double parseThreshold(String value)
+    {
+        return XStringUtil.isBlank(value) ? null : Double.parseDouble(value);
+    }
+
+    static int parseSampleCount(String value)
+    {
+        return XStringUtil.isBlank(value) ? 1 : Math.max(1, Integer.parseInt(value));
+    }
+
+    /**
+     * @return value of the console summary line: deviceId,time,container,metric,value,threshold,samples
+     */
+    static String toSummaryValue(ResultRecord record)
+    {
+        return String.format("%s,%d,%s,%s,%.2f,%.2f,%d",
+            record.deviceId,
+            record.time,
+            record.breach.container,
+            record.breach.metric,
+            record.breach.value,
+            record.breach.threshold,
+            record.breach.sampleCount);
+    }
+
+    /**
+     * @param time epoch milliseconds of the sample
+     * @return the breach record when a threshold is breached by this sample, otherwise null
+     */
+    ResultRecord check(long time, List<ContainerInfo> containerInfos)
+    {
+        for(ContainerInfo containerInfo : containerInfos)
+        {
+            final String key = SampleStore.containerKey(containerInfo.getId(), containerInfo.getName());
+            if(null == key)
+            {
+                continue;
+            }
+
+            ResultRecord breach = this.check(time, key, containerInfo.getName(), ResourceStats.METRIC_CPU, containerInfo.getCpuUsage(), this.cpuThreshold);
+            if(null == breach)
+            {
+                breach = this.check(time, key, containerInfo.getName(), ResourceStats.METRIC_RAM, containerInfo.getMemoryUsage(), this.ramThreshold);
+            }
+
+            if(null != breach)
+            {
+                return breach;
+            }
+        }
+
+        return null;
+    }
+
+    private ResultRecord check(long time, String key, String name, String metric, Double value, Double threshold)
+    {
+        if(null == threshold)
+        {
+            return null;
+        }
+
+        final String countKey = key + "/" + metric;
+        if(null == value || value <= threshold)
+        {
+            this.overCounts.remove(countKey);
+            return null;
+        }
+
+        final Integer count = this.overCounts.get(countKey);
+        final int overCount = null == count ? 1 : count + 1;
+        this.overCounts.put(countKey, overCount);
+        if(overCount < this.sampleCount)
+        {
+            return null;
+        }
+
+        ResultRecord.Breach breach = new ResultRecord.Breach();
+        breach.container = key;
+        breach.name = name;
+        breach.metric = metric;
+        breach.value = value;
+        breach.threshold = threshold;
+        breach.sampleCount = overCount;
+
+        return ResultRecord.breach(this.deviceId, time, breach);
+    }
+}
@@ -0,0 +1,400 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One line of the per-build results file. The record type tells which of
+ * the optional fields are present.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ResultRecord
+{
+    public static final String TYPE_LOOP = "loop";
+    public static final String TYPE_COLLECT = "collect";
+    // samples are kept in the SampleStore, only read from results files of earlier builds
+    public static final String TYPE_SAMPLE = "sample";
+    public static final String TYPE_COLLECT_END = "collectEnd";
+    public static final String TYPE_BREACH = "breach";
+    public static final String TYPE_INSTALL = "install";
+    public static final String TYPE_UNINSTALL = "uninstall";
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class DeviceLoop
+    {
+        @JsonProperty("deviceId")
+        public String deviceId;
+        @JsonProperty("total")
+        public int totalCount;
+        @JsonProperty("install")
+        public int installOKCount;
+        @JsonProperty("uninstall")
+        public int uninstallOKCount;
+        @JsonProperty("start")
+        public int startOKCount;
+        @JsonProperty("stop")
+        public int stopOKCount;
+
+        public static DeviceLoop from(LoopCounters counters)
+        {
+            DeviceLoop deviceLoop = new DeviceLoop();
+            deviceLoop.deviceId = counters.getDeviceId();
+            deviceLoop.totalCount = counters.getTotalCount();
+            deviceLoop.installOKCount = counters.getInstallOKCount();
+            deviceLoop.uninstallOKCount = counters.getUninstallOKCount();
+            deviceLoop.startOKCount = counters.getStartOKCount();
+            deviceLoop.stopOKCount = counters.getStopOKCount();
+
+            return deviceLoop;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class VersionLoop
+    {
+        @JsonProperty("appVersion")
+        public String appVersion;
+        @JsonProperty("total")
+        public int totalCount;
+        @JsonProperty("install")
+        public int installOKCount;
+        @JsonProperty("uninstall")
+        public int uninstallOKCount;
+        @JsonProperty("start")
+        public int startOKCount;
+        @JsonProperty("stop")
+        public int stopOKCount;
+        @JsonProperty("latencies")
+        public List<Latency> latencies = new ArrayList<>();
+
+        public static VersionLoop from(LoopCounters counters)
+        {
+            VersionLoop versionLoop = new VersionLoop();
+            versionLoop.appVersion = counters.getAppVersion();
+            versionLoop.totalCount = counters.getTotalCount();
+            versionLoop.installOKCount = counters.getInstallOKCount();
+            versionLoop.uninstallOKCount = counters.getUninstallOKCount();
+            versionLoop.startOKCount = counters.getStartOKCount();
+            versionLoop.stopOKCount = counters.getStopOKCount();
+            versionLoop.latencies = Latency.listOf(counters);
+
+            return versionLoop;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Latency
+    {
+        @JsonProperty("operation")
+        public String operation;
+        @JsonProperty("count")
+        public long count;
+        // milliseconds
+        @JsonProperty("min")
+        public double min;
+        @JsonProperty("mean")
+        public double mean;
+        @JsonProperty("p50")
+        public double p50;
+        @JsonProperty("p90")
+        public double p90;
+        @JsonProperty("p99")
+        public double p99;
+        @JsonProperty("max")
+        public double max;
+
+        public static Latency from(DemeterOperation operation, LatencyHistogram histogram)
+        {
+            Latency latency = new Latency();
+            latency.operation = operation.getMethodName();
+            latency.count = histogram.getCount();
+            latency.min = histogram.getMin() / 1000.;
+            latency.mean = histogram.getMean() / 1000.;
+            latency.p50 = histogram.getQuantile(0.5) / 1000.;
+            latency.p90 = histogram.getQuantile(0.9) / 1000.;
+            latency.p99 = histogram.getQuantile(0.99) / 1000.;
+            latency.max = histogram.getMax() / 1000.;
+
+            return latency;
+        }
+
+        public static List<Latency> listOf(LoopCounters counters)
+        {
+            List<Latency> latencies = new ArrayList<>();
+            for(DemeterOperation operation : DemeterOperation.values())
+            {
+                LatencyHistogram histogram = counters.getLatency(operation);
+                if(null != histogram && 0L < histogram.getCount())
+                {
+                    latencies.add(from(operation, histogram));
+                }
+            }
+
+            return latencies;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Usage
+    {
+        // key of the container in the sample store
+        @JsonProperty("container")
+        public String container;
+        @JsonProperty("name")
+        public String name;
+        // cpu, ram or storage
+        @JsonProperty("metric")
+        public String metric;
+        @JsonProperty("count")
+        public long count;
+        // percent
+        @JsonProperty("min")
+        public double min;
+        @JsonProperty("mean")
+        public double mean;
+        @JsonProperty("variance")
+        public double variance;
+        @JsonProperty("p50")
+        public double p50;
+        @JsonProperty("p95")
+        public double p95;
+        @JsonProperty("max")
+        public double max;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Breach
+    {
+        // key of the container in the sample store
+        @JsonProperty("container")
+        public String container;
+        @JsonProperty("name")
+        public String name;
+        // cpu or ram
+        @JsonProperty("metric")
+        public String metric;
+        // percent
+        @JsonProperty("value")
+        public double value;
+        @JsonProperty("threshold")
+        public double threshold;
+        // consecutive samples above the threshold
+        @JsonProperty("samples")
+        public int sampleCount;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Container
+    {
+        @JsonProperty("id")
+        public String id;
+        @JsonProperty("name")
+        public String name;
+        // percent
+        @JsonProperty("cpu")
+        public Double cpu;
+        @JsonProperty("ram")
+        public Double ram;
+        @JsonProperty("storage")
+        public Double storage;
+
+        public static Container from(ContainerInfo containerInfo)
+        {
+            Container container = new Container();
+            container.id = containerInfo.getId();
+            container.name = containerInfo.getName();
+            container.cpu = containerInfo.getCpuUsage();
+            container.ram = containerInfo.getMemoryUsage();
+            container.storage = containerInfo.getStorageUsage();
+
+            return container;
+        }
+    }
+
+    @JsonProperty("type")
+    public String type;
+    // epoch milliseconds
+    @JsonProperty("time")
+    public long time;
+
+    @JsonProperty("deviceId")
+    public String deviceId;
+    @JsonProperty("appPublisher")
+    public String appPublisher;
+    @JsonProperty("appName")
+    public String appName;
+    @JsonProperty("appVersion")
+    public String appVersion;
+
+    // install, uninstall
+    @JsonProperty("ok")
+    public Boolean ok;
+    @JsonProperty("message")
+    public String message;
+
+    // loop
+    @JsonProperty("total")
+    public Integer totalCount;
+    @JsonProperty("install")
+    public Integer installOKCount;
+    @JsonProperty("uninstall")
+    public Integer uninstallOKCount;
+    @JsonProperty("start")
+    public Integer startOKCount;
+    @JsonProperty("stop")
+    public Integer stopOKCount;
+    @JsonProperty("devices")
+    public List<DeviceLoop> devices;
+    @JsonProperty("latencies")
+    public List<Latency> latencies;
+    // only when several App versions were interleaved
+    @JsonProperty("versions")
+    public List<VersionLoop> versions;
+
+    // sample
+    @JsonProperty("containers")
+    public List<Container> containers;
+
+    // collectEnd
+    @JsonProperty("planned")
+    public Long plannedCount;
+    @JsonProperty("taken")
+    public Long takenCount;
+    @JsonProperty("late")
+    public Long lateCount;
+    @JsonProperty("missed")
+    public Long missedCount;
+    // milliseconds
+    @JsonProperty("maxDelay")
+    public Long maxDelayMillis;
+    @JsonProperty("usages")
+    public List<Usage> usages;
+
+    // breach, the time is the one of the sample breaching the threshold
+    @JsonProperty("breach")
+    public Breach breach;
+
+    public ResultRecord()
+    {
+    }
+
+    public ResultRecord(String type)
+    {
+        this.type = type;
+        this.time = System.currentTimeMillis();
+    }
+
+    public static ResultRecord loop(
+            String appPublisher,
+            String appName,
+            String appVersion,
+            LoopCounters summary,
+            List<LoopCounters> devices,
+            List<LoopCounters> versions)
+    {
+        ResultRecord record = new ResultRecord(TYPE_LOOP);
+        record.appPublisher = appPublisher;
+        record.appName = appName;
+        record.appVersion = appVersion;
+        record.totalCount = summary.getTotalCount();
+        record.installOKCount = summary.getInstallOKCount();
+        record.uninstallOKCount = summary.getUninstallOKCount();
+        record.startOKCount = summary.getStartOKCount();
+        record.stopOKCount = summary.getStopOKCount();
+
+        record.devices = new ArrayList<>();
+        for(LoopCounters counters : devices)
+        {
+            record.devices.add(DeviceLoop.from(counters));
+        }
+
+        record.latencies = Latency.listOf(summary);
+
+        if(false == versions.isEmpty())
+        {
+            record.versions = new ArrayList<>();
+            for(LoopCounters counters : versions)
+            {
+                record.versions.add(VersionLoop.from(counters));
+            }
+        }
+
+        return record;
+    }
+
+    public static ResultRecord collect(
+            String deviceId,
+            String appPublisher,
+            String appName,
+            String appVersion)
+    {
+        ResultRecord record = new ResultRecord(TYPE_COLLECT);
+        record.deviceId = deviceId;
+        record.appPublisher = appPublisher;
+        record.appName = appName;
+        record.appVersion = appVersion;
+
+        return record;
+    }
+
+    public static ResultRecord collectEnd(
+            String deviceId,
+            SampleClock clock,
+            List<Usage> usages)
+    {
+        ResultRecord record = new ResultRecord(TYPE_COLLECT_END);
+        record.deviceId = deviceId;
+        record.plannedCount = clock.getPlannedCount();
+        record.takenCount = clock.getTakenCount();
+        record.lateCount = clock.getLateCount();
+        record.missedCount = clock.getMissedCount();
+        record.maxDelayMillis = clock.getMaxDelayMillis();
+        record.usages = usages;
+
+        return record;
+    }
+
+    public static ResultRecord breach(
+            String deviceId,
+            long time,
+            Breach breach)
+    {
+        ResultRecord record = new ResultRecord(TYPE_BREACH);
+        record.time = time;
+        record.deviceId = deviceId;
+        record.breach = breach;
+
+        return record;
+    }
+
+    public static ResultRecord step(
+            String type,
+            String deviceId,
+            String appPublisher,
+            String appName,
+            String appVersion,
+            boolean ok,
+            String message)
+    {
+        ResultRecord record = new ResultRecord(type);
+        record.deviceId = deviceId;
+        record.appPublisher = appPublisher;
+        record.appName = appName;
+        record.appVersion = appVersion;
+        record.ok = ok;
+        record.message = message;
+
+        return record;
+    }
+}
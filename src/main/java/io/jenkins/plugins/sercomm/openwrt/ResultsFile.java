@@ -0,0 +1,68 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sercomm.commons.util.Json;
+import com.sercomm.commons.util.XStringUtil;
+
+import hudson.model.Run;
+
+/**
+ * Typed results of a build, one JSON document per line, kept next to the
+ * build log so the report publisher does not have to scrape the console.
+ */
+public class ResultsFile
+{
+    public static final String FILE_NAME = "openwrt-results.jsonl";
+
+    private static final Object LOCK = new Object();
+
+    public static File getFile(Run<?, ?> run)
+    {
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+
+    public static void append(Run<?, ?> run, ResultRecord record)
+    throws IOException
+    {
+        final byte[] line = (Json.mapper().writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized(LOCK)
+        {
+            try(OutputStream outputStream = new FileOutputStream(getFile(run), true))
+            {
+                outputStream.write(line);
+            }
+        }
+    }
+
+    public static List<ResultRecord> read(File file)
+    throws IOException
+    {
+        List<ResultRecord> records = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)))
+        {
+            String line = null;
+            while((line = reader.readLine()) != null)
+            {
+                if(XStringUtil.isBlank(line))
+                {
+                    continue;
+                }
+
+                records.add(Json.mapper().readValue(line, ResultRecord.class));
+            }
+        }
+
+        return records;
+    }
+}
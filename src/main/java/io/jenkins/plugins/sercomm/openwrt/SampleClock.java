@@ -0,0 +1,151 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+/**
+ * Fixed-rate schedule of a resource collection. Sample #n is due exactly
+ * n periods after the collection started, measured on the monotonic clock,
+ * so the time a request takes never shifts the samples after it. A sample
+ * starting more than a tenth of a period behind is counted as late, a
+ * sample whose whole period has passed before it could start is skipped
+ * and counted as missed. The period may change between two samples, the
+ * next sample is then due one new period after the last one.
+ * <p>
+ * A sample is recorded with the time it actually started, read from the
+ * monotonic clock and converted through the epoch time of the beginning, so
+ * a late sample is charted where it was taken and a wall clock stepping
+ * meanwhile moves no sample. The due times only serve the accounting.
+ */
+class SampleClock
+{
+    private final long beginNanos;
+    // epoch milliseconds of the beginning, the time of each sample is converted through it
+    private final long beginTime;
+    private final long durationNanos;
+
+    private long periodNanos;
+    private long toleranceNanos;
+    // offsets from the beginning, the first sample is due one period after the beginning
+    private long lastDueNanos = 0L;
+    private long nextDueNanos;
+
+    private long takenCount = 0L;
+    private long lateCount = 0L;
+    private long missedCount = 0L;
+    private long maxDelayNanos = 0L;
+
+    SampleClock(long periodMillis, long durationMillis)
+    {
+        this(periodMillis, durationMillis, 0L);
+    }
+
+    /**
+     * Continues a collection of which some time was spent before a restart,
+     * the samples due while the controller was down are counted as missed
+     */
+    SampleClock(long periodMillis, long durationMillis, long elapsedMillis)
+    {
+        this.beginNanos = System.nanoTime() - elapsedMillis * 1000000L;
+        this.beginTime = System.currentTimeMillis() - elapsedMillis;
+        this.durationNanos = durationMillis * 1000000L;
+        this.setPeriod(periodMillis);
+        this.nextDueNanos = this.periodNanos;
+    }
+
+    /**
+     * Changes the time between the last sample and the next one
+     */
+    synchronized void setPeriodMillis(long periodMillis)
+    {
+        this.setPeriod(periodMillis);
+        this.nextDueNanos = this.lastDueNanos + this.periodNanos;
+    }
+
+    synchronized long getPeriodMillis()
+    {
+        return this.periodNanos / 1000000L;
+    }
+
+    /**
+     * @return milliseconds until the next sample is due, -1 when the collection is over
+     */
+    synchronized long nextDelayMillis()
+    {
+        final long now = System.nanoTime();
+
+        // skip every sample of which the whole period is over
+        while(this.nextDueNanos <= this.durationNanos && now - (this.beginNanos + this.nextDueNanos + this.periodNanos) >= 0L)
+        {
+            this.missedCount ++;
+            this.nextDueNanos += this.periodNanos;
+        }
+
+        if(this.nextDueNanos > this.durationNanos)
+        {
+            return -1L;
+        }
+
+        return Math.max(0L, (this.beginNanos + this.nextDueNanos - now) / 1000000L);
+    }
+
+    /**
+     * Claims the sample that is due
+     *
+     * @return the time it starts in epoch milliseconds, which is the time recorded with the sample
+     */
+    synchronized long beginSample()
+    {
+        final long now = System.nanoTime();
+        final long dueNanos = this.nextDueNanos;
+        this.lastDueNanos = dueNanos;
+        this.nextDueNanos += this.periodNanos;
+        final long delayNanos = Math.max(0L, now - (this.beginNanos + dueNanos));
+
+        this.takenCount ++;
+        if(delayNanos > this.toleranceNanos)
+        {
+            this.lateCount ++;
+        }
+        this.maxDelayNanos = Math.max(this.maxDelayNanos, delayNanos);
+
+        return this.beginTime + (now - this.beginNanos) / 1000000L;
+    }
+
+    /**
+     * @return samples taken and missed so far plus those still due at the current period
+     */
+    synchronized long getPlannedCount()
+    {
+        long remainingCount = 0L;
+        if(this.nextDueNanos <= this.durationNanos)
+        {
+            remainingCount = (this.durationNanos - this.nextDueNanos) / this.periodNanos + 1L;
+        }
+
+        return this.takenCount + this.missedCount + remainingCount;
+    }
+
+    synchronized long getTakenCount()
+    {
+        return this.takenCount;
+    }
+
+    synchronized long getLateCount()
+    {
+        return this.lateCount;
+    }
+
+    synchronized long getMissedCount()
+    {
+        return this.missedCount;
+    }
+
+    synchronized long getMaxDelayMillis()
+    {
+        return this.maxDelayNanos / 1000000L;
+    }
+
+    private void setPeriod(long periodMillis)
+    {
+        this.periodNanos = Math.max(1L, periodMillis) * 1000000L;
+        this.toleranceNanos = this.periodNanos / 10L;
+    }
+}
@@ -0,0 +1,738 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hudson.model.Run;
+
+/**
+ * Collected resource samples of a build in a compact binary file next to the
+ * build log. Samples are appended in chunks, each chunk holds a run of
+ * samples of one DUT as columns: the delta-encoded sample times followed by
+ * one float column per metric per container.
+ *
+ * <pre>
+ * file   := MAGIC VERSION frame*
+ * frame  := type:byte length:int payload
+ * 'D'    := deviceIndex:short deviceId:utf
+ * 'K'    := containerIndex:short deviceIndex:short key:utf name:utf
+ * 'C'    := deviceIndex:short count:short firstTime:long delta:zigzag{count-1}
+ *           containerCount:short (containerIndex:short cpu:float{count} ram:float{count} storage:float{count})*
+ * 'P'    := (loop:varint phase:byte){count}
+ * 'I'    := interval:varint{count}
+ * </pre>
+ *
+ * The 'D' and 'K' frames make up the index of the series, each one is
+ * written right before the first chunk using it. A 'P' frame follows the
+ * chunk of samples taken while looping and tags each of them with the loop
+ * and its {@link LoopPhase}. An 'I' frame follows the chunk of an adaptive
+ * collection and holds the milliseconds each sample was scheduled after the
+ * previous one. A value the DUT did not report is stored as
+ * NaN. A frame cut short by a crash ends the file.
+ * <p>
+ * The time deltas are zigzag encoded since version 2, the wall clock the
+ * samples are taken by may step backwards. Version 1 stores wrote them
+ * unsigned, clamped to 0, and are still continued that way.
+ */
+public class SampleStore
+{
+    public static final String FILE_NAME = "openwrt-samples.bin";
+
+    private static final int MAGIC = 0x4F575331; // "OWS1"
+    private static final byte VERSION = 2;
+    // MAGIC and VERSION
+    private static final long HEADER_LENGTH = 5L;
+
+    private static final byte FRAME_DEVICE = 'D';
+    private static final byte FRAME_CONTAINER = 'K';
+    private static final byte FRAME_CHUNK = 'C';
+    private static final byte FRAME_PHASES = 'P';
+    private static final byte FRAME_INTERVALS = 'I';
+
+    // samples of one chunk, a chunk is also written when its first sample gets old
+    static final int CHUNK_SIZE = 16;
+    static final long CHUNK_AGE_MILLIS = 60L * 1000L;
+
+    private static final Object LOCK = new Object();
+    // indexes already written to each open file, guarded by LOCK
+    private static final Map<File, Index> INDEXES = new HashMap<>();
+
+    /**
+     * Samples of one DUT not written yet. Not thread safe, the owner
+     * synchronizes.
+     */
+    static final class Chunk
+    {
+        private final String deviceId;
+        private final long[] times = new long[CHUNK_SIZE];
+        // loop tags, only when sampled while looping
+        private final int[] loops = new int[CHUNK_SIZE];
+        private final byte[] phases = new byte[CHUNK_SIZE];
+        private boolean tagged = false;
+        // sampling periods, only when the period is adaptive
+        private final long[] intervals = new long[CHUNK_SIZE];
+        private boolean timed = false;
+        private final Map<String, Column> columns = new LinkedHashMap<>();
+        private int count = 0;
+
+        Chunk(String deviceId)
+        {
+            this.deviceId = deviceId;
+        }
+
+        void add(long time, List<ContainerInfo> containerInfos)
+        {
+            final int row = this.count ++;
+            this.times[row] = time;
+            for(ContainerInfo containerInfo : containerInfos)
+            {
+                final String key = containerKey(containerInfo.getId(), containerInfo.getName());
+                if(null == key)
+                {
+                    continue;
+                }
+
+                Column column = this.columns.get(key);
+                if(null == column)
+                {
+                    column = new Column(containerInfo.getName());
+                    this.columns.put(key, column);
+                }
+
+                // NaN stays NaN, a usage not reported is written as such
+                column.cpu[row] = (float) containerInfo.getCpuUsageValue();
+                column.ram[row] = (float) containerInfo.getMemoryUsageValue();
+                column.storage[row] = (float) containerInfo.getStorageUsageValue();
+            }
+        }
+
+        /**
+         * Adds a sample taken while the DUT is looping
+         */
+        void add(long time, List<ContainerInfo> containerInfos, int loop, LoopPhase phase)
+        {
+            final int row = this.count;
+            this.add(time, containerInfos);
+            this.loops[row] = loop;
+            this.phases[row] = (byte) phase.getCode();
+            this.tagged = true;
+        }
+
+        /**
+         * Adds a sample of an adaptive collection
+         *
+         * @param intervalMillis time the sample was scheduled after the previous one
+         */
+        void add(long time, List<ContainerInfo> containerInfos, long intervalMillis)
+        {
+            final int row = this.count;
+            this.add(time, containerInfos);
+            this.intervals[row] = intervalMillis;
+            this.timed = true;
+        }
+
+        boolean isEmpty()
+        {
+            return 0 == this.count;
+        }
+
+        boolean isFull()
+        {
+            return CHUNK_SIZE == this.count;
+        }
+
+        /**
+         * @return true if the first sample waits longer than a chunk may
+         */
+        boolean isStale(long now)
+        {
+            return 0 < this.count && now - this.times[0] >= CHUNK_AGE_MILLIS;
+        }
+
+        void clear()
+        {
+            this.count = 0;
+            this.columns.clear();
+            this.tagged = false;
+            this.timed = false;
+        }
+    }
+
+    private static final class Column
+    {
+        private final String name;
+        private final float[] cpu = newColumn();
+        private final float[] ram = newColumn();
+        private final float[] storage = newColumn();
+
+        Column(String name)
+        {
+            this.name = null == name ? "" : name;
+        }
+
+        private static float[] newColumn()
+        {
+            float[] values = new float[CHUNK_SIZE];
+            Arrays.fill(values, Float.NaN);
+            return values;
+        }
+    }
+
+    private static final class Index
+    {
+        // of the file being continued
+        private int version = VERSION;
+        private final Map<String, Integer> devices = new HashMap<>();
+        // "deviceIndex/containerKey"
+        private final Map<String, Integer> containers = new HashMap<>();
+    }
+
+    public static File getFile(Run<?, ?> run)
+    {
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * Appends the chunk to the store of the run, the chunk is cleared afterwards
+     */
+    static void append(Run<?, ?> run, Chunk chunk)
+    throws IOException
+    {
+        append(getFile(run), chunk);
+    }
+
+    static void append(File file, Chunk chunk)
+    throws IOException
+    {
+        if(chunk.isEmpty())
+        {
+            return;
+        }
+
+        synchronized(LOCK)
+        {
+            Index index = INDEXES.get(file);
+            if(null == index)
+            {
+                // continues a store written before a restart or by another collection of the build
+                index = readIndex(file);
+                INDEXES.put(file, index);
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(buffer);
+            if(false == file.exists() || 0L == file.length())
+            {
+                output.writeInt(MAGIC);
+                output.writeByte(VERSION);
+            }
+
+            Integer deviceIndex = index.devices.get(chunk.deviceId);
+            if(null == deviceIndex)
+            {
+                deviceIndex = index.devices.size();
+                index.devices.put(chunk.deviceId, deviceIndex);
+
+                ByteArrayOutputStream frame = new ByteArrayOutputStream();
+                DataOutputStream payload = new DataOutputStream(frame);
+                payload.writeShort(deviceIndex);
+                payload.writeUTF(chunk.deviceId);
+                writeFrame(output, FRAME_DEVICE, frame);
+            }
+
+            List<Integer> containerIndexes = new ArrayList<>();
+            for(Map.Entry<String, Column> entry : chunk.columns.entrySet())
+            {
+                final String containerId = deviceIndex + "/" + entry.getKey();
+                Integer containerIndex = index.containers.get(containerId);
+                if(null == containerIndex)
+                {
+                    containerIndex = index.containers.size();
+                    index.containers.put(containerId, containerIndex);
+
+                    ByteArrayOutputStream frame = new ByteArrayOutputStream();
+                    DataOutputStream payload = new DataOutputStream(frame);
+                    payload.writeShort(containerIndex);
+                    payload.writeShort(deviceIndex);
+                    payload.writeUTF(entry.getKey());
+                    payload.writeUTF(entry.getValue().name);
+                    writeFrame(output, FRAME_CONTAINER, frame);
+                }
+                containerIndexes.add(containerIndex);
+            }
+
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(frame);
+            payload.writeShort(deviceIndex);
+            payload.writeShort(chunk.count);
+            payload.writeLong(chunk.times[0]);
+            for(int row = 1; row < chunk.count; row ++)
+            {
+                final long delta = chunk.times[row] - chunk.times[row - 1];
+                if(1 == index.version)
+                {
+                    writeVarLong(payload, Math.max(0L, delta));
+                }
+                else
+                {
+                    writeZigZagLong(payload, delta);
+                }
+            }
+
+            payload.writeShort(chunk.columns.size());
+            int idx = 0;
+            for(Column column : chunk.columns.values())
+            {
+                payload.writeShort(containerIndexes.get(idx ++));
+                writeColumn(payload, column.cpu, chunk.count);
+                writeColumn(payload, column.ram, chunk.count);
+                writeColumn(payload, column.storage, chunk.count);
+            }
+            writeFrame(output, FRAME_CHUNK, frame);
+
+            if(chunk.tagged)
+            {
+                frame = new ByteArrayOutputStream();
+                payload = new DataOutputStream(frame);
+                for(int row = 0; row < chunk.count; row ++)
+                {
+                    writeVarLong(payload, chunk.loops[row]);
+                    payload.writeByte(chunk.phases[row]);
+                }
+                writeFrame(output, FRAME_PHASES, frame);
+            }
+
+            if(chunk.timed)
+            {
+                frame = new ByteArrayOutputStream();
+                payload = new DataOutputStream(frame);
+                for(int row = 0; row < chunk.count; row ++)
+                {
+                    writeVarLong(payload, chunk.intervals[row]);
+                }
+                writeFrame(output, FRAME_INTERVALS, frame);
+            }
+
+            output.flush();
+            try(FileOutputStream outputStream = new FileOutputStream(file, true))
+            {
+                buffer.writeTo(outputStream);
+            }
+        }
+
+        chunk.clear();
+    }
+
+    /**
+     * Forgets the index of the run, the next append reads it back from the file
+     */
+    static void release(Run<?, ?> run)
+    {
+        release(getFile(run));
+    }
+
+    static void release(File file)
+    {
+        synchronized(LOCK)
+        {
+            INDEXES.remove(file);
+        }
+    }
+
+    /**
+     * @return samples of each DUT in the order they were taken
+     */
+    public static Map<String, List<ReportModel.Sample>> read(File file)
+    throws IOException
+    {
+        return new Tail().read(file);
+    }
+
+    /**
+     * Reads a store while it is still written. Each read continues at the
+     * byte offset the previous one stopped at and returns only the samples
+     * of the complete frames appended since, a frame still being written is
+     * read by the next call. Not thread safe, the owner synchronizes.
+     */
+    static final class Tail
+    {
+        // bytes of the header and the complete frames read so far
+        private long offset = 0L;
+        private int version = VERSION;
+        private final List<String> deviceIds = new ArrayList<>();
+        private final List<String[]> containers = new ArrayList<>();
+        // samples of the last chunk, tagged by the 'P' and 'I' frames following it, possibly in a later read
+        private List<ReportModel.Sample> lastSamples = new ArrayList<>();
+
+        /**
+         * @return samples of each DUT appended since the last read, in the order they were taken
+         */
+        Map<String, List<ReportModel.Sample>> read(File file)
+        throws IOException
+        {
+            final Map<String, List<ReportModel.Sample>> samples = new LinkedHashMap<>();
+            if(false == file.exists() || file.length() <= this.offset)
+            {
+                return samples;
+            }
+
+            try(FileInputStream fileInput = new FileInputStream(file))
+            {
+                fileInput.getChannel().position(this.offset);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(fileInput));
+                if(0L == this.offset)
+                {
+                    final int fileVersion = readHeader(input);
+                    if(0 == fileVersion)
+                    {
+                        return samples;
+                    }
+                    this.version = fileVersion;
+                    this.offset = HEADER_LENGTH;
+                }
+
+                byte[] frame;
+                while(null != (frame = readFrame(input)))
+                {
+                    this.offset += 4L + frame.length;
+                    this.accept(frame, samples);
+                }
+            }
+
+            return samples;
+        }
+
+        private void accept(byte[] frame, Map<String, List<ReportModel.Sample>> samples)
+        throws IOException
+        {
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1));
+            switch(frame[0])
+            {
+                case FRAME_DEVICE:
+                {
+                    final int deviceIndex = payload.readUnsignedShort();
+                    setAt(this.deviceIds, deviceIndex, payload.readUTF());
+                    break;
+                }
+                case FRAME_CONTAINER:
+                {
+                    final int containerIndex = payload.readUnsignedShort();
+                    payload.readUnsignedShort();
+                    final String key = payload.readUTF();
+                    final String name = payload.readUTF();
+                    setAt(this.containers, containerIndex, new String[] { key, name });
+                    break;
+                }
+                case FRAME_CHUNK:
+                {
+                    final String deviceId = this.deviceIds.get(payload.readUnsignedShort());
+                    final int count = payload.readUnsignedShort();
+                    final long[] times = new long[count];
+                    times[0] = payload.readLong();
+                    for(int row = 1; row < count; row ++)
+                    {
+                        times[row] = times[row - 1] + (1 == this.version ? readVarLong(payload) : readZigZagLong(payload));
+                    }
+
+                    List<ReportModel.Sample> chunkSamples = new ArrayList<>(count);
+                    for(int row = 0; row < count; row ++)
+                    {
+                        chunkSamples.add(new ReportModel.Sample(times[row], new ArrayList<>()));
+                    }
+
+                    final int containerCount = payload.readUnsignedShort();
+                    for(int column = 0; column < containerCount; column ++)
+                    {
+                        final String[] container = this.containers.get(payload.readUnsignedShort());
+                        final float[] cpu = readColumn(payload, count);
+                        final float[] ram = readColumn(payload, count);
+                        final float[] storage = readColumn(payload, count);
+                        for(int row = 0; row < count; row ++)
+                        {
+                            if(Float.isNaN(cpu[row]) && Float.isNaN(ram[row]) && Float.isNaN(storage[row]))
+                            {
+                                // not in this sample
+                                continue;
+                            }
+
+                            ResultRecord.Container item = new ResultRecord.Container();
+                            item.id = container[0];
+                            item.name = container[1];
+                            item.cpu = toDouble(cpu[row]);
+                            item.ram = toDouble(ram[row]);
+                            item.storage = toDouble(storage[row]);
+                            chunkSamples.get(row).containers.add(item);
+                        }
+                    }
+
+                    samples.computeIfAbsent(deviceId, key -> new ArrayList<>()).addAll(chunkSamples);
+                    this.lastSamples = chunkSamples;
+                    break;
+                }
+                case FRAME_PHASES:
+                {
+                    for(ReportModel.Sample sample : this.lastSamples)
+                    {
+                        sample.loop = (int) readVarLong(payload);
+                        final LoopPhase phase = LoopPhase.fromCode(payload.readUnsignedByte());
+                        sample.phase = null == phase ? null : phase.getLabel();
+                    }
+                    break;
+                }
+                case FRAME_INTERVALS:
+                {
+                    for(ReportModel.Sample sample : this.lastSamples)
+                    {
+                        sample.interval = readVarLong(payload);
+                    }
+                    break;
+                }
+                default:
+                    // frames of a later version
+                    break;
+            }
+        }
+    }
+
+    static String containerKey(String id, String name)
+    {
+        if(null != id && false == id.trim().isEmpty())
+        {
+            return id;
+        }
+
+        return null != name && false == name.trim().isEmpty() ? name : null;
+    }
+
+    private static Index readIndex(File file)
+    throws IOException
+    {
+        Index index = new Index();
+        if(false == file.exists() || 0L == file.length())
+        {
+            return index;
+        }
+
+        if(file.length() < HEADER_LENGTH && isHeaderPrefix(Files.readAllBytes(file.toPath())))
+        {
+            // the first append was cut short by a crash before the header was complete, nothing was stored
+            try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+            {
+                randomAccessFile.setLength(0L);
+            }
+            return index;
+        }
+
+        // bytes of the header and the complete frames
+        long validLength;
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))
+        {
+            final int fileVersion = readHeader(input);
+            if(0 == fileVersion)
+            {
+                // written by a later version or damaged, left as it is rather than truncated
+                throw new IOException("UNKNOWN SAMPLE STORE: " + file.getName());
+            }
+            index.version = fileVersion;
+            validLength = HEADER_LENGTH;
+
+            for(byte[] frame = readFrame(input); null != frame; frame = readFrame(input))
+            {
+                validLength += 4L + frame.length;
+
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1));
+                if(FRAME_DEVICE == frame[0])
+                {
+                    final int deviceIndex = payload.readUnsignedShort();
+                    index.devices.put(payload.readUTF(), deviceIndex);
+                }
+                else if(FRAME_CONTAINER == frame[0])
+                {
+                    final int containerIndex = payload.readUnsignedShort();
+                    final int deviceIndex = payload.readUnsignedShort();
+                    index.containers.put(deviceIndex + "/" + payload.readUTF(), containerIndex);
+                }
+            }
+        }
+
+        if(file.length() > validLength)
+        {
+            // drop a frame cut short by a crash, the frames appended next would be unreadable after it
+            try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+            {
+                randomAccessFile.setLength(validLength);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * @return whether the bytes are the beginning of the header a new store starts with
+     */
+    private static boolean isHeaderPrefix(byte[] bytes)
+    {
+        final byte[] header = new byte[] { (byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION };
+        for(int idx = 0; idx < bytes.length; idx ++)
+        {
+            if(idx >= header.length || header[idx] != bytes[idx])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return version of the store, 0 when the file is not one this version can read
+     */
+    private static int readHeader(DataInputStream input)
+    throws IOException
+    {
+        try
+        {
+            if(MAGIC != input.readInt())
+            {
+                return 0;
+            }
+
+            final int version = input.readByte();
+            return 0 < version && version <= VERSION ? version : 0;
+        }
+        catch(EOFException e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the frame type followed by its payload, null at the end of the file
+     */
+    private static byte[] readFrame(DataInputStream input)
+    throws IOException
+    {
+        try
+        {
+            final byte type = input.readByte();
+            final int length = input.readInt();
+            byte[] frame = new byte[length + 1];
+            frame[0] = type;
+            input.readFully(frame, 1, length);
+            return frame;
+        }
+        catch(EOFException e)
+        {
+            // the end of the file, or a frame cut short by a crash
+            return null;
+        }
+    }
+
+    private static void writeFrame(DataOutputStream output, byte type, ByteArrayOutputStream frame)
+    throws IOException
+    {
+        output.writeByte(type);
+        output.writeInt(frame.size());
+        frame.writeTo(output);
+    }
+
+    static void writeColumn(DataOutputStream output, float[] values, int count)
+    throws IOException
+    {
+        for(int row = 0; row < count; row ++)
+        {
+            output.writeFloat(values[row]);
+        }
+    }
+
+    static float[] readColumn(DataInputStream input, int count)
+    throws IOException
+    {
+        float[] values = new float[count];
+        for(int row = 0; row < count; row ++)
+        {
+            values[row] = input.readFloat();
+        }
+
+        return values;
+    }
+
+    /**
+     * Unsigned LEB128, for values which are never negative
+     */
+    static void writeVarLong(DataOutputStream output, long value)
+    throws IOException
+    {
+        long remaining = value;
+        while(0L != (remaining & ~0x7FL))
+        {
+            output.writeByte((int) ((remaining & 0x7FL) | 0x80L));
+            remaining >>>= 7;
+        }
+        output.writeByte((int) remaining);
+    }
+
+    static long readVarLong(DataInputStream input)
+    throws IOException
+    {
+        long value = 0L;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if(0 == (b & 0x80))
+            {
+                break;
+            }
+        }
+
+        return value;
+    }
+
+    static Double toDouble(float value)
+    {
+        // values are stored with two decimals
+        return Float.isNaN(value) ? null : Math.round(value * 100.) / 100.;
+    }
+
+    private static <T> void setAt(List<T> list, int index, T value)
+    {
+        while(list.size() <= index)
+        {
+            list.add(null);
+        }
+        list.set(index, value);
+    }
+
+    /**
+     * Zigzag encoded LEB128, small values of either sign take few bytes
+     */
+    static void writeZigZagLong(DataOutputStream output, long value)
+    throws IOException
+    {
+        writeVarLong(output, (value << 1) ^ (value >> 63));
+    }
+
+    static long readZigZagLong(DataInputStream input)
+    throws IOException
+    {
+        final long value = readVarLong(input);
+        return (value >>> 1) ^ -(value & 1L);
+    }
+}
@@ -0,0 +1,174 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sercomm.commons.util.DateTime;
+
+/**
+ * Shared stop condition of a time-boxed soak run. Every DUT keeps looping
+ * until the duration elapses or the build wide failure budget is used up,
+ * whichever comes first. Also writes the periodic checkpoint summaries.
+ */
+class SoakControl
+{
+    private final long beginTime;
+    private final long deadline;
+    private final int failureBudget;
+    private final long checkpointNanos;
+
+    private final AtomicInteger failureCount = new AtomicInteger(0);
+    private volatile String stopReason = null;
+
+    // totals of the previous checkpoint, only touched by the thread writing checkpoints
+    private long lastCheckpointTime;
+    private int lastTotalCount = 0;
+    private int lastCompletedCount = 0;
+
+    /**
+     * @param durationMillis wall-clock time to keep looping
+     * @param failureBudget number of failed loops that stops the run, 0 means unlimited
+     * @param checkpointMillis interval of the checkpoint summaries
+     */
+    SoakControl(long durationMillis, int failureBudget, long checkpointMillis)
+    {
+        this(durationMillis, failureBudget, checkpointMillis, 0L, 0);
+    }
+
+    /**
+     * Continues a soak of which some time and failures were spent before a restart
+     */
+    SoakControl(
+            long durationMillis, 
+            int failureBudget, 
+            long checkpointMillis,
+            long elapsedMillis,
+            int failureCount)
+    {
+        final long now = System.nanoTime();
+        this.beginTime = now - elapsedMillis * 1000000L;
+        this.deadline = this.beginTime + durationMillis * 1000000L;
+        this.failureBudget = failureBudget;
+        this.checkpointNanos = checkpointMillis * 1000000L;
+        this.lastCheckpointTime = now;
+        this.failureCount.set(failureCount);
+        if(0 < this.failureBudget && failureCount >= this.failureBudget)
+        {
+            this.stopReason = "failure budget used up (" + failureCount + " failed loops)";
+        }
+    }
+
+    boolean isExhausted()
+    {
+        if(null != this.stopReason)
+        {
+            return true;
+        }
+
+        if(System.nanoTime() - this.deadline >= 0L)
+        {
+            this.stopReason = "duration elapsed";
+            return true;
+        }
+
+        return false;
+    }
+
+    void recordFailure()
+    {
+        final int count = this.failureCount.incrementAndGet();
+        if(0 < this.failureBudget && count >= this.failureBudget)
+        {
+            this.stopReason = "failure budget used up (" + count + " failed loops)";
+        }
+    }
+
+    long getElapsedMillis()
+    {
+        return (System.nanoTime() - this.beginTime) / 1000000L;
+    }
+
+    /**
+     * Starts the checkpoint window at the given totals, e.g. those restored from a previous session
+     */
+    void resetWindow(List<LoopCounters> counters)
+    {
+        this.lastTotalCount = 0;
+        this.lastCompletedCount = 0;
+        for(LoopCounters item : counters)
+        {
+            this.lastTotalCount += item.getTotalCount();
+            this.lastCompletedCount += item.getUninstallOKCount();
+        }
+    }
+
+    int getFailureCount()
+    {
+        return this.failureCount.get();
+    }
+
+    String getStopReason()
+    {
+        return this.stopReason;
+    }
+
+    /**
+     * Milliseconds until the next checkpoint is due
+     */
+    long getCheckpointDelayMillis()
+    {
+        final long next = this.lastCheckpointTime + this.checkpointNanos;
+        return Math.max(1L, (next - System.nanoTime()) / 1000000L);
+    }
+
+    /**
+     * Writes the loop rate and the success rate since the previous checkpoint.
+     * Counters are read while the runners are still writing them, so the
+     * figures may be one loop behind.
+     */
+    void writeCheckpoint(PrintStream logger, List<LoopCounters> counters)
+    {
+        final long now = System.nanoTime();
+
+        int totalCount = 0;
+        int completedCount = 0;
+        for(LoopCounters item : counters)
+        {
+            totalCount += item.getTotalCount();
+            completedCount += item.getUninstallOKCount();
+        }
+
+        final double elapsedHours = (now - this.beginTime) / 3600e9;
+        final double windowHours = (now - this.lastCheckpointTime) / 3600e9;
+        final int windowTotalCount = totalCount - this.lastTotalCount;
+        final int windowCompletedCount = completedCount - this.lastCompletedCount;
+
+        logger.printf("%s - [NOTICE] soak checkpoint: %d loops in %.2f hours, %.1f loops/hour, " +
+                "success rate %s (last %.2f hours: %d loops, %.1f loops/hour, success rate %s), %d failed loops%n",
+            DateTime.now().toString(DateTime.FORMAT_ISO_MS),
+            totalCount,
+            elapsedHours,
+            0. < elapsedHours ? totalCount / elapsedHours : 0.,
+            formatRate(completedCount, totalCount),
+            windowHours,
+            windowTotalCount,
+            0. < windowHours ? windowTotalCount / windowHours : 0.,
+            formatRate(windowCompletedCount, windowTotalCount),
+            this.failureCount.get());
+
+        this.lastCheckpointTime = now;
+        this.lastTotalCount = totalCount;
+        this.lastCompletedCount = completedCount;
+    }
+
+    boolean isCheckpointDue()
+    {
+        return System.nanoTime() - this.lastCheckpointTime >= this.checkpointNanos;
+    }
+
+    private static String formatRate(int value, int totalCount)
+    {
+        return 0 != totalCount ? String.format("%.2f%%", (value * 100.) / totalCount) : "N/A";
+    }
+}
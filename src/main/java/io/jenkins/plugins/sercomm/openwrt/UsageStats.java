@@ -0,0 +1,147 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+/**
+ * Running statistics of one resource metric in percent, updated as samples
+ * arrive. Mean and variance follow Welford's method. Quantiles come from a
+ * histogram of 0.1 percent wide bins up to 100 percent, which is exact to
+ * the resolution the DUTs report, and 1 percent wide bins above, where the
+ * CPU usage of a container busy on several cores ends up. Values above
+ * {@link #MAX_PERCENT} share the last bin, their quantiles are capped by
+ * the exact maximum. Statistics of several samplers are combined with
+ * {@link #merge(UsageStats)}. Not thread-safe, the sampler of the DUT owns
+ * its statistics.
+ */
+class UsageStats
+{
+    private static final int BINS_PER_PERCENT = 10;
+    // ten cores fully busy, the last bin also holds every value above
+    static final int MAX_PERCENT = 1000;
+    // fine bins up to 100 percent, then a bin per percent
+    private static final int FINE_BIN_COUNT = 100 * BINS_PER_PERCENT + 1;
+    private static final int BIN_COUNT = FINE_BIN_COUNT + MAX_PERCENT - 100;
+
+    private final int[] bins = new int[BIN_COUNT];
+    private long count = 0L;
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+    private double mean = 0.;
+    // sum of the squared differences from the mean
+    private double m2 = 0.;
+
+    void add(Double value)
+    {
+        if(null == value || value.isNaN())
+        {
+            return;
+        }
+
+        this.count ++;
+        final double delta = value - this.mean;
+        this.mean += delta / this.count;
+        this.m2 += delta * (value - this.mean);
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+
+        this.bins[binOf(value)] ++;
+    }
+
+    /**
+     * Adds the samples counted by the other statistics, as if they had been added here.
+     * Mean and variance are combined the way Chan et al. do.
+     */
+    void merge(UsageStats other)
+    {
+        if(0L == other.count)
+        {
+            return;
+        }
+
+        for(int idx = 0; idx < BIN_COUNT; idx ++)
+        {
+            this.bins[idx] += other.bins[idx];
+        }
+
+        final long total = this.count + other.count;
+        final double delta = other.mean - this.mean;
+        this.mean += delta * other.count / total;
+        this.m2 += other.m2 + delta * delta * ((double) this.count * other.count / total);
+        this.count = total;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    long getCount()
+    {
+        return this.count;
+    }
+
+    double getMin()
+    {
+        return 0L == this.count ? 0. : this.min;
+    }
+
+    double getMax()
+    {
+        return 0L == this.count ? 0. : this.max;
+    }
+
+    double getMean()
+    {
+        return this.mean;
+    }
+
+    double getVariance()
+    {
+        return 1L < this.count ? this.m2 / (this.count - 1L) : 0.;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     */
+    double getQuantile(double quantile)
+    {
+        if(0L == this.count)
+        {
+            return 0.;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(quantile * this.count));
+
+        long seen = 0L;
+        for(int idx = 0; idx < BIN_COUNT; idx ++)
+        {
+            seen += this.bins[idx];
+            if(seen >= rank)
+            {
+                return Math.max(this.getMin(), Math.min(this.getMax(), valueOf(idx)));
+            }
+        }
+
+        return this.getMax();
+    }
+
+    static int binOf(double value)
+    {
+        final long bin = Math.round(value * BINS_PER_PERCENT);
+        if(bin < FINE_BIN_COUNT)
+        {
+            return (int) Math.max(0L, bin);
+        }
+
+        final long coarseBin = FINE_BIN_COUNT - 1L + Math.round(value - 100.);
+        return (int) Math.min(BIN_COUNT - 1L, coarseBin);
+    }
+
+    /**
+     * @return value in percent the bin stands for
+     */
+    static double valueOf(int bin)
+    {
+        if(bin < FINE_BIN_COUNT)
+        {
+            return (double) bin / BINS_PER_PERCENT;
+        }
+
+        return 100. + (bin - FINE_BIN_COUNT + 1);
+    }
+}
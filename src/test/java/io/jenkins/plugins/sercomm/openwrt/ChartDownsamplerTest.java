@@ -0,0 +1,114 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
+import org.junit.Test;
+
+public class ChartDownsamplerTest
+{
+    @Test
+    public void shortSeriesIsLeftAsItIs()
+    {
+        TimeSeries series = series(100, -1);
+        assertSame(series, ChartDownsampler.downsample(series, 100));
+    }
+
+    @Test
+    public void seriesIsCutDownAndKeepsItsEndpoints()
+    {
+        TimeSeries series = series(10000, -1);
+        TimeSeries result = ChartDownsampler.downsample(series, 500);
+
+        assertTrue(result.getItemCount() <= 500);
+        assertTrue(result.getItemCount() >= 490);
+        assertEquals(0L, result.getTimePeriod(0).getFirstMillisecond());
+        assertEquals(series.getValue(0), result.getValue(0));
+        assertEquals(9999000L, result.getTimePeriod(result.getItemCount() - 1).getFirstMillisecond());
+        assertEquals(series.getValue(9999), result.getValue(result.getItemCount() - 1));
+        // the original series is not changed
+        assertEquals(10000, series.getItemCount());
+    }
+
+    @Test
+    public void spikeIsKept()
+    {
+        TimeSeries series = new TimeSeries("spike");
+        for(int idx = 0; idx < 5000; idx ++)
+        {
+            series.add(new FixedMillisecond(idx * 1000L), 2777 == idx ? 99. : 10., false);
+        }
+
+        TimeSeries result = ChartDownsampler.downsample(series, 100);
+
+        boolean kept = false;
+        for(int idx = 0; idx < result.getItemCount(); idx ++)
+        {
+            kept |= 2777000L == result.getTimePeriod(idx).getFirstMillisecond() && 99. == result.getValue(idx).doubleValue();
+        }
+        assertTrue(kept);
+    }
+
+    @Test
+    public void gapsAndTheRunEndsAroundThemAreKept()
+    {
+        TimeSeries series = series(10000, 6000);
+        TimeSeries result = ChartDownsampler.downsample(series, 500);
+
+        int gapIdx = -1;
+        for(int idx = 0; idx < result.getItemCount(); idx ++)
+        {
+            if(null == result.getValue(idx))
+            {
+                assertEquals(-1, gapIdx);
+                gapIdx = idx;
+            }
+        }
+
+        assertEquals(6000000L, result.getTimePeriod(gapIdx).getFirstMillisecond());
+        assertEquals(5999000L, result.getTimePeriod(gapIdx - 1).getFirstMillisecond());
+        assertEquals(6001000L, result.getTimePeriod(gapIdx + 1).getFirstMillisecond());
+        assertEquals(0L, result.getTimePeriod(0).getFirstMillisecond());
+        assertEquals(9999000L, result.getTimePeriod(result.getItemCount() - 1).getFirstMillisecond());
+        assertTrue(result.getItemCount() <= 501);
+    }
+
+    @Test
+    public void datasetSeriesAreDownsampledEach()
+    {
+        TimeSeriesCollection dataset = new TimeSeriesCollection();
+        dataset.addSeries(series(50, -1));
+        dataset.addSeries(series(3000, 1500));
+
+        TimeSeriesCollection result = ChartDownsampler.downsample(dataset, 200);
+
+        assertEquals(2, result.getSeriesCount());
+        assertEquals(50, result.getSeries(0).getItemCount());
+        assertTrue(result.getSeries(1).getItemCount() <= 201);
+        assertNull(dataset.getSeries(1).getValue(1500));
+    }
+
+    /**
+     * A wave of a sample per second, the item at the gap index has no value
+     */
+    private static TimeSeries series(int itemCount, int gapIdx)
+    {
+        TimeSeries series = new TimeSeries("series");
+        for(int idx = 0; idx < itemCount; idx ++)
+        {
+            if(idx == gapIdx)
+            {
+                series.add(new FixedMillisecond(idx * 1000L), (Number) null, false);
+                continue;
+            }
+            series.add(new FixedMillisecond(idx * 1000L), 50. + 40. * Math.sin(idx / 50.), false);
+        }
+
+        return series;
+    }
+}
@@ -0,0 +1,239 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sercomm.commons.util.Json;
+import com.sercomm.commons.util.XStringUtil;
+
+/**
+ * Throughput of {@link ContainerListDecoder} against the parsing it
+ * replaced, on a payload of 8 entries as a DUT running 8 applications
+ * returns it. Not run with the other tests, run it on its own:
+ *
+ * <pre>
+ * mvn test -Dtest=ContainerListDecoderBenchmark
+ * </pre>
+ *
+ * Each decoder is warmed up first, then timed over several rounds of a
+ * fixed duration. The medians of the rounds, in decodes per second, are
+ * compared; the message of a failure tells both.
+ */
+public class ContainerListDecoderBenchmark
+{
+    private static final int ENTRY_COUNT = 8;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final long ROUND_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private interface Decoder
+    {
+        /**
+         * @return a value of every entry, so that nothing decoded can be optimized away
+         */
+        double decode(String text)
+        throws Exception;
+    }
+
+    @Test
+    public void streamingDecoderAgainstTreeParsing()
+    throws Exception
+    {
+        final String payload = payload(ENTRY_COUNT);
+        final Decoder streaming = text -> {
+            double sum = 0.;
+            for(ContainerInfo containerInfo : ContainerListDecoder.decode(text))
+            {
+                sum += containerInfo.getCpuUsage() + containerInfo.getMemoryUsage() + containerInfo.getStorageUsage();
+            }
+            return sum;
+        };
+        final Decoder tree = text -> {
+            double sum = 0.;
+            for(TreeContainerInfo containerInfo : TreeContainerInfo.parseList(text))
+            {
+                sum += containerInfo.getCpuUsage() + containerInfo.getMemoryUsage() + containerInfo.getStorageUsage();
+            }
+            return sum;
+        };
+
+        // same values, the comparison is fair
+        assertEquals(tree.decode(payload), streaming.decode(payload), 1e-9);
+
+        final double treeRate = measure(tree, payload);
+        final double streamingRate = measure(streaming, payload);
+        assertTrue(
+            String.format("streaming %.0f decodes/s, tree binding %.0f decodes/s", streamingRate, treeRate),
+            streamingRate > treeRate);
+    }
+
+    private static double measure(Decoder decoder, String payload)
+    throws Exception
+    {
+        double sink = 0.;
+        double[] rates = new double[MEASURED_ROUNDS];
+        for(int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round ++)
+        {
+            long count = 0L;
+            final long beginNanos = System.nanoTime();
+            long elapsedNanos;
+            do
+            {
+                sink += decoder.decode(payload);
+                count ++;
+            }
+            while((elapsedNanos = System.nanoTime() - beginNanos) < ROUND_NANOS);
+
+            if(round >= WARMUP_ROUNDS)
+            {
+                rates[round - WARMUP_ROUNDS] = count * 1e9 / elapsedNanos;
+            }
+        }
+
+        if(Double.isNaN(sink))
+        {
+            throw new IllegalStateException("NO USAGES DECODED");
+        }
+
+        Arrays.sort(rates);
+        return rates[MEASURED_ROUNDS / 2];
+    }
+
+    /**
+     * ContainerInfo as it was before the streaming decoder: the payload is parsed
+     * into a tree, the list found in it is turned back into tokens and bound to
+     * these beans, and every getter reparses or reformats its usage
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class TreeContainerInfo
+    {
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        static final class CPU
+        {
+            @JsonProperty("Usage")
+            private String usage = "0.0";
+        }
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        static final class Memory
+        {
+            @JsonProperty("Total")
+            private Long total = 0L;
+            @JsonProperty("Free")
+            private Long free = 0L;
+            @JsonProperty("Usage")
+            private Double usage = 0.;
+        }
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        static final class Storage
+        {
+            @JsonProperty("Total")
+            private Long total = 0L;
+            @JsonProperty("Free")
+            private Long free = 0L;
+            @JsonProperty("Usage")
+            private Double usage = 0.;
+        }
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        static final class Resources
+        {
+            @JsonProperty("CPU")
+            private CPU cpu;
+            @JsonProperty("Storage")
+            private Storage storage;
+            @JsonProperty("Memory")
+            private Memory memory;
+        }
+
+        @JsonProperty("Id")
+        private String id;
+        @JsonProperty("Name")
+        private String name;
+        @JsonProperty("Enabled")
+        private Boolean enabled;
+        @JsonProperty("Version")
+        private String version;
+        @JsonProperty("Vendor")
+        private String vendor;
+        @JsonProperty("Type")
+        private String type;
+        @JsonProperty("Status")
+        private String status;
+        @JsonProperty("Resources")
+        private Resources resources;
+
+        Double getCpuUsage()
+        {
+            if(null == this.resources || null == this.resources.cpu || null == this.resources.cpu.usage)
+            {
+                return null;
+            }
+
+            return Double.parseDouble(this.resources.cpu.usage.replaceAll("%", XStringUtil.BLANK));
+        }
+
+        Double getMemoryUsage()
+        {
+            if(null == this.resources || null == this.resources.memory || null == this.resources.memory.usage)
+            {
+                return null;
+            }
+
+            return Double.parseDouble(String.format("%.2f", this.resources.memory.usage * 100.));
+        }
+
+        Double getStorageUsage()
+        {
+            if(null == this.resources || null == this.resources.storage || null == this.resources.storage.usage)
+            {
+                return null;
+            }
+
+            return Double.parseDouble(String.format("%.2f", this.resources.storage.usage * 100.));
+        }
+
+        static List<TreeContainerInfo> parseList(String text)
+        throws Exception
+        {
+            JsonNode rootNode = Json.parse(text);
+            return Json.mapper().readValue(
+                Json.mapper().treeAsTokens(rootNode.findPath("List")),
+                Json.JavaTypeUtil.collectionType(
+                    ArrayList.class,
+                    TreeContainerInfo.class));
+        }
+    }
+
+    private static String payload(int entryCount)
+    {
+        StringBuilder text = new StringBuilder("{\"Services.Management.LCM.ExecutionEnvironments\":{\"Status\":\"OK\",\"List\":[");
+        for(int idx = 0; idx < entryCount; idx ++)
+        {
+            if(0 < idx)
+            {
+                text.append(',');
+            }
+            text.append("{\"Id\":\"c0a").append(idx).append("\",\"Name\":\"app-").append(idx).append("\",")
+                .append("\"Enabled\":true,\"Version\":\"1.2.").append(idx).append("\",\"Vendor\":\"Sercomm\",")
+                .append("\"Type\":\"lxc\",\"Status\":\"Up\",")
+                .append("\"Networks\":[{\"Name\":\"br-lan\",\"Address\":\"192.168.1.").append(10 + idx).append("\"}],")
+                .append("\"Resources\":{\"CPU\":{\"Usage\":\"").append(idx * 3 + 0.5).append("%\"},")
+                .append("\"Memory\":{\"Total\":65536,\"Free\":49152,\"Usage\":0.").append(25 + idx).append("},")
+                .append("\"Storage\":{\"Total\":1048576,\"Free\":943718,\"Usage\":0.1").append(idx).append("}}}");
+        }
+
+        return text.append("]}}").toString();
+    }
+}
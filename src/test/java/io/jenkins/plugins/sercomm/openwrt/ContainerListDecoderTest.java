@@ -0,0 +1,95 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ContainerListDecoderTest
+{
+    // result of 'ubus call Services.Management.LCM.ExecutionEnvironments List' as a DUT returns it
+    static final String PAYLOAD =
+        "{\"Services.Management.LCM.ExecutionEnvironments\":{\"Status\":\"OK\",\"List\":[" +
+        "{\"Id\":\"c0a1\",\"Name\":\"sample-app\",\"Enabled\":true,\"Version\":\"1.2.3\",\"Vendor\":\"Sercomm\"," +
+        "\"Type\":\"lxc\",\"Status\":\"Up\",\"Networks\":[{\"Name\":\"br-lan\",\"Address\":\"192.168.1.10\"}]," +
+        "\"Resources\":{\"CPU\":{\"Usage\":\"12.3%\"},\"Memory\":{\"Total\":65536,\"Free\":49152,\"Usage\":0.25}," +
+        "\"Storage\":{\"Total\":1048576,\"Free\":943718,\"Usage\":0.10000002}}}," +
+        "{\"Id\":\"c0a2\",\"Name\":\"idle-app\",\"Enabled\":false,\"Status\":\"Down\"," +
+        "\"Resources\":{\"CPU\":{\"Usage\":\"0%\"},\"Memory\":{\"Total\":65536},\"Storage\":{\"Usage\":null}}}," +
+        "{\"Id\":\"c0a3\",\"Name\":null,\"Status\":\"Installing\"}," +
+        "null" +
+        "]}}";
+
+    @Test
+    public void decodesTheUsagesOfEachEntry()
+    throws IOException
+    {
+        List<ContainerInfo> containerInfos = ContainerListDecoder.decode(PAYLOAD);
+        assertEquals(3, containerInfos.size());
+
+        ContainerInfo running = containerInfos.get(0);
+        assertEquals("c0a1", running.getId());
+        assertEquals("sample-app", running.getName());
+        assertEquals(12.3, running.getCpuUsage(), 0.);
+        assertEquals(25., running.getMemoryUsage(), 0.);
+        assertEquals(10., running.getStorageUsage(), 0.);
+    }
+
+    @Test
+    public void keepsTheMeaningOfMissingUsages()
+    throws IOException
+    {
+        List<ContainerInfo> containerInfos = ContainerListDecoder.decode(PAYLOAD);
+
+        // a resource without a usage reports 0, a null usage is not reported
+        ContainerInfo stopped = containerInfos.get(1);
+        assertEquals(0., stopped.getCpuUsage(), 0.);
+        assertEquals(0., stopped.getMemoryUsage(), 0.);
+        assertNull(stopped.getStorageUsage());
+
+        // no resources at all
+        ContainerInfo installing = containerInfos.get(2);
+        assertEquals("c0a3", installing.getId());
+        assertNull(installing.getName());
+        assertNull(installing.getCpuUsage());
+        assertNull(installing.getMemoryUsage());
+        assertNull(installing.getStorageUsage());
+    }
+
+    @Test
+    public void findsTheFirstListAtAnyDepth()
+    throws IOException
+    {
+        List<ContainerInfo> containerInfos = ContainerListDecoder.decode(
+            "{\"Meta\":{\"Count\":1},\"Result\":{\"Data\":{\"List\":[{\"Id\":\"x\",\"Resources\":{\"CPU\":{\"Usage\":7}}}]},\"List\":[]}}");
+
+        assertEquals(1, containerInfos.size());
+        assertEquals("x", containerInfos.get(0).getId());
+        assertEquals(7., containerInfos.get(0).getCpuUsage(), 0.);
+    }
+
+    @Test
+    public void emptyListHasNoEntries()
+    throws IOException
+    {
+        assertTrue(ContainerListDecoder.decode("{\"List\":[]}").isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void payloadWithoutListIsRejected()
+    throws IOException
+    {
+        ContainerListDecoder.decode("{\"Status\":\"ERROR\"}");
+    }
+
+    @Test(expected = IOException.class)
+    public void listWhichIsNotAnArrayIsRejected()
+    throws IOException
+    {
+        ContainerListDecoder.decode("{\"List\":{\"Id\":\"x\"}}");
+    }
+}
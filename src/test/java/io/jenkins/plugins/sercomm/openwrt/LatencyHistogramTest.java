@@ -0,0 +1,121 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void smallValuesHaveABucketEach()
+    {
+        for(long value = 0L; value < 16L; value ++)
+        {
+            assertEquals(value, LatencyHistogram.indexOf(value));
+            assertEquals(value, LatencyHistogram.valueOf((int) value));
+        }
+    }
+
+    @Test
+    public void eachPowerOfTwoIsSplitIntoSixteenBuckets()
+    {
+        // 16..31 are still exact, 32..63 share a bucket per 2 values, 64..127 per 4
+        assertEquals(16, LatencyHistogram.indexOf(16L));
+        assertEquals(31, LatencyHistogram.indexOf(31L));
+        assertEquals(32, LatencyHistogram.indexOf(32L));
+        assertEquals(32, LatencyHistogram.indexOf(33L));
+        assertEquals(33, LatencyHistogram.indexOf(34L));
+        assertEquals(47, LatencyHistogram.indexOf(63L));
+        assertEquals(48, LatencyHistogram.indexOf(64L));
+        assertEquals(48, LatencyHistogram.indexOf(67L));
+        assertEquals(49, LatencyHistogram.indexOf(68L));
+
+        // the middle of the range of the bucket
+        assertEquals(33L, LatencyHistogram.valueOf(32));
+        assertEquals(66L, LatencyHistogram.valueOf(48));
+    }
+
+    @Test
+    public void indexesGrowWithTheValueAndStayInRange()
+    {
+        int lastIndex = -1;
+        for(long value = 0L; value < 1L << 20; value ++)
+        {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue(index == lastIndex || index == lastIndex + 1);
+            lastIndex = index;
+        }
+
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void bucketValueIsWithinASixteenthOfTheRecordedValue()
+    {
+        Random random = new Random(3L);
+        for(int idx = 0; idx < 100000; idx ++)
+        {
+            final long value = random.nextLong() >>> (1 + random.nextInt(62));
+            final long bucketValue = LatencyHistogram.valueOf(LatencyHistogram.indexOf(value));
+            assertTrue(value + " -> " + bucketValue, Math.abs(bucketValue - value) <= value / 16L);
+        }
+    }
+
+    @Test
+    public void quantilesOfRecordedLatencies()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long micros = 1L; micros <= 1000L; micros ++)
+        {
+            histogram.record(micros);
+        }
+
+        assertEquals(1000L, histogram.getCount());
+        assertEquals(1L, histogram.getMin());
+        assertEquals(1000L, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(500., histogram.getQuantile(0.5), 500. / 16.);
+        assertEquals(990., histogram.getQuantile(0.99), 990. / 16.);
+        assertEquals(1000L, histogram.getQuantile(1.));
+        assertEquals(1L, histogram.getQuantile(0.));
+    }
+
+    @Test
+    public void mergedAndRestoredHistogramsKeepTheirBuckets()
+    {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+        for(long micros = 1L; micros <= 5000L; micros += 7L)
+        {
+            (0L == micros % 2L ? first : second).record(micros);
+            all.record(micros);
+        }
+
+        first.merge(second);
+        LatencyHistogram restored = LatencyHistogram.fromState(first.toState());
+
+        assertEquals(all.getCount(), restored.getCount());
+        assertEquals(all.getMin(), restored.getMin());
+        assertEquals(all.getMax(), restored.getMax());
+        assertEquals(all.getMean(), restored.getMean(), 1e-9);
+        for(double quantile : new double[] { 0.5, 0.9, 0.99 })
+        {
+            assertEquals(all.getQuantile(quantile), restored.getQuantile(quantile));
+        }
+    }
+
+    @Test
+    public void nanosAreRecordedInMicros()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(1500000L);
+        histogram.recordNanos(-5L);
+
+        assertEquals(1500L, histogram.getMax());
+        assertEquals(0L, histogram.getMin());
+    }
+}
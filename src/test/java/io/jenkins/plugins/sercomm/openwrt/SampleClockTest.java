@@ -0,0 +1,100 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The clocks are set up as if part of the collection had passed already, so
+ * nothing waits and the boundaries are tens of milliseconds away
+ */
+public class SampleClockTest
+{
+    @Test
+    public void scheduleDoesNotDriftWithTheTimeSamplesTake()
+    {
+        SampleClock clock = new SampleClock(100L, 10000L);
+
+        // claimed back to back, the next sample is still due a whole number of periods after the beginning
+        for(int sample = 0; sample < 5; sample ++)
+        {
+            clock.beginSample();
+        }
+        final long delayMillis = clock.nextDelayMillis();
+
+        assertTrue(delayMillis > 500L && delayMillis <= 600L);
+        assertEquals(5L, clock.getTakenCount());
+        assertEquals(0L, clock.getLateCount());
+        assertEquals(0L, clock.getMissedCount());
+    }
+
+    @Test
+    public void sampleIsRecordedWhenItStarts()
+    {
+        final long beforeTime = System.currentTimeMillis();
+        // 150 ms in, the sample due at 100 ms starts 50 ms late
+        SampleClock clock = new SampleClock(100L, 10000L, 150L);
+
+        final long time = clock.beginSample();
+
+        // the time it was taken, not the time it was due
+        assertTrue(Math.abs(time - beforeTime) <= 30L);
+        assertEquals(1L, clock.getLateCount());
+    }
+
+    @Test
+    public void firstSampleIsDueOnePeriodAfterTheBeginning()
+    {
+        SampleClock clock = new SampleClock(1000L, 10000L);
+        final long delayMillis = clock.nextDelayMillis();
+
+        assertTrue(delayMillis > 500L && delayMillis <= 1000L);
+        assertEquals(10L, clock.getPlannedCount());
+    }
+
+    @Test
+    public void samplesWhosePeriodIsOverAreMissed()
+    {
+        // 550 ms in, the samples due at 100 to 400 ms can no longer be taken, the one at 500 ms can
+        SampleClock clock = new SampleClock(100L, 1000L, 550L);
+
+        assertEquals(0L, clock.nextDelayMillis());
+        assertEquals(4L, clock.getMissedCount());
+
+        clock.beginSample();
+        assertEquals(1L, clock.getTakenCount());
+        // 50 ms behind, more than a tenth of the period
+        assertEquals(1L, clock.getLateCount());
+        assertTrue(clock.getMaxDelayMillis() >= 50L);
+
+        // taken and missed plus the 5 still due at 600 to 1000 ms
+        assertEquals(10L, clock.getPlannedCount());
+    }
+
+    @Test
+    public void collectionIsOverAfterItsDuration()
+    {
+        SampleClock clock = new SampleClock(100L, 1000L, 1250L);
+
+        assertEquals(-1L, clock.nextDelayMillis());
+        // the samples due at 100 to 1000 ms, the last period of each is over too
+        assertEquals(10L, clock.getMissedCount());
+        assertEquals(10L, clock.getPlannedCount());
+    }
+
+    @Test
+    public void newPeriodCountsFromTheLastSample()
+    {
+        // 150 ms in, the sample due at 100 ms is taken
+        SampleClock clock = new SampleClock(100L, 10000L, 150L);
+        clock.beginSample();
+
+        clock.setPeriodMillis(1000L);
+
+        // due at 1100 ms
+        final long delayMillis = clock.nextDelayMillis();
+        assertEquals(1000L, clock.getPeriodMillis());
+        assertTrue(delayMillis > 800L && delayMillis <= 950L);
+    }
+}
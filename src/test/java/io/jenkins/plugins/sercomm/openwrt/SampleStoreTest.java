@@ -0,0 +1,225 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SampleStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @After
+    public void releaseStore()
+    {
+        if(null != this.file)
+        {
+            SampleStore.release(this.file);
+        }
+    }
+
+    @Test
+    public void framesReadBackAsWritten()
+    throws IOException
+    {
+        this.file = new File(this.folder.getRoot(), SampleStore.FILE_NAME);
+
+        SampleStore.Chunk first = new SampleStore.Chunk("dut1");
+        first.add(10000L, containers(new ContainerInfo("c1", "app", 12.5, 25., Double.NaN)));
+        // the wall clock stepped back
+        first.add(9000L, containers(new ContainerInfo("c1", "app", 13.25, 25.5, 1.)));
+        first.add(12000L, containers(new ContainerInfo("c1", "app", 14., 26., 1.), new ContainerInfo("c2", null, 0.5, 0.75, 2.)));
+        SampleStore.append(this.file, first);
+        assertTrue(first.isEmpty());
+
+        SampleStore.Chunk looping = new SampleStore.Chunk("dut2");
+        looping.add(20000L, containers(new ContainerInfo(null, "named", 1., 2., 3.)), 3, LoopPhase.INSTALL);
+        looping.add(21000L, containers(), 3, LoopPhase.START);
+        SampleStore.append(this.file, looping);
+
+        SampleStore.Chunk adaptive = new SampleStore.Chunk("dut1");
+        adaptive.add(30000L, containers(new ContainerInfo("c1", "app", 50., 60., 70.)), 0L);
+        adaptive.add(35000L, containers(new ContainerInfo("c1", "app", 51., 61., 71.)), 5000L);
+        SampleStore.append(this.file, adaptive);
+
+        Map<String, List<ReportModel.Sample>> samples = SampleStore.read(this.file);
+        assertEquals(Arrays.asList("dut1", "dut2"), new ArrayList<>(samples.keySet()));
+
+        List<ReportModel.Sample> dut1 = samples.get("dut1");
+        assertEquals(5, dut1.size());
+        assertEquals(10000L, dut1.get(0).time);
+        assertEquals(9000L, dut1.get(1).time);
+        assertEquals(12000L, dut1.get(2).time);
+        assertEquals(35000L, dut1.get(4).time);
+
+        ResultRecord.Container container = dut1.get(0).containers.get(0);
+        assertEquals("c1", container.id);
+        assertEquals("app", container.name);
+        assertEquals(12.5, container.cpu, 0.);
+        assertEquals(25., container.ram, 0.);
+        assertNull(container.storage);
+
+        assertEquals(1, dut1.get(1).containers.size());
+        assertEquals(2, dut1.get(2).containers.size());
+        assertEquals(13.25, dut1.get(1).containers.get(0).cpu, 0.);
+        assertEquals("c2", dut1.get(2).containers.get(1).id);
+
+        assertNull(dut1.get(0).interval);
+        assertEquals(Long.valueOf(0L), dut1.get(3).interval);
+        assertEquals(Long.valueOf(5000L), dut1.get(4).interval);
+
+        List<ReportModel.Sample> dut2 = samples.get("dut2");
+        assertEquals(2, dut2.size());
+        assertEquals("named", dut2.get(0).containers.get(0).id);
+        assertEquals(Integer.valueOf(3), dut2.get(0).loop);
+        assertEquals(LoopPhase.INSTALL.getLabel(), dut2.get(0).phase);
+        assertEquals(LoopPhase.START.getLabel(), dut2.get(1).phase);
+        assertTrue(dut2.get(1).containers.isEmpty());
+    }
+
+    @Test
+    public void frameCutShortIsDroppedAndTheStoreContinues()
+    throws IOException
+    {
+        this.file = new File(this.folder.getRoot(), SampleStore.FILE_NAME);
+
+        SampleStore.append(this.file, chunk("dut1", 1000L, 3));
+        final long validLength = this.file.length();
+        SampleStore.append(this.file, chunk("dut1", 4000L, 3));
+
+        // a crash in the middle of the second chunk
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw"))
+        {
+            randomAccessFile.setLength(validLength + 10L);
+        }
+        assertEquals(3, SampleStore.read(this.file).get("dut1").size());
+
+        // continued after a restart, the index is read back from the file
+        SampleStore.release(this.file);
+        SampleStore.append(this.file, chunk("dut1", 7000L, 2));
+
+        List<ReportModel.Sample> samples = SampleStore.read(this.file).get("dut1");
+        assertEquals(5, samples.size());
+        assertEquals(3000L, samples.get(2).time);
+        assertEquals(7000L, samples.get(3).time);
+    }
+
+    @Test
+    public void storeOfAnUnknownVersionIsNeverTruncated()
+    throws IOException
+    {
+        this.file = new File(this.folder.getRoot(), SampleStore.FILE_NAME);
+        SampleStore.append(this.file, chunk("dut1", 1000L, 3));
+        SampleStore.release(this.file);
+
+        // the version byte of a later plugin version
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw"))
+        {
+            randomAccessFile.seek(4L);
+            randomAccessFile.writeByte(99);
+        }
+        final byte[] bytes = Files.readAllBytes(this.file.toPath());
+
+        try
+        {
+            SampleStore.append(this.file, chunk("dut1", 4000L, 3));
+            fail("an unknown store must not be continued");
+        }
+        catch(IOException e)
+        {
+            assertArrayEquals(bytes, Files.readAllBytes(this.file.toPath()));
+        }
+    }
+
+    @Test
+    public void headerCutShortStartsTheStoreAgain()
+    throws IOException
+    {
+        this.file = new File(this.folder.getRoot(), SampleStore.FILE_NAME);
+        SampleStore.append(this.file, chunk("dut1", 1000L, 3));
+        SampleStore.release(this.file);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw"))
+        {
+            randomAccessFile.setLength(3L);
+        }
+
+        SampleStore.append(this.file, chunk("dut1", 4000L, 2));
+
+        assertEquals(2, SampleStore.read(this.file).get("dut1").size());
+    }
+
+    @Test
+    public void tailReadsCompleteFramesOnly()
+    throws IOException
+    {
+        this.file = new File(this.folder.getRoot(), SampleStore.FILE_NAME);
+        SampleStore.append(this.file, chunk("dut1", 1000L, 4));
+        final int firstLength = (int) this.file.length();
+        SampleStore.append(this.file, chunk("dut2", 1000L, 4));
+        final byte[] bytes = Files.readAllBytes(this.file.toPath());
+
+        // the store as a reader sees it while it is being written
+        File copy = this.folder.newFile("copy.bin");
+        SampleStore.Tail tail = new SampleStore.Tail();
+
+        write(copy, bytes, 0, 3);
+        assertTrue(tail.read(copy).isEmpty());
+
+        write(copy, bytes, 3, firstLength + 5);
+        Map<String, List<ReportModel.Sample>> samples = tail.read(copy);
+        assertEquals(4, samples.get("dut1").size());
+        assertNull(samples.get("dut2"));
+
+        write(copy, bytes, firstLength + 5, bytes.length);
+        samples = tail.read(copy);
+        assertNull(samples.get("dut1"));
+        assertEquals(4, samples.get("dut2").size());
+        assertEquals(4000L, samples.get("dut2").get(3).time);
+
+        assertTrue(tail.read(copy).isEmpty());
+    }
+
+    private static SampleStore.Chunk chunk(String deviceId, long beginTime, int count)
+    {
+        SampleStore.Chunk chunk = new SampleStore.Chunk(deviceId);
+        for(int idx = 0; idx < count; idx ++)
+        {
+            chunk.add(beginTime + idx * 1000L, containers(new ContainerInfo("c1", "app", idx, idx, idx)));
+        }
+
+        return chunk;
+    }
+
+    private static List<ContainerInfo> containers(ContainerInfo... containerInfos)
+    {
+        return Arrays.asList(containerInfos);
+    }
+
+    private static void write(File file, byte[] bytes, int begin, int end)
+    throws IOException
+    {
+        try(FileOutputStream outputStream = new FileOutputStream(file, true))
+        {
+            outputStream.write(bytes, begin, end - begin);
+        }
+    }
+}
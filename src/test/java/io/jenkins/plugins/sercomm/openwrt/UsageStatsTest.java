@@ -0,0 +1,129 @@
+package io.jenkins.plugins.sercomm.openwrt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UsageStatsTest
+{
+    @Test
+    public void emptyStatsAreZero()
+    {
+        UsageStats stats = new UsageStats();
+        stats.add(null);
+        stats.add(Double.NaN);
+
+        assertEquals(0L, stats.getCount());
+        assertEquals(0., stats.getMin(), 0.);
+        assertEquals(0., stats.getMax(), 0.);
+        assertEquals(0., stats.getQuantile(0.95), 0.);
+    }
+
+    @Test
+    public void quantilesAreExactToTheBinWidth()
+    {
+        UsageStats stats = new UsageStats();
+        // 0.1 .. 100.0
+        for(int idx = 1; idx <= 1000; idx ++)
+        {
+            stats.add(idx / 10.);
+        }
+
+        assertEquals(1000L, stats.getCount());
+        assertEquals(0.1, stats.getQuantile(0.), 1e-9);
+        assertEquals(50., stats.getQuantile(0.5), 1e-9);
+        assertEquals(95., stats.getQuantile(0.95), 1e-9);
+        assertEquals(99., stats.getQuantile(0.99), 1e-9);
+        assertEquals(100., stats.getQuantile(1.), 1e-9);
+        assertEquals(50.05, stats.getMean(), 1e-9);
+    }
+
+    @Test
+    public void quantilesStayWithinMinAndMax()
+    {
+        UsageStats stats = new UsageStats();
+        stats.add(12.34);
+        stats.add(12.36);
+
+        assertEquals(12.34, stats.getQuantile(0.), 1e-9);
+        assertEquals(12.36, stats.getQuantile(1.), 1e-9);
+    }
+
+    @Test
+    public void valuesAboveHundredPercentKeepTheirBins()
+    {
+        UsageStats stats = new UsageStats();
+        for(int idx = 0; idx < 90; idx ++)
+        {
+            stats.add(50.);
+        }
+        for(int idx = 0; idx < 10; idx ++)
+        {
+            stats.add(350.);
+        }
+
+        assertEquals(50., stats.getQuantile(0.9), 1e-9);
+        assertEquals(350., stats.getQuantile(0.95), 1e-9);
+        assertEquals(150., UsageStats.valueOf(UsageStats.binOf(150.)), 1e-9);
+        assertEquals(100., UsageStats.valueOf(UsageStats.binOf(100.04)), 1e-9);
+    }
+
+    @Test
+    public void valuesAboveTheRangeAreCappedByTheMaximum()
+    {
+        UsageStats stats = new UsageStats();
+        stats.add(10.);
+        stats.add(2500.);
+
+        assertEquals(UsageStats.MAX_PERCENT, UsageStats.valueOf(UsageStats.binOf(2500.)), 1e-9);
+        assertEquals(UsageStats.MAX_PERCENT, stats.getQuantile(1.), 1e-9);
+        assertEquals(2500., stats.getMax(), 0.);
+    }
+
+    @Test
+    public void mergeEqualsAddingEverySample()
+    {
+        Random random = new Random(7L);
+        UsageStats all = new UsageStats();
+        UsageStats first = new UsageStats();
+        UsageStats second = new UsageStats();
+        for(int idx = 0; idx < 5000; idx ++)
+        {
+            final double value = Math.round(random.nextDouble() * 1500.) / 10.;
+            all.add(value);
+            (0 == idx % 3 ? first : second).add(value);
+        }
+
+        first.merge(second);
+        first.merge(new UsageStats());
+
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getMin(), first.getMin(), 0.);
+        assertEquals(all.getMax(), first.getMax(), 0.);
+        assertEquals(all.getMean(), first.getMean(), 1e-9);
+        assertEquals(all.getVariance(), first.getVariance(), 1e-6);
+        for(double quantile : new double[] { 0., 0.25, 0.5, 0.95, 0.99, 1. })
+        {
+            assertEquals(all.getQuantile(quantile), first.getQuantile(quantile), 0.);
+        }
+    }
+
+    @Test
+    public void mergeIntoEmptyStats()
+    {
+        UsageStats stats = new UsageStats();
+        UsageStats other = new UsageStats();
+        other.add(20.);
+        other.add(40.);
+
+        stats.merge(other);
+
+        assertEquals(2L, stats.getCount());
+        assertEquals(30., stats.getMean(), 1e-9);
+        assertEquals(200., stats.getVariance(), 1e-9);
+        assertEquals(20., stats.getMin(), 0.);
+        assertEquals(40., stats.getQuantile(1.), 1e-9);
+    }
+}